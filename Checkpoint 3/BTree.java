@@ -2,278 +2,918 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 /**
  * B+Tree Structure
  * Key - StudentId
  * Leaf Node should contain [ key,recordId ]
+ * Nodes live in a NodeStore and are addressed by int IDs. By default that is
+ * a HeapNodeStore of BTreeNode objects; a SlabNodeStore keeps them as pages
+ * in direct buffers instead, so the tree allocates nothing on the Java heap
+ * per node, and a PooledNodeStore keeps them as pages of a file read through
+ * a BufferPool, so the tree can be larger than memory.
  */
 class BTree {
 
     /**
-     * Pointer to the root node.
+     * Input pairs checked for order per task by a parallel bulk load.
      */
-    private BTreeNode root;
+    private static final int PARALLEL_BLOCK = 1 << 16;
+
+    /**
+     * Holds the nodes.
+     */
+    private final NodeStore store;
+    /**
+     * ID of the root node, or NONE for an empty tree.
+     */
+    private int root = NodeStore.NONE;
     /**
      * Number of key-value pairs allowed in the tree/the minimum degree of B+Tree
      **/
     private int t;
+    /**
+     * Internal nodes on the path from the root to the leaf found by the last
+     * findLeafNode call, root first. Used to propagate splits upward.
+     */
+    private int[] path = new int[8];
+    /**
+     * Number of nodes currently on the path.
+     */
+    private int pathDepth;
+    /**
+     * Smallest key that belongs to a leaf right of the one found by the last
+     * findLeafNode call, if leafHasFence is set. Keys below it and at least
+     * the ones already in the leaf belong to the same leaf.
+     */
+    private long leafFence;
+    private boolean leafHasFence;
+    /**
+     * Number of key-value pairs in the tree.
+     */
+    private long size;
+    /**
+     * Heap file holding the rows the recordIds address, or null to keep rows
+     * in student.csv.
+     */
+    private StudentHeapFile heapFile;
+    /**
+     * student.csv, rewritten by deletes when there is no heap file.
+     */
+    private Path csvFile = Paths.get("src/Student.csv");
+    /**
+     * Receives timings and structural events, or null to record nothing.
+     */
+    private BTreeMetrics metrics;
+    /**
+     * Cache of search results, or null to always descend.
+     */
+    private SearchCache cache;
+    /**
+     * Bloom filter of the keys in the tree, or null to always descend.
+     * Deleted keys stay in it until it is rebuilt.
+     */
+    private KeyFilter filter;
+    /**
+     * Keys deleted since the filter was built.
+     */
+    private long filterDeletes;
 
     BTree(int t) {
-        this.root = null;
-        this.t = t;
+        this(new HeapNodeStore(t));
     }
 
+    /**
+     * Creates an empty tree keeping its nodes in the given store. Whatever the
+     * store held is dropped.
+     *
+     * @param store - The node store, sized for the tree's minimum degree
+     */
+    BTree(NodeStore store) {
+        this.store = store;
+        this.t = store.degree();
+        store.clear();
+    }
+
+    /**
+     * Opens a tree the store already holds, such as one saved in a
+     * MappedNodeStore file. No node is read until the tree is used.
+     *
+     * @param store - The node store holding the tree
+     * @param root  - The tree's root, or NONE for an empty tree
+     * @param size  - The number of [ key,recordId ] entries in the tree
+     */
+    BTree(NodeStore store, int root, long size) {
+        this.store = store;
+        this.t = store.degree();
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Stores rows in a heap file instead of student.csv. Deletes then free the
+     * row at the deleted key's recordId in place, instead of rewriting
+     * student.csv. The tree's recordIds must be addresses in that heap file.
+     *
+     * @param heapFile - The heap file, or null to go back to student.csv
+     */
+    void setHeapFile(StudentHeapFile heapFile) {
+        this.heapFile = heapFile;
+    }
+
+    /**
+     * Attaches metrics that every search, insert and delete reports to, along
+     * with the splits, merges and redistributions they cause.
+     *
+     * @param metrics - The metrics, or null to stop recording
+     */
+    void setMetrics(BTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Puts a cache in front of search(). Inserts, deletes and bulk loads
+     * through this tree keep it coherent. Whatever the cache held is
+     * dropped.
+     *
+     * @param cache - The cache, or null to stop caching
+     */
+    void setCache(SearchCache cache) {
+        this.cache = cache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Keeps a Bloom filter of the keys in the tree, which search() checks
+     * before descending, so most searches for a studentId that isn't in the
+     * tree return without reading a node. Inserts and bulk loads add to the
+     * filter. A delete can't take its key back out, so the filter is rebuilt
+     * from the leaves once a quarter of its capacity has been deleted, and
+     * at twice the size once the tree outgrows it. Either way a rebuild comes
+     * after enough writes to pay for its scan.
+     *
+     * @param falsePositiveRate - Target fraction of missing studentIds that
+     *                          still descend, in (0, 1), or 0 to drop the
+     *                          filter
+     */
+    void setKeyFilter(double falsePositiveRate) {
+        if (falsePositiveRate == 0) {
+            filter = null;
+            return;
+        }
+        rebuildFilter(falsePositiveRate);
+    }
+
+    /**
+     * @return The Bloom filter in front of search(), or null if there is none
+     */
+    KeyFilter keyFilter() {
+        return filter;
+    }
+
+    /**
+     * Sets the student.csv that deletes rewrite, src/Student.csv by default.
+     *
+     * @param csvFile - The CSV file
+     */
+    void setCsvFile(Path csvFile) {
+        this.csvFile = csvFile;
+    }
+
+    /**
+     * Looks up a studentId. Nothing is printed on a miss; that is up to the
+     * caller.
+     *
+     * @param studentId - The studentId to search for
+     * @return The recordId, or -1 if the studentId is not in the tree
+     */
     long search(long studentId) {
         // Null check for empty BTree
-        if (this.root == null) {
-            System.out.println("Student ID: " + studentId + "was not found in the B+Tree.");
+        if (this.root == NodeStore.NONE) {
             return -1;
         }
-
-        // Begin search at root
-        long recordId = searchNode(root, studentId);
-        
-        // Print message for student ID not found
-        if (recordId == -1) {
-            System.out.println("Student ID: " + studentId + "was not found in the B+Tree.");
+        if (metrics == null && cache == null && filter == null) {
+            // Begin search at root
+            return searchNode(root, studentId);
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        long recordId;
+        if (filter != null && !filter.mightContain(studentId)) {
+            recordId = -1;
+        } else if (cache == null) {
+            recordId = searchNode(root, studentId);
+        } else {
+            recordId = cache.get(studentId);
+            if (recordId == SearchCache.MISS) {
+                long stamp = cache.stamp(studentId);
+                recordId = searchNode(root, studentId);
+                cache.put(studentId, recordId, stamp);
+            }
+        }
+        if (metrics != null) {
+            metrics.searched(System.nanoTime() - start, recordId != -1);
         }
         return recordId;
     }
 
     // Search helper
-    long searchNode(BTreeNode node, long studentId) {
-        if (node.leaf) {
-            // Loop through indices
-            for (int i = 0; i < node.n; i++) { 
-                // Find index of given student ID in this leaf node
-                if (node.keys[i] == studentId) {
-                    // Return value of student ID at matching index
-                    return node.values[i];
-                }
+    // Follows the child left of the first key greater than the student ID at
+    // each level, then looks the student ID up in the leaf
+    long searchNode(int node, long studentId) {
+        return store.search(node, studentId);
+    }
+
+    /**
+     * Looks up many studentIds at once, without printing anything on a miss.
+     * The probes are visited in studentId order and share the walk down the
+     * tree: a probe in the same leaf as the one before it is searched there
+     * directly, and one in a neighbouring leaf climbs back only to their
+     * common ancestor instead of descending from the root.
+     *
+     * @param studentIds - The studentIds to look up, in any order
+     * @param recordIds  - Receives the recordId of studentIds[i] at index i,
+     *                   or -1 if that studentId is not in the tree
+     */
+    void searchMany(long[] studentIds, long[] recordIds) {
+        int count = studentIds.length;
+        if (recordIds.length < count) {
+            throw new IllegalArgumentException("Room for " + recordIds.length + " recordIds, need " + count);
+        }
+        if (root == NodeStore.NONE) {
+            Arrays.fill(recordIds, 0, count, -1);
+            return;
+        }
+
+        // Sort the probes unless the caller already did, remembering where
+        // each one came from
+        long[] keys = studentIds;
+        long[] positions = null;
+        for (int i = 1; i < count; i++) {
+            if (studentIds[i - 1] > studentIds[i]) {
+                keys = Arrays.copyOf(studentIds, count);
+                positions = new long[count];
+                sortProbes(keys, positions);
+                break;
             }
-        } else {
-            // Loop through indices in increasing order
-            for (int i = 0; i < node.n; i++) {
-                // Compare student ID to key
-                if (node.keys[i] > studentId) {
-                    // If student is smaller than key, perform sub-search on left child
-                    return searchNode(node.children[i], studentId);
+        }
+
+        // The path to the last probe's leaf, root first. Each node's subtree
+        // holds the keys from the last probe up to its bound, if it has one,
+        // so the next probe climbs only as far as the first node whose bound
+        // is above it and descends from there.
+        int[] nodes = new int[8];
+        long[] bounds = new long[8];
+        boolean[] bounded = new boolean[8];
+        nodes[0] = root;
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            long studentId = keys[i];
+            while (top > 0 && bounded[top] && studentId >= bounds[top]) {
+                top--;
+            }
+            int node = nodes[top];
+            while (!store.isLeaf(node)) {
+                int j = store.upperBound(node, studentId);
+                int n = store.n(node);
+                if (top + 1 == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                    bounded = Arrays.copyOf(bounded, bounded.length * 2);
                 }
+                // A child's bound is the separator right of it, or else the
+                // node's own bound
+                bounded[top + 1] = j < n || bounded[top];
+                bounds[top + 1] = j < n ? store.key(node, j) : bounds[top];
+                node = store.child(node, j);
+                nodes[++top] = node;
+            }
+
+            int j = store.find(node, studentId);
+            recordIds[positions == null ? i : (int) positions[i]] = j < 0 ? -1 : store.value(node, j);
+        }
+    }
+
+    // Sorts keys ascending and fills positions with where each key was.
+    // Student IDs are short enough that each key usually fits in one long
+    // together with its position, which sorts much faster than pairs.
+    private static void sortProbes(long[] keys, long[] positions) {
+        int count = keys.length;
+        int positionBits = 64 - Long.numberOfLeadingZeros(count);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long key : keys) {
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        if (min >= 0 && max >>> (63 - positionBits) == 0) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = keys[i] << positionBits | i;
             }
-            // If loop finishes without returning, studentId > all keys
-            // Search right-most child
-            return searchNode(node.children[node.n], studentId);
+            Arrays.sort(keys);
+            long mask = (1L << positionBits) - 1;
+            for (int i = 0; i < count; i++) {
+                positions[i] = keys[i] & mask;
+                keys[i] >>>= positionBits;
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
         }
-        return -1;
+        StudentCsv.sort(keys, positions, count, ForkJoinPool.commonPool());
     }
 
     BTree insert(Student student) {
+        return insert(student.studentId, student.recordId);
+    }
+
+    /**
+     * Inserts a single [ studentId,recordId ] pair.
+     *
+     * @param studentId - The key to insert
+     * @param recordId  - The recordId stored with it
+     * @return This tree.
+     */
+    BTree insert(long studentId, long recordId) {
+        long start = metrics != null ? System.nanoTime() : 0;
         // Null check
-        if (root == null) {
-            root = new BTreeNode(t, true);
+        if (root == NodeStore.NONE) {
+            root = store.allocate(true);
         }
         
-        BTreeNode leaf = findLeafNode(root, student.studentId);
-        if (leaf.n == 2 * t) {
-            splitLeafNode(leaf, student);
+        int leaf = findLeafNode(root, studentId);
+        if (store.n(leaf) == 2 * t) {
+            splitLeafNode(leaf, studentId, recordId);
         }else {
-            insertIntoLeaf(leaf, student);
+            insertIntoLeaf(leaf, studentId, recordId);
+        }
+        size++;
+        if (cache != null) {
+            cache.invalidate(studentId);
+        }
+        if (filter != null) {
+            addToFilter(studentId);
         }
 
+        if (metrics != null) {
+            metrics.inserted(System.nanoTime() - start);
+        }
         return this;
-    }  
+    }
 
-    // Find the leaf node where the studentId should be inserted
-    private BTreeNode findLeafNode(BTreeNode node, long studentId) {
-        if (node.leaf) {
-            return node;
+    /**
+     * Replaces the recordId stored with a studentId that is already in the
+     * tree, without changing its shape.
+     *
+     * @param studentId - The key to update
+     * @param recordId  - Its new recordId
+     * @return True if the key was found. False otherwise, and nothing is
+     *         changed.
+     */
+    boolean replace(long studentId, long recordId) {
+        if (root == NodeStore.NONE) {
+            return false;
+        }
+        int leaf = findLeafNode(root, studentId);
+        int i = store.find(leaf, studentId);
+        if (i < 0) {
+            return false;
+        }
+        store.setValue(leaf, i, recordId);
+        if (cache != null) {
+            cache.invalidate(studentId);
         }
+        return true;
+    }
 
-        int i = 0;
-        while (i < node.n && studentId > node.keys[i]) {
-            i++;
+    /**
+     * Inserts [ studentId,recordId ] pairs already sorted by studentId.
+     * Consecutive keys that land in the same leaf share one descent: the
+     * descent records the separator bounding the leaf on the right, and keys
+     * below it go straight into the leaf until it has to split.
+     *
+     * @param studentIds - Student IDs in ascending order
+     * @param recordIds  - Record IDs matching studentIds by position
+     * @param count      - Number of pairs to insert from the arrays
+     * @return This tree.
+     */
+    BTree insertSorted(long[] studentIds, long[] recordIds, int count) {
+        if (root == NodeStore.NONE) {
+            root = store.allocate(true);
         }
 
-        return findLeafNode(node.children[i], studentId);
+        int leaf = NodeStore.NONE;
+        for (int i = 0; i < count; i++) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            long studentId = studentIds[i];
+            if (leaf == NodeStore.NONE || (leafHasFence && studentId >= leafFence)) {
+                leaf = findLeafNode(root, studentId);
+            }
+            if (store.n(leaf) == 2 * t) {
+                // The split uses the path, so the next key descends again
+                splitLeafNode(leaf, studentId, recordIds[i]);
+                leaf = NodeStore.NONE;
+            } else {
+                insertIntoLeaf(leaf, studentId, recordIds[i]);
+            }
+            size++;
+            if (cache != null) {
+                cache.invalidate(studentId);
+            }
+            if (filter != null) {
+                addToFilter(studentId);
+            }
+            if (metrics != null) {
+                metrics.inserted(System.nanoTime() - start);
+            }
+        }
+        return this;
     }
 
-    // Insert the student into the leaf node
-    private void insertIntoLeaf(BTreeNode leaf, Student student) {
-        int i = leaf.n - 1;
+    /**
+     * Builds the tree bottom-up from (studentId, recordId) pairs that are
+     * already sorted by studentId, replacing any existing contents. Leaves are
+     * packed left to right and each internal level is built from the level
+     * below it, so no record pays a root-to-leaf descent or a split.
+     *
+     * @param studentIds - Student IDs in strictly ascending order
+     * @param recordIds  - Record IDs matching studentIds by position
+     * @param count      - Number of pairs to load from the arrays
+     * @param fillFactor - Fraction (0, 1] of each node to fill. Nodes are never
+     *                   filled below the minimum degree t.
+     * @return This tree.
+     */
+    BTree bulkLoad(long[] studentIds, long[] recordIds, int count,
+            double fillFactor) {
+        return bulkLoad(studentIds, recordIds, count, fillFactor, null);
+    }
 
-        // Find the position to insert the new student to maintain sorted order
-        while (i >= 0 && leaf.keys[i] > student.studentId) {
-            leaf.keys[i + 1] = leaf.keys[i];
-            leaf.values[i + 1] = leaf.values[i];
-            i--;
+    /**
+     * Builds the tree bottom-up like bulkLoad, checking the input and packing
+     * the leaves in parallel on the given pool. Each task fills a run of
+     * leaves whose positions in the input follow from the leaf count, so no
+     * task waits on another. The internal levels, a small fraction of the
+     * nodes, are then stitched together on the calling thread.
+     *
+     * @param studentIds - Student IDs in strictly ascending order
+     * @param recordIds  - Record IDs matching studentIds by position
+     * @param count      - Number of pairs to load from the arrays
+     * @param fillFactor - Fraction (0, 1] of each node to fill
+     * @param pool       - Pool to build the leaves on, or null to build them
+     *                   on the calling thread
+     * @return This tree.
+     */
+    BTree bulkLoad(long[] studentIds, long[] recordIds, int count,
+            double fillFactor, ForkJoinPool pool) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fillFactor);
         }
+        int blocks = (count + PARALLEL_BLOCK - 1) / PARALLEL_BLOCK;
+        forEachIndex(pool, blocks, block -> {
+            int end = Math.min(count, (block + 1) * PARALLEL_BLOCK);
+            for (int i = Math.max(1, block * PARALLEL_BLOCK); i < end; i++) {
+                if (studentIds[i - 1] >= studentIds[i]) {
+                    throw new IllegalArgumentException("Student IDs must be strictly ascending at index " + i);
+                }
+            }
+        });
 
-        // Insert the new student
-        leaf.keys[i + 1] = student.studentId;
-        leaf.values[i + 1] = student.recordId;
-        leaf.n++;
+        root = NodeStore.NONE;
+        store.clear();
+        size = count;
+        if (cache != null) {
+            cache.clear();
+        }
+        if (count == 0) {
+            if (filter != null) {
+                rebuildFilter(filter.falsePositiveRate());
+            }
+            return this;
+        }
+
+        // Pack the leaves and chain them together. The leaves take a run of
+        // reserved IDs, so each task sets up its own without touching the
+        // store's allocator.
+        int leafCount = nodeCount(count, (int) Math.round(2 * t * fillFactor), t, 2 * t);
+        int firstLeaf = store.reserve(leafCount);
+        int[] level = new int[leafCount];
+        long[] lowKeys = new long[leafCount];
+        int base = count / leafCount;
+        int extra = count % leafCount;
+        ForkJoinPool leafPool = store.parallelBuild() ? pool : null;
+        forEachIndex(leafPool, leafCount, i -> {
+            int leaf = firstLeaf + i;
+            store.create(leaf, true);
+            // The first count % leafCount leaves take one extra pair
+            int pos = i * base + Math.min(i, extra);
+            int leafSize = base + (i < extra ? 1 : 0);
+            store.putEntries(leaf, studentIds, recordIds, pos, leafSize);
+            store.setN(leaf, leafSize);
+            level[i] = leaf;
+            lowKeys[i] = studentIds[pos];
+        });
+        forEachIndex(leafPool, leafCount - 1, i -> {
+            store.setNext(level[i], level[i + 1]);
+            store.setPrev(level[i + 1], level[i]);
+        });
+
+        // Build internal levels until a single node is left. Each separator is
+        // the lowest key in the subtree to its right, as splitLeafNode does.
+        int width = leafCount;
+        while (width > 1) {
+            int parentCount = nodeCount(width, (int) Math.round((2 * t + 1) * fillFactor), t, 2 * t + 1);
+            int child = 0;
+            for (int i = 0; i < parentCount; i++) {
+                int parent = store.allocate(false);
+                int childCount = width / parentCount + (i < width % parentCount ? 1 : 0);
+                long lowKey = lowKeys[child];
+                for (int j = 0; j < childCount; j++, child++) {
+                    store.setChild(parent, j, level[child]);
+                    if (j > 0) {
+                        store.setKey(parent, j - 1, lowKeys[child]);
+                    }
+                }
+                store.setN(parent, childCount - 1);
+                level[i] = parent;
+                lowKeys[i] = lowKey;
+            }
+            width = parentCount;
+        }
+
+        root = level[0];
+        if (filter != null) {
+            rebuildFilter(filter.falsePositiveRate());
+        }
+        return this;
     }
 
-    // Split the leaf node if it is full
-    // The new leaf node will be created and the parent will be updated accordingly
-    // If the parent is full, it will call splitInternal to handle that case
-    private void splitLeafNode(BTreeNode leaf, Student student) {
-        BTreeNode newLeaf = new BTreeNode(t, true);
-        long[] tempKeys = new long[2 * t + 1];
-        long[] tempValues = new long[2 * t + 1];
+    /**
+     * Runs the action for every index in [0, count), split into tasks on the
+     * pool, or in order on the calling thread when the pool is null.
+     */
+    private static void forEachIndex(ForkJoinPool pool, int count, IntConsumer action) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else if (count > 0) {
+            pool.invoke(new IndexTask(action, 0, count, Math.max(1, count / (pool.getParallelism() * 8))));
+        }
+    }
 
-        for (int i = 0; i < leaf.n; i++) {
-            tempKeys[i] = leaf.keys[i];
-            tempValues[i] = leaf.values[i];
+    // Runs an action over a range of indexes, halving the range until it is
+    // no bigger than the threshold
+    @SuppressWarnings("serial")
+    private static final class IndexTask extends RecursiveAction {
+        private final IntConsumer action;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        IndexTask(IntConsumer action, int from, int to, int threshold) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
         }
 
-        // Insert the new key into temp arrays
-        int i = leaf.n - 1;
-        while (i >= 0 && student.studentId < tempKeys[i]) {
-            tempKeys[i + 1] = tempKeys[i];
-            tempValues[i + 1] = tempValues[i];
-            i--;
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                for (int i = from; i < to; i++) {
+                    action.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new IndexTask(action, from, mid, threshold), new IndexTask(action, mid, to, threshold));
         }
-        tempKeys[i + 1] = student.studentId;
-        tempValues[i + 1] = student.recordId;
-        int total = leaf.n + 1;
+    }
 
-        // Copy the first half to original leaf
-        for (i = 0; i < t; i++) {
-            leaf.keys[i] = tempKeys[i];
-            leaf.values[i] = tempValues[i];
+    /**
+     * Bulk load helper to pick how many nodes a level of the given number of
+     * entries is spread over, keeping every node between min and max entries
+     * whenever there is more than one node.
+     *
+     * @param entries - Number of entries (keys or children) on the level
+     * @param target  - Desired entries per node from the fill factor
+     * @param min     - Minimum entries per node
+     * @param max     - Maximum entries per node
+     * @return The number of nodes on the level
+     */
+    private static int nodeCount(int entries, int target, int min, int max) {
+        if (entries <= max) {
+            return 1;
+        }
+        target = Math.max(min, Math.min(max, target));
+        int nodes = (entries + target - 1) / target;
+        // Spread evenly, but never leave a node below the minimum.
+        if (entries / nodes < min) {
+            nodes = entries / min;
         }
-        leaf.n = t;
+        return nodes;
+    }
 
-        // Copy the second half to new leaf
-        for (i = t; i < total; i++) {
-            newLeaf.keys[i - t] = tempKeys[i];
-            newLeaf.values[i - t] = tempValues[i];
+    /**
+     * Streams the recordIds of students with IDs between lowId and highId,
+     * inclusive, in studentId order. A parallel stream splits the range at
+     * the separators of the internal nodes, so each task walks its own run of
+     * leaves. It runs in the common pool, or in the pool of the calling task
+     * when started inside one. The tree must not change while the stream is
+     * used.
+     *
+     * @param lowId    - The smallest studentId to return
+     * @param highId   - The largest studentId to return
+     * @param parallel - True for a parallel stream
+     * @return The recordIds in the range
+     */
+    LongStream recordIds(long lowId, long highId, boolean parallel) {
+      if (root == NodeStore.NONE || lowId > highId) {
+        return LongStream.empty();
+      }
+      return StreamSupport.longStream(new BTreeSpliterator(store, root, lowId, highId, size), parallel);
+    }
+
+    /**
+     * Opens a cursor over every student with an ID between lowId and highId,
+     * inclusive, in ascending order.
+     *
+     * @param lowId  - The smallest studentId to return
+     * @param highId - The largest studentId to return
+     * @return A cursor positioned before the first matching entry
+     */
+    BTreeCursor range(long lowId, long highId) {
+      return range(lowId, highId, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Opens a cursor over students with IDs between lowId and highId,
+     * inclusive. The tree is descended once to the first leaf in the range and
+     * the cursor then follows the leaf chain, so no result list is built.
+     *
+     * @param lowId   - The smallest studentId to return
+     * @param highId  - The largest studentId to return
+     * @param limit   - The most entries the cursor returns before stopping
+     * @param reverse - True to return entries from highId down to lowId
+     * @return A cursor positioned before the first matching entry
+     */
+    BTreeCursor range(long lowId, long highId, long limit, boolean reverse) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("Limit must not be negative: " + limit);
+      }
+      if (root == NodeStore.NONE || lowId > highId || limit == 0) {
+        return new BTreeCursor(store, NodeStore.NONE, 0, lowId, highId, 0, reverse);
+      }
+
+      // Start at the first entry >= lowId, or the last entry <= highId.
+      if (reverse) {
+        int leaf = findLeafNode(root, highId);
+        return new BTreeCursor(store, leaf, store.upperBound(leaf, highId) - 1, lowId, highId, limit, reverse);
+      }
+      int leaf = findLeafNode(root, lowId);
+      return new BTreeCursor(store, leaf, store.lowerBound(leaf, lowId), lowId, highId, limit, reverse);
+    }
+
+    // Find the leaf node where the studentId should be inserted
+    // The internal nodes passed on the way down are recorded in path, so a split
+    // can walk back up to the parent without searching the tree for it
+    private int findLeafNode(int node, long studentId) {
+        pathDepth = 0;
+        leafHasFence = false;
+        while (!store.isLeaf(node)) {
+            if (pathDepth == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[pathDepth++] = node;
+
+            // Descend the same way searchNode does, so a key equal to a
+            // separator goes right
+            int i = store.upperBound(node, studentId);
+            if (i < store.n(node)) {
+                // The deepest separator right of the path is the tightest
+                leafFence = store.key(node, i);
+                leafHasFence = true;
+            }
+            node = store.child(node, i);
         }
-        newLeaf.n = total - t;
+        return node;
+    }
+
+    // Insert the student into the leaf node
+    private void insertIntoLeaf(int leaf, long studentId, long recordId) {
+        // Find the position to insert the new student to maintain sorted order
+        int i = store.upperBound(leaf, studentId);
+        int n = store.n(leaf);
+        store.copyKeys(leaf, i, leaf, i + 1, n - i);
+        store.copyValues(leaf, i, leaf, i + 1, n - i);
 
-        newLeaf.next = leaf.next;
-        leaf.next = newLeaf;
+        // Insert the new student
+        store.setKey(leaf, i, studentId);
+        store.setValue(leaf, i, recordId);
+        store.setN(leaf, n + 1);
+    }
+
+    // Split the leaf node if it is full
+    // The new leaf node will be created and the parent will be updated accordingly
+    // If the parent is full, it will call splitInternal to handle that case
+    private void splitLeafNode(int leaf, long studentId, long recordId) {
+        if (metrics != null) {
+            metrics.split(true);
+        }
+        int newLeaf = store.allocate(true);
+        int n = store.n(leaf);
+
+        // The original leaf keeps the first t of the n + 1 entries, counting
+        // the new one after any equal keys, and the new leaf gets the rest
+        int i = store.upperBound(leaf, studentId);
+        if (i < t) {
+            // The new entry goes left, pushing the left half's last entry over
+            store.copyKeys(leaf, t - 1, newLeaf, 0, n - t + 1);
+            store.copyValues(leaf, t - 1, newLeaf, 0, n - t + 1);
+            store.copyKeys(leaf, i, leaf, i + 1, t - 1 - i);
+            store.copyValues(leaf, i, leaf, i + 1, t - 1 - i);
+            store.setKey(leaf, i, studentId);
+            store.setValue(leaf, i, recordId);
+        } else {
+            // The new entry goes right, between the entries around it
+            store.copyKeys(leaf, t, newLeaf, 0, i - t);
+            store.copyValues(leaf, t, newLeaf, 0, i - t);
+            store.setKey(newLeaf, i - t, studentId);
+            store.setValue(newLeaf, i - t, recordId);
+            store.copyKeys(leaf, i, newLeaf, i - t + 1, n - i);
+            store.copyValues(leaf, i, newLeaf, i - t + 1, n - i);
+        }
+        store.setN(leaf, t);
+        store.setN(newLeaf, n + 1 - t);
+
+        int next = store.next(leaf);
+        store.setNext(newLeaf, next);
+        store.setPrev(newLeaf, leaf);
+        if (next != NodeStore.NONE) {
+            store.setPrev(next, newLeaf);
+        }
+        store.setNext(leaf, newLeaf);
 
         // Insert the middle value into the parent node, if the leaf is the root, create a new root
+        long separator = store.key(newLeaf, 0);
         if (leaf == root) {
-            BTreeNode newRoot = new BTreeNode(t, false);
-            newRoot.keys[0] = newLeaf.keys[0];
-            newRoot.children[0] = leaf;
-            newRoot.children[1] = newLeaf;
-            newRoot.n = 1;
-            root = newRoot;
+            newRoot(leaf, separator, newLeaf);
         } else {
-            insertIntoParent(leaf, newLeaf.keys[0], newLeaf);
+            insertIntoParent(leaf, separator, newLeaf);
         }
     }
+
+    // Grow the tree by one level, under a new root holding the key that
+    // separates the two halves of a split
+    private void newRoot(int left, long key, int right) {
+        int newRoot = store.allocate(false);
+        store.setKey(newRoot, 0, key);
+        store.setChild(newRoot, 0, left);
+        store.setChild(newRoot, 1, right);
+        store.setN(newRoot, 1);
+        root = newRoot;
+    }
     
     // Insert the new leaf into the parent node
-    // If the parent is full, it will call splitInternal to handle that case
-    // If the parent is the root, it will create a new root node and update the root pointer accordingly
-    private void insertIntoParent(BTreeNode leaf, long key, BTreeNode newLeaf) {
-        BTreeNode parent = findParent(root, leaf);
-        if (parent == null) {
+    // The parent is the last node left on the descent path recorded by findLeafNode
+    // If the parent is full, it is split first and the key goes into whichever half it belongs to
+    // If there is no parent, it will create a new root node and update the root pointer accordingly
+    private void insertIntoParent(int leaf, long key, int newLeaf) {
+        int parent = pathDepth > 0 ? path[--pathDepth] : NodeStore.NONE;
+        if (parent == NodeStore.NONE) {
             // If there is no parent, create a new root
-            BTreeNode newRoot = new BTreeNode(t, false);
-            newRoot.keys[0] = key;
-            newRoot.children[0] = leaf;
-            newRoot.children[1] = newLeaf;
-            newRoot.n = 1;
-            root = newRoot;
+            newRoot(leaf, key, newLeaf);
         } else {
             // If the parent is full, split it
-            if (parent.n == 2 * t) {
-                splitParent(parent);
-            }
-            // Insert the key into the parent node
-            int i = parent.n - 1;
-            while (i >= 0 && parent.keys[i] > key) {
-                parent.keys[i + 1] = parent.keys[i];
-                parent.children[i + 2] = parent.children[i + 1];
-                i--;
+            if (store.n(parent) == 2 * t) {
+                long middleKey = store.key(parent, t - 1);
+                int newInternal = splitParent(parent);
+                if (key > middleKey) {
+                    parent = newInternal;
+                }
             }
-            parent.keys[i + 1] = key;
-            parent.children[i + 2] = newLeaf;
-            parent.n++;
+            // Insert the key into the parent node, after any equal keys
+            int n = store.n(parent);
+            int i = store.upperBound(parent, key);
+            store.copyKeys(parent, i, parent, i + 1, n - i);
+            store.copyChildren(parent, i + 1, parent, i + 2, n - i);
+            store.setKey(parent, i, key);
+            store.setChild(parent, i + 1, newLeaf);
+            store.setN(parent, n + 1);
         } 
     }
 
-    // Find the parent of the given node
-    // If the parent is not found, it returns null
-    private BTreeNode findParent(BTreeNode node, BTreeNode child) {
-        if (node == null || node.leaf) {
-            return null; // No parent for root or leaf nodes
-        }
-
-        for (int i = 0; i < node.n + 1; i++) {
-            if (node.children[i] == child) {
-                return node; // Found the parent
-            } else {
-                BTreeNode parent = findParent(node.children[i], child);
-                if (parent != null) {
-                    return parent;
-                }
-            }
-        }
-        return null;
-    }
     // Split the parent node if it is full
-    // If the parent is full, it will call splitInternal to handle that case
-    // The new key is the middle key that will be moved up to the parent
-    private void splitParent(BTreeNode node) {
-        BTreeNode newInternal = new BTreeNode(t, false);
+    // The middle key is moved up to the grandparent, which may split in turn
+    // Returns the new internal node holding the upper half of the keys
+    private int splitParent(int node) {
+        if (metrics != null) {
+            metrics.split(false);
+        }
+        int newInternal = store.allocate(false);
         int midIndex = t - 1; // Middle index for splitting
+        int n = store.n(node);
 
         // Move the second half of the keys and children to the new internal node excluding the middle key
-        for (int i = midIndex + 1; i < node.n; i++) {
-            newInternal.keys[i - (midIndex + 1)] = node.keys[i];
-        }
-        for (int i = midIndex + 1; i <= node.n; i++) {
-            newInternal.children[i - (midIndex + 1)] = node.children[i];
-        }
+        store.copyKeys(node, midIndex + 1, newInternal, 0, n - (midIndex + 1));
+        store.copyChildren(node, midIndex + 1, newInternal, 0, n - midIndex);
 
-        newInternal.n = node.n - (midIndex + 1);
-        node.n = midIndex;
+        store.setN(newInternal, n - (midIndex + 1));
+        store.setN(node, midIndex);
 
         // If the node is the root, create a new root
+        long middleKey = store.key(node, midIndex);
         if (node == root) {
-            BTreeNode newRoot = new BTreeNode(t, false);
-            newRoot.keys[0] = node.keys[midIndex]; 
-            newRoot.children[0] = node;
-            newRoot.children[1] = newInternal;
-            newRoot.n = 1;
-            root = newRoot;
+            newRoot(node, middleKey, newInternal);
         } else {
-            insertIntoParent(node, node.keys[midIndex], newInternal);
+            insertIntoParent(node, middleKey, newInternal);
         }
+        return newInternal;
     }
 
     /**
-     * Deletes the given studentId from the BTree and the student.csv.
+     * Deletes the given studentId from the BTree only, leaving student.csv and
+     * the heap file to the caller.
+     *
+     * @param studentId - The studentId to delete
+     * @return True if the studentId was deleted. False otherwise.
+     */
+    boolean remove(long studentId) {
+      if (this.root == NodeStore.NONE) {
+        return false;
+      }
+      long start = metrics != null ? System.nanoTime() : 0;
+      // Run deleteHelper to delete from BTree.
+      boolean isDeleted = deleteHelper(this.root, studentId);
+      if (isDeleted) {
+        size--;
+        // A merge may have left the root with a single child
+        if (!store.isLeaf(root) && store.n(root) == 0) {
+          int oldRoot = root;
+          root = store.child(root, 0);
+          store.free(oldRoot);
+        }
+        if (cache != null) {
+          cache.invalidate(studentId);
+        }
+        if (filter != null && ++filterDeletes > filter.capacity() / 4) {
+          rebuildFilter(filter.falsePositiveRate());
+        }
+      }
+      if (metrics != null) {
+        metrics.deleted(System.nanoTime() - start, isDeleted);
+      }
+      return isDeleted;
+    }
+
+    /**
+     * Deletes the given studentId from the BTree and the student.csv, or from
+     * the heap file if one is attached.
      * 
      * @param studentId- The studentId to search for and delete.
      * @return True if student was deleted. False otherwise.
+     * @throws UncheckedIOException if the student was deleted from the BTree
+     *                              but the data file couldn't be updated
      */
     boolean delete(long studentId) {
       // Check if the BTree is empty.
-      if (this.root == null) {
+      if (this.root == NodeStore.NONE) {
         return false;
       }
 
-      // Run deleteHelper to delete from BTree.
-      boolean isDeleted =
-          deleteHelper(null, this.root, studentId, new LongRef(-1));
+      // The heap file row is addressed by the recordId, so look it up first.
+      long recordId = heapFile != null ? searchNode(root, studentId) : -1;
+
+      boolean isDeleted = remove(studentId);
 
+      // If deletion succeeds, free the row in the heap file, unless the
+      // recordId addresses another student's row.
+      if (isDeleted && heapFile != null) {
+        Student row = heapFile.read(recordId);
+        if (row != null && row.studentId == studentId) {
+          heapFile.delete(recordId);
+        }
+      }
       // If deletion succeeds, delete in student.csv.
-      if (isDeleted) {
+      else if (isDeleted) {
         try {
           // Read from file.
           BufferedReader reader =
-              new BufferedReader(new FileReader("src/Student.csv"));
+              new BufferedReader(new FileReader(csvFile.toFile()));
           
           String curLine = reader.readLine();
           String splitBy = ",";
@@ -291,7 +931,7 @@ class BTree {
           reader.close();
           
           // Write to file.
-          FileWriter writer = new FileWriter("src/Student.csv");
+          FileWriter writer = new FileWriter(csvFile.toFile());
           for (int i = 0; i < linesToWrite.size(); i++) {
             writer.write(linesToWrite.get(i));
             writer.write("\n");
@@ -299,8 +939,7 @@ class BTree {
           writer.close();
 
         } catch (IOException e) {
-          e.printStackTrace();
-          System.out.println("Error updating student.csv for deletion.");
+          throw new UncheckedIOException(e);
         }
       }
 
@@ -308,122 +947,60 @@ class BTree {
     }
 
     /**
-     * Recursive helper method to delete studentId from the B-Tree. Student
-     * deletion works only if the studentID is in a leaf node.
+     * Recursive helper method to delete studentId from the B+Tree. The key is
+     * removed from its leaf, and on the way back up any child left with too
+     * few keys borrows from a sibling or is merged into one.
      * 
-     * @param parent       - The parent node.
-     * @param node         - The current node that is being checked.
-     * @param studentId    - The studentId to search for and delete.
-     * @param oldStudentId - The studentId to delete from the parent, if a child
-     *                     is deleted because of a merge.
+     * @param node      - The current node that is being checked.
+     * @param studentId - The studentId to search for and delete.
      * @return True if a studentId is found and deleted. False otherwise.
      */
-    private boolean deleteHelper(BTreeNode parent, BTreeNode node, long studentId,
-        LongRef oldStudentId) {
-
-      // If node is non-leaf,
-      if (!node.leaf) {
-
-        int j = findChildIndex(node, studentId);
-        boolean isDeleted =
-            deleteHelper(node, node.children[j], studentId, oldStudentId);
+    private boolean deleteHelper(int node, long studentId) {
 
-        // If nothing was deleted,
-        if (!isDeleted) {
-          return isDeleted;
-        }
+      // If node is leaf, remove the studentId from it.
+      if (store.isLeaf(node)) {
+        int i = findKeysIndex(node, studentId);
 
-        // If child was not deleted,
-        if (oldStudentId.value == -1) {
-          return isDeleted;
+        // If index is same as number of keys, studentId was not found.
+        if (i == store.n(node)) {
+          return false;
         }
-        // If child was deleted from merge, check minimum degree.
-        else {
-          int i = findKeysIndex(node, oldStudentId.value);
+        shiftLeft(node, i);
+        store.setN(node, store.n(node) - 1);
+        return true;
+      }
 
-          // Node has entries to spare OR the node is the root
-          if (node.n > node.t || parent == null) {
-            shiftLeft(node, i);
-            shiftChildrenLeft(node, i + 1);
-            node.n--;
-            oldStudentId.value = -1;
-            return isDeleted;
-          }
-          // Node doesn't have entries to spare
-          else {
-            // Find indices in the parent's children array
-            int nodeIndex = findChildIndex(parent, oldStudentId.value);
-            int siblingIndex = findSiblingIndex(parent, nodeIndex);
-
-            // Redistribute between node and sibling
-            if (siblingIndex != -1) {
-              redistribute(parent, nodeIndex, siblingIndex, i);
-              oldStudentId.value = -1;
-              return isDeleted;
-            }
-            // Merge node and sibling
-            else {
-              // Set oldStudentId for recursive removal and check.
-              oldStudentId.value = parent.keys[nodeIndex];
-              shiftRight(node, i);
-              merge(parent, nodeIndex);
-              return isDeleted;
-            }
-          } // else node has no entries to spare
-        } // else child was deleted from merge
+      // Otherwise, delete from the child and fix the child if it underflowed.
+      int j = findChildIndex(node, studentId);
+      int child = store.child(node, j);
+      if (!deleteHelper(child, studentId)) {
+        return false;
       }
-      // If node is leaf,
-      else {
-        int i = findKeysIndex(node, studentId); // Find studentId keys index.
+      if (store.n(child) < minKeys(child)) {
+        int siblingIndex = findSiblingIndex(node, j);
 
-        // If index is same as length of keys array, studentId was not found.
-        if (i == node.keys.length) {
-          return false;
+        // Redistribute between child and sibling
+        if (siblingIndex != -1) {
+          redistribute(node, j, siblingIndex);
         }
-        // Otherwise, studentId was found.
-        else {
-          // Node has entries to spare OR the root is a leaf
-          if (node.n > node.t || parent == null) {
-            shiftLeft(node, i);
-            node.n--;
-            oldStudentId.value = -1;
-            return true;
-          }
-          // Node doesn't have entries to spare.
-          else {
-            // Find indices in the parent's children array
-            int nodeIndex = findChildIndex(parent, studentId);
-            int siblingIndex = findSiblingIndex(parent, nodeIndex);
-
-            // Redistribute between node and sibling
-            if (siblingIndex != -1) {
-              redistribute(parent, nodeIndex, siblingIndex, i);
-              oldStudentId.value = -1;
-              return true;
-            }
-            // Merge node and sibling
-            else {
-              // Set oldStudentId for recursive removal and check.
-              oldStudentId.value = parent.keys[nodeIndex];
-              shiftRight(node, i);
-              merge(parent, nodeIndex);
-              return true;
-            } // else merge
-          } // else node has no entries to spare
-        } // else studentId found
-      } // else node is leaf
+        // Merge child and sibling. With t = 1 an internal node may have no
+        // keys, and so no sibling, in which case the child is left as is.
+        else if (store.n(node) > 0) {
+          merge(node, j < store.n(node) ? j : j - 1);
+        }
+      }
+      return true;
     }
 
     /**
-     * Wrapper class to store oldStudentId.
+     * The fewest keys a node other than the root may hold: t for a leaf, which
+     * is what a split leaves in the left half, and t - 1 for an internal node.
+     * 
+     * @param node - The node
+     * @return The minimum number of keys
      */
-    private static class LongRef {
-      long value;
-
-      // Constructor
-      LongRef(long value) {
-        this.value = value;
-      }
+    private int minKeys(int node) {
+      return store.isLeaf(node) ? t : t - 1;
     }
 
     /**
@@ -433,16 +1010,9 @@ class BTree {
      * @param studentId - The studentId
      * @return The index in the children array
      */
-    private int findChildIndex(BTreeNode node, long studentId) {
-      int i = 0;
-      while (i < node.n) {
-        // Return when studentId is less than the comparisonId
-        if (studentId < node.keys[i]) {
-          return i;
-        }
-        i++;
-      }
-      return i;
+    private int findChildIndex(int node, long studentId) {
+      // First index where studentId is less than the comparisonId
+      return store.upperBound(node, studentId);
     }
 
     /**
@@ -450,60 +1020,60 @@ class BTree {
      * 
      * @param node      - The node to search the keys array
      * @param studentId - The studentId
-     * @return The index in the keys (and values) array
+     * @return The index in the keys (and values) array, or the node's key
+     *         count if the studentId is not in the node
      */
-    private int findKeysIndex(BTreeNode node, long studentId) {
-      int i = 0;
-      while (i < node.n) {
-        // Return when studentId is equal to the comparisonId
-        if (studentId == node.keys[i]) {
-          return i;
-        }
-        i++;
+    private int findKeysIndex(int node, long studentId) {
+      int i = store.find(node, studentId);
+      // Return when studentId is equal to the comparisonId
+      if (i >= 0) {
+        return i;
       }
-      return i;
+      return store.n(node);
     }
 
     /**
      * Delete helper method to find the index of the sibling the node will pull
-     * key values from, when the node has minimum number of keys. If neither
-     * sibling can be used, returns -1.
+     * key values from, when the node has too few keys. If neither sibling can
+     * be used, returns -1.
      * 
      * @param parent    - Parent node
      * @param nodeIndex - Node's index in the parent's children array
      * @return The sibling's index in the children array. If neither sibling can
      *         be used, returns -1.
      */
-    private int findSiblingIndex(BTreeNode parent, int nodeIndex) {
+    private int findSiblingIndex(int parent, int nodeIndex) {
       // Fields
       int leftIndex = nodeIndex - 1;
       int rightIndex = nodeIndex + 1;
-      BTreeNode leftSibling = null;
-      BTreeNode rightSibling = null;
+      int leftKeys = 0;
+      int rightKeys = 0;
       boolean useLeft = false;
       boolean useRight = false;
 
       // If left sibling exists,
       if (nodeIndex > 0) {
-        leftSibling = parent.children[leftIndex];
+        int leftSibling = store.child(parent, leftIndex);
+        leftKeys = store.n(leftSibling);
         // Check if left sibling has keys to spare.
-        if (leftSibling.n > leftSibling.t) {
+        if (leftKeys > minKeys(leftSibling)) {
           useLeft = true;
         }
       }
 
       // If right sibling exists,
-      if (nodeIndex < parent.n) {
-        rightSibling = parent.children[rightIndex];
+      if (nodeIndex < store.n(parent)) {
+        int rightSibling = store.child(parent, rightIndex);
+        rightKeys = store.n(rightSibling);
         // Check if right sibling has keys to spare.
-        if (rightSibling.n > rightSibling.t) {
+        if (rightKeys > minKeys(rightSibling)) {
           useRight = true;
         }
       }
 
       // If both siblings have keys to spare, pick the one with more keys.
       if (useLeft && useRight) {
-        if (leftSibling.n >= rightSibling.n) {
+        if (leftKeys >= rightKeys) {
           return leftIndex;
         } else {
           return rightIndex;
@@ -522,276 +1092,312 @@ class BTree {
     }
 
     /**
-     * Redistributes keys and values between a node and its sibling by rotating
-     * values through the parent.
+     * Moves one key from a sibling with keys to spare into the node.
      * 
-     * @param parent       - The parent node
-     * @param nodeIndex    - The index of the node in the parent's children array
-     * @param sibIndex     - The index of the sibling in the parent's children
-     *                     array
-     * @param studentIndex - The index of the studentId in the node's keys array
+     * @param parent    - The parent node
+     * @param nodeIndex - The index of the node in the parent's children array
+     * @param sibIndex  - The index of the sibling in the parent's children
+     *                  array
      */
-    private void redistribute(BTreeNode parent, int nodeIndex, int sibIndex,
-        int studentIndex) {
-      BTreeNode node = parent.children[nodeIndex];
-
+    private void redistribute(int parent, int nodeIndex, int sibIndex) {
+      if (metrics != null) {
+        metrics.redistributed(store.isLeaf(store.child(parent, nodeIndex)));
+      }
       // Pull from left sibling (rotate right)
       if (sibIndex < nodeIndex) {
-        shiftRight(node, studentIndex); // Remove studentId
-        if (!node.leaf) {
-          shiftChildrenRight(node, studentIndex);
-        }
-        rotateRight(parent, studentIndex, sibIndex);
+        rotateRight(parent, nodeIndex);
       }
       // Pull from right sibling (rotate left)
       else {
-        shiftLeft(node, studentIndex); // Remove studentId
-        if (!node.leaf) {
-          shiftChildrenLeft(node, studentIndex + 1);
-        }
-        rotateLeft(parent, studentIndex, sibIndex);
+        rotateLeft(parent, nodeIndex);
       }
     }
 
     /**
-     * Merges two nodes. This method always merges with the right sibling, unless
-     * the node has no right sibling (that is, it is the last node in the children
-     * array).
+     * Merges the child at index with its right sibling, removes the separator
+     * between them from the parent, and frees the right sibling.
      * 
-     * @param parent    - The parent node
-     * @param nodeIndex - The index of the node in the parent's children array
+     * @param parent - The parent node
+     * @param index  - The index of the left node in the parent's children array
      */
-    private void merge(BTreeNode parent, int nodeIndex) {
-      BTreeNode node = parent.children[nodeIndex];
-
-      // Merge with right sibling, unless node has no right sibling.
-      if (nodeIndex != parent.n) {
-        int parentIndex = nodeIndex;
-        BTreeNode rightSib = parent.children[nodeIndex + 1];
-
-        // Update keys and values in node.
-        // Node <-- parent
-        node.keys[node.n - 1] = parent.keys[parentIndex];
-        node.values[node.n - 1] = parent.values[parentIndex];
-        // Node <-- sibling
-        int j = 0; // Sibling keys and values index
-        for (int i = node.n; i < node.keys.length; i++) {
-          node.keys[i] = rightSib.keys[j];
-          node.values[i] = rightSib.values[j];
-          node.n++;
-          j++;
-          // Exit the loop after all sibling keys and values have been moved.
-          if (j == rightSib.n) {
-            break;
-          }
-        } // for
-
-        // Update sibling pointer.
-        if (node.leaf && rightSib.next != null) {
-          node.next = rightSib.next;
-        }
+    private void merge(int parent, int index) {
+      int node = store.child(parent, index);
+      int rightSib = store.child(parent, index + 1);
+      boolean leaf = store.isLeaf(node);
+      if (metrics != null) {
+        metrics.merged(leaf);
       }
-      // Merge with left sibling
-      else {
-        int parentPos = nodeIndex - 1;
-        BTreeNode leftSib = parent.children[nodeIndex - 1];
-
-        // Update keys and values in sibling.
-        // Sibling <-- parent
-        leftSib.keys[leftSib.n] = parent.keys[parentPos];
-        leftSib.values[leftSib.n] = parent.values[parentPos];
-        leftSib.n++;
-        // Sibling <-- node
-        int j = 0; // Node keys and values index
-        for (int i = leftSib.n; i < leftSib.keys.length; i++) {
-          leftSib.keys[i] = node.keys[j];
-          leftSib.values[i] = node.values[j];
-          leftSib.n++;
-          j++;
-          // Exit the loop after all node keys and values have been moved.
-          if (j == node.n - 1) {
-            break;
-          }
-        } // for
 
-        // Update sibling pointer.
-        if (leftSib.leaf) {
-          leftSib.next = null;
+      int n = store.n(node);
+      int rightN = store.n(rightSib);
+      if (leaf) {
+        // Leaves keep every key, so the separator just goes away
+        store.copyKeys(rightSib, 0, node, n, rightN);
+        store.copyValues(rightSib, 0, node, n, rightN);
+        store.setN(node, n + rightN);
+
+        // Update sibling pointers, unlinking the right sibling.
+        int next = store.next(rightSib);
+        store.setNext(node, next);
+        if (next != NodeStore.NONE) {
+          store.setPrev(next, node);
         }
+      } else {
+        // The separator comes down between the two halves
+        store.setKey(node, n, store.key(parent, index));
+        store.copyKeys(rightSib, 0, node, n + 1, rightN);
+        store.copyChildren(rightSib, 0, node, n + 1, rightN + 1);
+        store.setN(node, n + rightN + 1);
       }
+
+      // Update parent.
+      shiftLeft(parent, index);
+      shiftChildrenLeft(parent, index + 1);
+      store.setN(parent, store.n(parent) - 1);
+      store.free(rightSib);
     }
 
     /**
      * Rotates values right (clockwise). That is, the left sibling distributes
-     * values to the node through their shared parent.
+     * its last key to the node, and the separator between them is updated.
      * 
      * @param parent    - The parent node
      * @param nodeIndex - The index of the node in the parent's children array
-     * @param sibIndex  - The index of the left sibling in the parent's children
-     *                  array
      */
-    private void rotateRight(BTreeNode parent, int nodeIndex, int sibIndex) {
+    private void rotateRight(int parent, int nodeIndex) {
       int parentPos = nodeIndex - 1;
-      BTreeNode node = parent.children[nodeIndex];
-      BTreeNode leftSibling = parent.children[sibIndex];
-
-      // Update node.
-      node.keys[0] = parent.keys[parentPos];
-      node.values[0] = parent.values[parentPos];
-      if (!node.leaf) {
-        node.children[0] = leftSibling.children[leftSibling.n];
+      int node = store.child(parent, nodeIndex);
+      int leftSibling = store.child(parent, nodeIndex - 1);
+      int n = store.n(node);
+      int leftN = store.n(leftSibling);
+
+      shiftRight(node);
+      if (store.isLeaf(node)) {
+        // The moved entry is the node's new lowest key
+        store.setKey(node, 0, store.key(leftSibling, leftN - 1));
+        store.setValue(node, 0, store.value(leftSibling, leftN - 1));
+        store.setKey(parent, parentPos, store.key(node, 0));
+      } else {
+        // The separator comes down and the sibling's last key goes up
+        store.copyChildren(node, 0, node, 1, n + 1);
+        store.setKey(node, 0, store.key(parent, parentPos));
+        store.setChild(node, 0, store.child(leftSibling, leftN));
+        store.setChild(leftSibling, leftN, NodeStore.NONE);
+        store.setKey(parent, parentPos, store.key(leftSibling, leftN - 1));
       }
-
-      // Update parent.
-      parent.keys[parentPos] = leftSibling.keys[leftSibling.n - 1];
-      parent.values[parentPos] = leftSibling.values[leftSibling.n - 1];
-
-      // Update sibling.
-      leftSibling.keys[leftSibling.n - 1] = 0L;
-      leftSibling.values[leftSibling.n - 1] = 0L;
-      leftSibling.n--;
+      store.setN(node, n + 1);
+      store.setN(leftSibling, leftN - 1);
     }
 
     /**
      * Rotates values left (counter-clockwise). That is, the right sibling
-     * distributes values to the node through their shared parent.
+     * distributes its first key to the node, and the separator between them
+     * is updated.
      * 
      * @param parent    - Parent node
      * @param nodeIndex - The index of the node in the parent's children array
-     * @param sibIndex  - The index of the right sibling in the parent's children
-     *                  array
      */
-    private void rotateLeft(BTreeNode parent, int nodeIndex, int sibIndex) {
+    private void rotateLeft(int parent, int nodeIndex) {
       int parentPos = nodeIndex;
-      BTreeNode node = parent.children[nodeIndex];
-      BTreeNode rightSibling = parent.children[sibIndex];
-
-      // Update node.
-      node.keys[node.n - 1] = parent.keys[parentPos];
-      node.values[node.n - 1] = parent.values[parentPos];
-      if (!node.leaf) {
-        node.children[node.n] = rightSibling.children[0];
-      }
-
-      // Update parent.
-      parent.keys[parentPos] = rightSibling.keys[0];
-      parent.values[parentPos] = rightSibling.values[0];
-
-      // Update sibling.
-      shiftLeft(rightSibling, 0);
-      if (!rightSibling.leaf) {
+      int node = store.child(parent, nodeIndex);
+      int rightSibling = store.child(parent, nodeIndex + 1);
+      int n = store.n(node);
+
+      if (store.isLeaf(node)) {
+        store.setKey(node, n, store.key(rightSibling, 0));
+        store.setValue(node, n, store.value(rightSibling, 0));
+        shiftLeft(rightSibling, 0);
+        store.setN(rightSibling, store.n(rightSibling) - 1);
+        // The sibling's new lowest key separates the two
+        store.setKey(parent, parentPos, store.key(rightSibling, 0));
+      } else {
+        // The separator comes down and the sibling's first key goes up
+        store.setKey(node, n, store.key(parent, parentPos));
+        store.setChild(node, n + 1, store.child(rightSibling, 0));
+        store.setKey(parent, parentPos, store.key(rightSibling, 0));
+        shiftLeft(rightSibling, 0);
         shiftChildrenLeft(rightSibling, 0);
+        store.setN(rightSibling, store.n(rightSibling) - 1);
       }
-      rightSibling.n--;
+      store.setN(node, n + 1);
     }
 
     /**
-     * Shifts values in the keys and values array right, to make room in position
-     * 0.
+     * Shifts values in the keys and values arrays right, to make room in
+     * position 0.
      * 
      * @param node - The node to shift values for
-     * @param i    - The index to start shifting values at
      */
-    private void shiftRight(BTreeNode node, int i) {
-      while (i > 0) {
-        node.keys[i] = node.keys[i - 1];
-        node.values[i] = node.values[i - 1];
-        i--;
+    private void shiftRight(int node) {
+      int n = store.n(node);
+      store.copyKeys(node, 0, node, 1, n);
+      if (store.isLeaf(node)) {
+        store.copyValues(node, 0, node, 1, n);
       }
-      node.keys[0] = 0L;
-      node.values[0] = 0L;
     }
 
     /**
-     * Shifts values in the keys and values arrays left.
+     * Shifts values in the keys and values arrays left, over position i.
      * 
      * @param node - The node to shift values for
-     * @param i    - The index to start shifting values at
+     * @param i    - The index of the key to remove
      */
-    private void shiftLeft(BTreeNode node, int i) {
-      // Loop through keys array to shift values down
-      while (i < node.n) {
-        // If the number of keys did not fill the array
-        if (i + 1 < node.keys.length) {
-          node.keys[i] = node.keys[i + 1];
-          node.values[i] = node.values[i + 1];
-        }
-        // If the number of keys previously filled the array
-        else {
-          node.keys[i] = 0L;
-          node.values[i] = 0L;
-        }
-        i++;
-      } // while
+    private void shiftLeft(int node, int i) {
+      int n = store.n(node);
+      store.copyKeys(node, i + 1, node, i, n - i - 1);
+      if (store.isLeaf(node)) {
+        store.copyValues(node, i + 1, node, i, n - i - 1);
+      }
     }
 
     /**
-     * Shifts children pointers right.
+     * Shifts children pointers left, over position i.
      * 
      * @param node - The node to shift children for
-     * @param i    - The index to start shifting values at
+     * @param i    - The index of the child to remove
      */
-    private void shiftChildrenRight(BTreeNode node, int i) {
-      // Loop through children array to shift children up
-      while (i > 0) {
-        node.children[i] = node.children[i - 1];
-        i--;
-      }
-      node.children[0] = null;
+    private void shiftChildrenLeft(int node, int i) {
+      int n = store.n(node);
+      store.copyChildren(node, i + 1, node, i, n - i);
+      store.setChild(node, n, NodeStore.NONE);
+    }
+
+    LongList print() {
+
+        LongList listOfRecordID = new LongList((int) Math.min(size, Integer.MAX_VALUE - 8));
+
+        // Begin with the left-most leaf
+        scan(listOfRecordID::add);
+        
+        return listOfRecordID;
     }
 
     /**
-     * Shifts children pointers left.
-     * 
-     * @param node - The node to shift children for
-     * @param i    - The index to start shifting values at
+     * Passes every recordId in the tree to the sink in studentId order. The
+     * leaf chain is walked in a single loop, so nothing is allocated and no
+     * recordId is boxed.
+     *
+     * @param sink - Receives each recordId
      */
-    private void shiftChildrenLeft(BTreeNode node, int i) {
-      // Loop through children array to shift children down
-      while (i <= node.n) {
-        // If the number of keys did not fill the array
-        if (i + 1 < node.children.length) {
-          node.children[i] = node.children[i + 1];
+    void scan(LongConsumer sink) {
+        for (int leaf = firstLeaf(); leaf != NodeStore.NONE; leaf = store.next(leaf)) {
+            int n = store.n(leaf);
+            for (int i = 0; i < n; i++) {
+                sink.accept(store.value(leaf, i));
+            }
         }
-        // If the number of keys previously filled the array
-        else {
-          node.children[i] = null;
+    }
+
+    /**
+     * Copies recordIds in studentId order into the buffer, starting at offset,
+     * until either the tree or the buffer runs out. Size the buffer with
+     * size() to receive every recordId.
+     *
+     * @param buffer - The buffer to fill
+     * @param offset - The first index of the buffer to write
+     * @return The number of recordIds written
+     */
+    int scan(long[] buffer, int offset) {
+        int pos = offset;
+        for (int leaf = firstLeaf(); leaf != NodeStore.NONE && pos < buffer.length; leaf = store.next(leaf)) {
+            int count = Math.min(store.n(leaf), buffer.length - pos);
+            store.getValues(leaf, buffer, pos, count);
+            pos += count;
         }
-        i++;
-      } // while
+        return pos - offset;
     }
 
-    List<Long> print() {
+    /**
+     * @return The number of [ key,recordId ] entries in the tree
+     */
+    long size() {
+        return size;
+    }
 
-        List<Long> listOfRecordID = new ArrayList<>();
+    /**
+     * @return The root's ID in the node store, or NONE for an empty tree
+     */
+    int rootNode() {
+        return root;
+    }
 
-        // Begin with root
-        listOfRecordID = printNode(root);
-        
-        return listOfRecordID;
+    /**
+     * @return The minimum degree t
+     */
+    int degree() {
+        return t;
     }
 
-    // Print helper
-    List<Long> printNode(BTreeNode node) {
-        List<Long> listOfRecordID = new ArrayList<>();
+    /**
+     * @return The number of levels, 1 for a tree that is only a leaf and 0 for
+     *         an empty tree
+     */
+    int height() {
+        int height = 0;
+        for (int node = root; node != NodeStore.NONE; node = store.isLeaf(node) ? NodeStore.NONE : store.child(node, 0)) {
+            height++;
+        }
+        return height;
+    }
 
-        // Null check
-        if (node == null) {
-            // Return empty list
-            return listOfRecordID;
+    /**
+     * Visits every node, so this takes time in proportion to the size of the
+     * tree.
+     *
+     * @return The keys held over the keys the nodes have room for, from 0 to 1
+     */
+    double averageFill() {
+        if (root == NodeStore.NONE) {
+            return 0;
         }
+        long[] keysAndNodes = new long[2];
+        countKeys(root, keysAndNodes);
+        return (double) keysAndNodes[0] / (keysAndNodes[1] * 2L * t);
+    }
 
-        if (node.leaf) {
-            // Add each value in order
-            for (int i = 0; i < node.n; i++) {
-                listOfRecordID.add(node.values[i]);
+    // Adds the keys of the subtree to counts[0] and its nodes to counts[1]
+    private void countKeys(int node, long[] counts) {
+        int n = store.n(node);
+        counts[0] += n;
+        counts[1]++;
+        if (!store.isLeaf(node)) {
+            for (int i = 0; i <= n; i++) {
+                countKeys(store.child(node, i), counts);
             }
-            // Continue adding values from "node.next" (recursive)
-            listOfRecordID.addAll(printNode(node.next));
+        }
+    }
+
+    // Adds an inserted key, rebuilding the filter at twice the size once more
+    // keys have been added than it was sized for
+    private void addToFilter(long studentId) {
+        if (filter.count() == filter.capacity()) {
+            rebuildFilter(filter.falsePositiveRate());
         } else {
-            // Start from left-most child
-            return printNode(node.children[0]); // In a properly built B+Tree, this will never run into IndexOutOfBoundsException
+            filter.add(studentId);
         }
-        return listOfRecordID;
+    }
+
+    // Replaces the filter with one holding exactly the keys in the leaves,
+    // with room for the tree to double
+    private void rebuildFilter(double falsePositiveRate) {
+        KeyFilter rebuilt = new KeyFilter(Math.max(1024, 2 * size), falsePositiveRate);
+        for (int leaf = firstLeaf(); leaf != NodeStore.NONE; leaf = store.next(leaf)) {
+            int n = store.n(leaf);
+            for (int i = 0; i < n; i++) {
+                rebuilt.add(store.key(leaf, i));
+            }
+        }
+        filter = rebuilt;
+        filterDeletes = 0;
+    }
+
+    // Find the left-most leaf, or NONE for an empty tree
+    private int firstLeaf() {
+        int node = root;
+        // In a properly built B+Tree, child 0 is never NONE on an internal node
+        while (node != NodeStore.NONE && !store.isLeaf(node)) {
+            node = store.child(node, 0);
+        }
+        return node;
     }
 }
@@ -0,0 +1,1380 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark driver for the B+Tree.
+ * <p>
+ * Usage: java BTreeBench &lt;benchmark&gt; [sizes...]
+ */
+public class BTreeBench {
+
+    /** Minimum degree used unless a benchmark says otherwise */
+    private static final int DEGREE = 64;
+
+    /** Where benchmarks put results, so the JIT can't drop the work */
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java BTreeBench <bulkload|scaling|print|footprint|offheap|pagefile|bufferpool|wal|parallel|csv|batch|metrics|compression|secondary|snapshot|cache|bloom|daemon|catalog> [sizes...]");
+            return;
+        }
+
+        switch (args[0]) {
+            case "bulkload":
+                bulkLoad(sizes(args, 1_000_000, 10_000_000, 50_000_000));
+                break;
+            case "scaling":
+                scaling(sizes(args, 10_000, 100_000, 1_000_000, 10_000_000));
+                break;
+            case "print":
+                print(sizes(args, 10_000_000));
+                break;
+            case "footprint":
+                footprint(sizes(args, 20_000_000));
+                break;
+            case "offheap":
+                offHeap(sizes(args, 10_000_000));
+                break;
+            case "pagefile":
+                pageFile(sizes(args, 10_000_000));
+                break;
+            case "bufferpool":
+                bufferPool(sizes(args, 2, 5, 10));
+                break;
+            case "wal":
+                writeAheadLog(sizes(args, 0, 100, 1000, 5000));
+                break;
+            case "parallel":
+                parallel(sizes(args, 50_000_000));
+                break;
+            case "csv":
+                csv(sizes(args, 5_000_000));
+                break;
+            case "batch":
+                batch(sizes(args, 50_000));
+                break;
+            case "metrics":
+                metrics(sizes(args, 1_000_000));
+                break;
+            case "compression":
+                compression(sizes(args, 5_000_000));
+                break;
+            case "secondary":
+                secondary(sizes(args, 1_000_000));
+                break;
+            case "snapshot":
+                snapshot(sizes(args, 0, 1, 2, 4));
+                break;
+            case "cache":
+                cache(sizes(args, 1_000, 10_000, 100_000));
+                break;
+            case "bloom":
+                bloom(sizes(args, 10, 100, 1_000, 10_000));
+                break;
+            case "daemon":
+                daemon(sizes(args, 10, 100, 1_000));
+                break;
+            case "catalog":
+                catalog(sizes(args, 150_000));
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + args[0]);
+                break;
+        }
+    }
+
+    /**
+     * Compares building the index with one insert per row against bulkLoad
+     * over the same rows.
+     */
+    private static void bulkLoad(int[] sizes) {
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 42);
+
+            // Insert loop, rows in file order
+            BTree inserted = new BTree(DEGREE);
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                inserted.insert(new Student(studentIds[i], 20, "Bench Student", "Major", "FR", i));
+            }
+            long insertNanos = System.nanoTime() - start;
+            inserted = null;
+
+            // Bulk load, including the sort the loader needs
+            start = System.nanoTime();
+            long[] sortedIds = studentIds.clone();
+            Arrays.sort(sortedIds);
+            long[] recordIds = new long[size];
+            for (int i = 0; i < size; i++) {
+                recordIds[i] = i;
+            }
+            BTree loaded = new BTree(DEGREE).bulkLoad(sortedIds, recordIds, size, 1.0);
+            long loadNanos = System.nanoTime() - start;
+
+            report("insert loop", size, size, insertNanos);
+            report("bulkLoad", size, size, loadNanos);
+            check(loaded, sortedIds);
+        }
+    }
+
+    /**
+     * Inserts random keys into one growing tree and reports inserts/sec for
+     * each step between consecutive sizes, so throughput can be compared as
+     * the tree grows.
+     */
+    private static void scaling(int[] sizes) {
+        int total = sizes[sizes.length - 1];
+        long[] studentIds = shuffledIds(total, 7);
+        BTree tree = new BTree(DEGREE);
+
+        int done = 0;
+        for (int size : sizes) {
+            long start = System.nanoTime();
+            for (int i = done; i < size; i++) {
+                tree.insert(new Student(studentIds[i], 20, "Bench Student", "Major", "FR", i));
+            }
+            report("insert to", size, size - done, System.nanoTime() - start);
+            done = size;
+        }
+    }
+
+    /**
+     * Compares time and bytes allocated by the boxed print() list with the
+     * primitive scan into a buffer and into a LongConsumer.
+     */
+    private static void print(int[] sizes) {
+        for (int size : sizes) {
+            long[] sortedIds = shuffledIds(size, 17);
+            Arrays.sort(sortedIds);
+            BTree tree = new BTree(DEGREE).bulkLoad(sortedIds, sortedIds, size, 1.0);
+
+            long[] buffer = new long[(int) tree.size()];
+            long[] sum = new long[1];
+            for (int round = 0; round < 3; round++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                int printed = tree.print().size();
+                long printNanos = System.nanoTime() - start;
+                long printBytes = allocatedBytes() - bytes;
+
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                int copied = tree.scan(buffer, 0);
+                long bufferNanos = System.nanoTime() - start;
+                long bufferBytes = allocatedBytes() - bytes;
+
+                bytes = allocatedBytes();
+                start = System.nanoTime();
+                tree.scan(id -> sum[0] += id);
+                long sinkNanos = System.nanoTime() - start;
+                long sinkBytes = allocatedBytes() - bytes;
+
+                if (printed != size || copied != size) {
+                    throw new IllegalStateException("Scanned " + printed + " and " + copied + " of " + size);
+                }
+                if (round == 2) {
+                    report("print()", size, size, printNanos);
+                    System.out.printf("%-16s %,d bytes allocated%n", "", printBytes);
+                    report("scan(buffer)", size, size, bufferNanos);
+                    System.out.printf("%-16s %,d bytes allocated%n", "", bufferBytes);
+                    report("scan(sink)", size, size, sinkNanos);
+                    System.out.printf("%-16s %,d bytes allocated%n", "", sinkBytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares retained heap and GC time of boxed collections against
+     * LongLongMap and LongList for the studentId -> recordId membership map
+     * and the print output.
+     */
+    private static void footprint(int[] sizes) {
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 19);
+
+            long heap = usedHeap();
+            long gc = gcMillis();
+            long start = System.nanoTime();
+            Map<Long, Long> boxedMap = new HashMap<>();
+            List<Long> boxedList = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (!boxedMap.containsKey(studentIds[i])) {
+                    boxedMap.put(studentIds[i], (long) i);
+                    boxedList.add((long) i);
+                }
+            }
+            long boxedNanos = System.nanoTime() - start;
+            long boxedGc = gcMillis() - gc;
+            long boxedHeap = usedHeap() - heap;
+            if (boxedMap.size() != size || boxedList.size() != size) {
+                throw new IllegalStateException("Lost entries");
+            }
+            boxedMap = null;
+            boxedList = null;
+
+            heap = usedHeap();
+            gc = gcMillis();
+            start = System.nanoTime();
+            LongLongMap map = new LongLongMap();
+            LongList list = new LongList();
+            for (int i = 0; i < size; i++) {
+                if (!map.containsKey(studentIds[i])) {
+                    map.put(studentIds[i], i);
+                    list.add(i);
+                }
+            }
+            long primitiveNanos = System.nanoTime() - start;
+            long primitiveGc = gcMillis() - gc;
+            long primitiveHeap = usedHeap() - heap;
+            if (map.size() != size || list.size() != size) {
+                throw new IllegalStateException("Lost entries");
+            }
+
+            report("boxed", size, size, boxedNanos);
+            System.out.printf("%-16s %,d bytes retained, %,d ms in GC%n", "", boxedHeap, boxedGc);
+            report("primitive", size, size, primitiveNanos);
+            System.out.printf("%-16s %,d bytes retained, %,d ms in GC%n", "", primitiveHeap, primitiveGc);
+        }
+    }
+
+    /**
+     * Compares heap size, full GC time and lookup latency of a BTree on the
+     * default HeapNodeStore with the same tree on an off-heap SlabNodeStore.
+     */
+    private static void offHeap(int[] sizes) {
+        for (int size : sizes) {
+            long[] sortedIds = shuffledIds(size, 23);
+            Arrays.sort(sortedIds);
+            long[] probeIds = probes(sortedIds, 2_000_000, 29);
+
+            long heap = usedHeap();
+            BTree tree = new BTree(DEGREE).bulkLoad(sortedIds, sortedIds, size, 1.0);
+            long treeHeap = usedHeap() - heap;
+            long treeGc = fullGcMillis();
+            long treeNanos = searchNanos(tree, probeIds);
+            tree = null;
+
+            SlabNodeStore store = new SlabNodeStore(DEGREE);
+            heap = usedHeap();
+            BTree slabTree = new BTree(store).bulkLoad(sortedIds, sortedIds, size, 1.0);
+            long slabHeap = usedHeap() - heap;
+            long slabGc = fullGcMillis();
+            long slabNanos = searchNanos(slabTree, probeIds);
+
+            report("HeapNodeStore", size, probeIds.length, treeNanos);
+            System.out.printf("%-16s %,d heap bytes, full GC %,d ms%n", "", treeHeap, treeGc);
+            report("SlabNodeStore", size, probeIds.length, slabNanos);
+            System.out.printf("%-16s %,d heap bytes, %,d off-heap bytes, full GC %,d ms%n", "", slabHeap,
+                    store.offHeapBytes(), slabGc);
+        }
+    }
+
+    // Best of three rounds of searching every probe, each of which must be
+    // found with itself as the recordId
+    private static long searchNanos(BTree tree, long[] probeIds) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (long id : probeIds) {
+                if (tree.search(id) != id) {
+                    throw new IllegalStateException("Missing key " + id);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Compares a cold start that rebuilds the index with one that opens a
+     * saved page file, both up to the first 1000 lookups.
+     */
+    private static void pageFile(int[] sizes) {
+        for (int size : sizes) {
+            long[] sortedIds = shuffledIds(size, 31);
+            Arrays.sort(sortedIds);
+            long[] probeIds = probes(sortedIds, 1000, 37);
+
+            try {
+                Path file = Files.createTempFile("btree", ".idx");
+                try {
+                    long start = System.nanoTime();
+                    BTree tree = new BTree(DEGREE).bulkLoad(sortedIds, sortedIds, size, 1.0);
+                    for (long id : probeIds) {
+                        tree.search(id);
+                    }
+                    long rebuildNanos = System.nanoTime() - start;
+                    PagedIndex.build(tree, DEGREE).save(file);
+                    tree = null;
+
+                    start = System.nanoTime();
+                    PagedIndex index = PagedIndex.open(file);
+                    for (long id : probeIds) {
+                        if (index.search(id) != id) {
+                            throw new IllegalStateException("Missing key " + id);
+                        }
+                    }
+                    long openNanos = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    boolean valid = index.verify();
+                    long verifyNanos = System.nanoTime() - start;
+
+                    report("rebuild", size, probeIds.length, rebuildNanos);
+                    report("open", size, probeIds.length, openNanos);
+                    report("verify", size, size, verifyNanos);
+                    if (!valid) {
+                        throw new IllegalStateException("Checksum mismatch");
+                    }
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs Zipfian lookups against a BTree on a PooledNodeStore whose buffer
+     * pool holds 1/2, 1/5 and 1/10 of the tree's pages, for each eviction
+     * policy.
+     */
+    private static void bufferPool(int[] oversubscriptions) {
+        int size = 10_000_000;
+        int lookups = 2_000_000;
+        long[] sortedIds = shuffledIds(size, 41);
+        Arrays.sort(sortedIds);
+        ZipfianGenerator zipf = new ZipfianGenerator(size, new Random(43));
+        long[] probeIds = new long[lookups];
+        for (int i = 0; i < lookups; i++) {
+            probeIds[i] = sortedIds[(int) zipf.nextScrambled()];
+        }
+
+        // The same load always takes the same number of pages
+        SlabNodeStore sizing = new SlabNodeStore(DEGREE);
+        new BTree(sizing).bulkLoad(sortedIds, sortedIds, size, 1.0);
+        int pageCount = sizing.pageCount();
+        sizing = null;
+
+        try {
+            Path file = Files.createTempFile("btree", ".nodes");
+            try {
+                for (int oversubscription : oversubscriptions) {
+                    int frames = Math.max(2, pageCount / oversubscription);
+                    EvictionPolicy[] policies = {
+                        new EvictionPolicy.Lru(frames),
+                        new EvictionPolicy.Clock(frames),
+                        new EvictionPolicy.LruK(frames, 2),
+                    };
+                    for (EvictionPolicy policy : policies) {
+                        PooledNodeStore store = PooledNodeStore.open(file, DEGREE, frames, policy);
+                        BTree tree = new BTree(store).bulkLoad(sortedIds, sortedIds, size, 1.0);
+                        BufferPool pool = store.pool();
+                        long hitsBefore = pool.hits();
+                        long missesBefore = pool.misses();
+                        long start = System.nanoTime();
+                        for (long id : probeIds) {
+                            if (tree.search(id) != id) {
+                                throw new IllegalStateException("Missing key " + id);
+                            }
+                        }
+                        long nanos = System.nanoTime() - start;
+                        long hits = pool.hits() - hitsBefore;
+                        long misses = pool.misses() - missesBefore;
+                        store.close();
+
+                        String name = policy.getClass().getSimpleName() + " " + oversubscription + "x";
+                        report(name, size, lookups, nanos);
+                        System.out.printf("%-16s %,d frames, hit rate %.3f, %,d misses%n", "",
+                            frames, (double) hits / (hits + misses), misses);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Commits logged inserts from 1, 8 and 32 threads with group commit
+     * windows of 0, 100, 1000 and 5000 microseconds, and counts the fsyncs
+     * each combination needs.
+     */
+    private static void writeAheadLog(int[] windowMicros) {
+        int commits = 8_000;
+        int[] threadCounts = {1, 8, 32};
+        try {
+            for (int window : windowMicros) {
+                for (int threadCount : threadCounts) {
+                    Path file = Files.createTempFile("btree", ".wal");
+                    try {
+                        WriteAheadLog log = WriteAheadLog.open(file, window * 1000L);
+                        int perThread = commits / threadCount;
+                        Thread[] threads = new Thread[threadCount];
+                        for (int t = 0; t < threadCount; t++) {
+                            long firstId = (long) t * perThread;
+                            threads[t] = new Thread(() -> {
+                                try {
+                                    for (int i = 0; i < perThread; i++) {
+                                        Student s = new Student(firstId + i, 20, "Bench Student", "Major", "FR", i);
+                                        log.commit(log.logInsert(s));
+                                    }
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+                        }
+                        long start = System.nanoTime();
+                        for (Thread thread : threads) {
+                            thread.start();
+                        }
+                        for (Thread thread : threads) {
+                            thread.join();
+                        }
+                        long nanos = System.nanoTime() - start;
+                        log.close();
+
+                        int total = perThread * threadCount;
+                        report(window + "us x" + threadCount, total, total, nanos);
+                        System.out.printf("%-16s %,d fsyncs, %.1f commits per fsync%n", "",
+                            log.fsyncs(), (double) total / log.fsyncs());
+                    } finally {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a student CSV of each size in random studentId order, then loads
+     * and indexes it, and sums the recordIds of the whole tree and of a
+     * quarter of it, on fork-join pools of 1, 2, 4 ... available cores.
+     */
+    private static void parallel(int[] sizes) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 59);
+            try {
+                Path file = Files.createTempFile("students", ".csv");
+                try {
+                    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                        for (int i = 0; i < size; i++) {
+                            writer.write(studentIds[i] + ",Bench Student,Major,FR,20," + i + "\n");
+                        }
+                    }
+                    studentIds = null;
+                    System.out.printf("%-16s %,d bytes%n", "csv", Files.size(file));
+
+                    for (int parallelism = 1; ; parallelism = Math.min(cores, parallelism * 2)) {
+                        ForkJoinPool pool = new ForkJoinPool(parallelism);
+                        long start = System.nanoTime();
+                        StudentCsv csv = StudentCsv.read(file, pool);
+                        long readNanos = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        BTree tree = new BTree(DEGREE).bulkLoad(csv.studentIds, csv.recordIds, csv.count, 0.9, pool);
+                        long buildNanos = System.nanoTime() - start;
+                        long lowId = csv.studentIds[csv.count / 4];
+                        long highId = csv.studentIds[csv.count / 2];
+                        csv = null;
+
+                        start = System.nanoTime();
+                        long sum = pool.submit(() -> tree.recordIds(Long.MIN_VALUE, Long.MAX_VALUE, true).sum()).join();
+                        long fullNanos = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        long rangeSum = pool.submit(() -> tree.recordIds(lowId, highId, true).sum()).join();
+                        long rangeNanos = System.nanoTime() - start;
+                        pool.shutdown();
+                        if (sum != (long) size * (size - 1) / 2 || rangeSum <= 0) {
+                            throw new IllegalStateException("Wrong sum " + sum);
+                        }
+
+                        report("read x" + parallelism, size, size, readNanos);
+                        report("build x" + parallelism, size, size, buildNanos);
+                        report("sum x" + parallelism, size, size, fullNanos);
+                        report("range sum x" + parallelism, size, size / 4, rangeNanos);
+                        if (parallelism == cores) {
+                            break;
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Compares reading a student CSV with Scanner and String.split, as the
+     * loader used to, against streaming it with StudentCsv, in MB/s.
+     */
+    private static void csv(int[] sizes) {
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 61);
+            try {
+                Path file = Files.createTempFile("students", ".csv");
+                try {
+                    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                        for (int i = 0; i < size; i++) {
+                            writer.write(studentIds[i] + ",Bench Student,Major,FR,20," + i + "\n");
+                        }
+                    }
+                    long bytes = Files.size(file);
+
+                    for (int round = 0; round < 3; round++) {
+                        long start = System.nanoTime();
+                        List<Student> students = new ArrayList<>();
+                        try (Scanner scan = new Scanner(file.toFile())) {
+                            while (scan.hasNextLine()) {
+                                String line = scan.nextLine();
+                                if (line.isEmpty()) { break; }
+                                String[] params = line.split(",");
+                                students.add(new Student(Long.parseLong(params[0]), Integer.parseInt(params[4]), params[1], params[2], params[3], Long.parseLong(params[5])));
+                            }
+                        }
+                        throughput("scanner", bytes, students.size(), System.nanoTime() - start);
+                        students = null;
+
+                        start = System.nanoTime();
+                        LongList rows = new LongList();
+                        StudentCsv.forEachStudent(file, s -> rows.add(s.studentId));
+                        throughput("students", bytes, rows.size(), System.nanoTime() - start);
+
+                        start = System.nanoTime();
+                        LongList keys = new LongList();
+                        StudentCsv.forEach(file, (studentId, recordId) -> keys.add(studentId));
+                        throughput("keys", bytes, keys.size(), System.nanoTime() - start);
+
+                        start = System.nanoTime();
+                        StudentCsv csv = StudentCsv.read(file, ForkJoinPool.commonPool());
+                        throughput("parallel + sort", bytes, csv.count, System.nanoTime() - start);
+                        if (rows.size() != size || keys.size() != size || csv.count != size) {
+                            throw new IllegalStateException("Wrong row count");
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the same input.txt stream of inserts, searches and 1% deletes
+     * against a 20,000 row student.csv one line at a time, as BTreeMain does,
+     * and through CommandBatcher, and reports operations per second.
+     */
+    private static void batch(int[] sizes) {
+        int rows = 20_000;
+        long[] studentIds = shuffledIds(rows, 67);
+        PrintStream console = System.out;
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int size : sizes) {
+            SplittableRandom r = new SplittableRandom(size);
+            StringBuilder input = new StringBuilder("3\n");
+            long nextId = 10L * rows + 1;
+            for (int i = 0; i < size; i++) {
+                int roll = r.nextInt(100);
+                if (roll == 0) {
+                    input.append("delete ").append(studentIds[r.nextInt(rows)]).append('\n');
+                } else if (roll < 50) {
+                    input.append("insert ").append(nextId++).append(" Bench Student Major FR 20 ").append(i).append('\n');
+                } else {
+                    input.append("search ").append(studentIds[r.nextInt(rows)]).append('\n');
+                }
+            }
+
+            for (String mode : new String[] {"line by line", "batched"}) {
+                try {
+                    Path dir = Files.createTempDirectory("students");
+                    try {
+                        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(StudentDatabase.CSV_FILE))) {
+                            for (int i = 0; i < rows; i++) {
+                                writer.write(studentIds[i] + ",Bench Student,Major,FR,20," + i + "\n");
+                            }
+                        }
+                        long start = System.nanoTime();
+                        System.setOut(discard);
+                        try {
+                            if (mode.equals("batched")) {
+                                CommandBatcher batcher = new CommandBatcher(new BufferedReader(new StringReader(input.toString())));
+                                StudentDatabase db = StudentDatabase.open(dir, batcher.readDegree(), false);
+                                batcher.run(db, discard);
+                                db.close();
+                            } else {
+                                Scanner scan = new Scanner(input.toString());
+                                StudentDatabase db = StudentDatabase.open(dir, scan.nextInt(), false);
+                                BTreeMain.runCommands(scan, db);
+                                db.close();
+                            }
+                        } finally {
+                            System.setOut(console);
+                        }
+                        report(mode, rows, size, System.nanoTime() - start);
+                    } finally {
+                        deleteDirectory(dir);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the same mix of 50% searches, 30% inserts and 20% deletes against
+     * a tree without metrics and one with a BTreeMetrics.Recorder attached,
+     * then prints what the recorder saw.
+     */
+    private static void metrics(int[] sizes) {
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 73);
+            for (int round = 0; round < 3; round++) {
+                BTreeMetrics.Recorder recorder = new BTreeMetrics.Recorder();
+                long plainNanos = runMetricsMix(new BTree(DEGREE), studentIds);
+                BTree tree = new BTree(DEGREE);
+                tree.setMetrics(recorder);
+                long recordedNanos = runMetricsMix(tree, studentIds);
+                if (round == 2) {
+                    report("no metrics", size, size, plainNanos);
+                    report("recorder", size, size, recordedNanos);
+                    System.out.print(recorder.report(tree));
+                }
+            }
+        }
+    }
+
+    // Runs one operation per studentId, picked by a fixed seed
+    private static long runMetricsMix(BTree tree, long[] studentIds) {
+        SplittableRandom r = new SplittableRandom(79);
+        int inserted = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < studentIds.length; i++) {
+            int roll = r.nextInt(10);
+            if (roll < 3 || inserted == 0) {
+                tree.insert(new Student(studentIds[inserted], 20, "Bench Student", "Major", "FR", i));
+                inserted++;
+            } else if (roll < 5) {
+                tree.remove(studentIds[r.nextInt(inserted)]);
+            } else {
+                tree.search(studentIds[r.nextInt(inserted)]);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Reports bytes per key and search latency of the tree and of plain and
+     * compressed PagedIndex images of it, at minimum degrees 3 and DEGREE.
+     * The recordIds are row numbers in shuffled order, as in a Student.csv.
+     */
+    private static void compression(int[] sizes) {
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 83);
+            long[] sortedIds = studentIds.clone();
+            Arrays.sort(sortedIds);
+            long[] rows = new long[size];
+            for (int i = 0; i < size; i++) {
+                rows[Arrays.binarySearch(sortedIds, studentIds[i])] = i;
+            }
+            long[] probeIds = probes(sortedIds, 2_000_000, 89);
+
+            for (int t : new int[] {3, DEGREE}) {
+                long heap = usedHeap();
+                BTree tree = new BTree(t).bulkLoad(sortedIds, rows, size, 1.0);
+                long treeBytes = usedHeap() - heap;
+                PagedIndex plain = PagedIndex.build(tree, t);
+                PagedIndex compressed = PagedIndex.build(tree, t, true);
+
+                long treeNanos = 0;
+                long plainNanos = 0;
+                long compressedNanos = 0;
+                for (int round = 0; round < 3; round++) {
+                    long start = System.nanoTime();
+                    long sum = 0;
+                    for (long id : probeIds) {
+                        sum += tree.search(id);
+                    }
+                    treeNanos = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    for (long id : probeIds) {
+                        sum -= plain.search(id);
+                    }
+                    plainNanos = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    for (long id : probeIds) {
+                        sum += compressed.search(id) - tree.search(id);
+                    }
+                    compressedNanos = System.nanoTime() - start - treeNanos;
+                    if (sum != 0) {
+                        throw new IllegalStateException("Images disagree with the tree");
+                    }
+                }
+
+                String degree = "t=" + t + " ";
+                report(degree + "BTree", size, probeIds.length, treeNanos);
+                System.out.printf("%-16s %.1f heap bytes/key%n", "", (double) treeBytes / size);
+                report(degree + "plain", size, probeIds.length, plainNanos);
+                System.out.printf("%-16s %.1f bytes/key, %,d pages%n", "",
+                    (double) plain.offHeapBytes() / size, plain.pageCount());
+                report(degree + "compressed", size, probeIds.length, compressedNanos);
+                System.out.printf("%-16s %.1f bytes/key, %,d pages%n", "",
+                    (double) compressed.offHeapBytes() / size, compressed.pageCount());
+            }
+        }
+    }
+
+    /**
+     * Answers filtered queries on a student.csv of the given size with the
+     * secondary indexes, and by scanning the whole file as a query without
+     * them has to, and reports the time per query. Rows get one of 20 majors,
+     * one of 4 levels and an age from 17 to 40.
+     */
+    private static void secondary(int[] sizes) {
+        String[] levels = {"FR", "SO", "JR", "SR"};
+        for (int size : sizes) {
+            long[] studentIds = shuffledIds(size, 97);
+            SplittableRandom r = new SplittableRandom(101);
+            try {
+                Path dir = Files.createTempDirectory("students");
+                try {
+                    try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(StudentDatabase.CSV_FILE))) {
+                        for (int i = 0; i < size; i++) {
+                            writer.write(studentIds[i] + ",Bench Student,Major" + r.nextInt(20) + ","
+                                + levels[r.nextInt(4)] + "," + (17 + r.nextInt(24)) + "," + i + "\n");
+                        }
+                    }
+                    StudentDatabase db = StudentDatabase.open(dir, DEGREE, false);
+                    long start = System.nanoTime();
+                    SecondaryIndexes indexes = db.createSecondaryIndexes();
+                    System.out.printf("%-16s %,12d rows %10.1f ms%n", "build", size, (System.nanoTime() - start) / 1e6);
+
+                    String[] names = {"major=Major7", "level=SR", "age 21-22"};
+                    for (int round = 0; round < 3; round++) {
+                        for (int q = 0; q < names.length; q++) {
+                            int query = q;
+                            start = System.nanoTime();
+                            BTreeCursor cursor = query == 0 ? indexes.major("Major7")
+                                : query == 1 ? indexes.level("SR") : indexes.age(21, 22);
+                            long matches = 0;
+                            long sum = 0;
+                            while (cursor.next()) {
+                                matches++;
+                                sum += cursor.recordId();
+                            }
+                            long indexNanos = System.nanoTime() - start;
+
+                            start = System.nanoTime();
+                            long[] scanned = new long[2];
+                            StudentCsv.forEachStudent(dir.resolve(StudentDatabase.CSV_FILE), s -> {
+                                if (query == 0 ? s.major.equals("Major7")
+                                        : query == 1 ? s.level.equals("SR") : s.age >= 21 && s.age <= 22) {
+                                    scanned[0]++;
+                                    scanned[1] += s.recordId;
+                                }
+                            });
+                            long scanNanos = System.nanoTime() - start;
+
+                            if (scanned[0] != matches || scanned[1] != sum) {
+                                throw new IllegalStateException("Index disagrees with the scan for " + names[q]);
+                            }
+                            if (round == 2) {
+                                System.out.printf("%-16s %,12d rows %10.2f ms index %10.2f ms scan %8.1fx%n",
+                                    names[q], matches, indexNanos / 1e6, scanNanos / 1e6,
+                                    (double) scanNanos / indexNanos);
+                            }
+                        }
+                    }
+                    db.close();
+                } finally {
+                    deleteDirectory(dir);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Moves a set of 200,000 keys through a tree on one writer thread, one
+     * insert and one delete at a time, while the given numbers of reader
+     * threads scan the whole tree over and over, for one second each. The
+     * CopyOnWriteBTree is read through snapshots and the ConcurrentBTree as
+     * writes land; a BTree with no readers is the writer's baseline. A scan
+     * is consistent if it sees some version of the tree: 200,000 or 200,001
+     * keys, in order.
+     */
+    private static void snapshot(int[] readerCounts) {
+        int size = 200_000;
+        long[] ids = shuffledIds(4 * size, 103);
+
+        BTree plain = new BTree(DEGREE);
+        for (int i = 0; i < size; i++) {
+            plain.insert(ids[i], ids[i]);
+        }
+        long[] result = runMoves(0, ids, size, (insertId, deleteId) -> {
+            plain.insert(insertId, insertId);
+            plain.remove(deleteId);
+        }, null);
+        report("btree writer", size, (int) result[0], 1_000_000_000L);
+
+        for (int readerCount : readerCounts) {
+            CopyOnWriteBTree cow = new CopyOnWriteBTree(DEGREE);
+            for (int i = 0; i < size; i++) {
+                cow.insert(ids[i], ids[i]);
+            }
+            result = runMoves(readerCount, ids, size, (insertId, deleteId) -> {
+                cow.insert(insertId, insertId);
+                cow.delete(deleteId);
+            }, sink -> {
+                try (CopyOnWriteBTree.Snapshot snapshot = cow.snapshot()) {
+                    snapshot.scan(sink);
+                }
+            });
+            report("cow x" + readerCount, size, (int) result[0], 1_000_000_000L);
+            System.out.printf("%-16s %,d scans, %,d inconsistent, %d snapshots open%n",
+                "", result[1], result[2], cow.openSnapshots());
+
+            ConcurrentBTree olc = new ConcurrentBTree(DEGREE);
+            for (int i = 0; i < size; i++) {
+                olc.insert(ids[i], ids[i]);
+            }
+            result = runMoves(readerCount, ids, size, (insertId, deleteId) -> {
+                olc.insert(insertId, insertId);
+                olc.delete(deleteId);
+            }, sink -> olc.range(Long.MIN_VALUE, Long.MAX_VALUE, sink));
+            report("olc x" + readerCount, size, (int) result[0], 1_000_000_000L);
+            System.out.printf("%-16s %,d scans, %,d inconsistent%n", "", result[1], result[2]);
+        }
+    }
+
+    private interface MoveOperation {
+        void move(long insertId, long deleteId);
+    }
+
+    private interface ScanOperation {
+        void scan(LongConsumer sink);
+    }
+
+    // Runs the writer and readerCount readers for one second. The tree holds
+    // the first size ids, and every recordId is its studentId. Returns the
+    // moves, the scans and the inconsistent scans.
+    private static long[] runMoves(int readerCount, long[] ids, int size, MoveOperation writer, ScanOperation reader) {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder scans = new LongAdder();
+        LongAdder inconsistent = new LongAdder();
+        Thread[] readers = new Thread[readerCount];
+        for (int t = 0; t < readerCount; t++) {
+            readers[t] = new Thread(() -> {
+                long[] scan = new long[3];
+                while (!stop.get()) {
+                    // Entries seen, last key and whether one was out of order
+                    scan[0] = 0;
+                    scan[1] = Long.MIN_VALUE;
+                    scan[2] = 0;
+                    reader.scan(id -> {
+                        if (id <= scan[1]) {
+                            scan[2] = 1;
+                        }
+                        scan[1] = id;
+                        scan[0]++;
+                    });
+                    scans.increment();
+                    if (scan[2] != 0 || scan[0] < size || scan[0] > size + 1) {
+                        inconsistent.increment();
+                    }
+                }
+            });
+        }
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        long moves = 0;
+        long end = System.nanoTime() + 1_000_000_000L;
+        // The set is ids[oldest, oldest + size), wrapping round the array
+        int oldest = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) {
+                writer.move(ids[(oldest + size) % ids.length], ids[oldest]);
+                oldest = (oldest + 1) % ids.length;
+                moves++;
+            }
+        }
+        stop.set(true);
+        try {
+            for (Thread thread : readers) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new long[] {moves, scans.sum(), inconsistent.sum()};
+    }
+
+    /**
+     * Times 5,000,000 Zipfian searches, one at a time, in a 1,000,000 row
+     * tree without a cache and with a SearchCache of each of the given
+     * capacities, and prints p50 and p99 latency. Every 100th operation
+     * deletes and reinserts a popular key, so the cache is invalidated as it
+     * would be under writes.
+     */
+    private static void cache(int[] capacities) {
+        int size = 1_000_000;
+        int probeCount = 5_000_000;
+        long[] sortedIds = shuffledIds(size, 109);
+        Arrays.sort(sortedIds);
+        long[] recordIds = new long[size];
+        for (int i = 0; i < size; i++) {
+            recordIds[i] = i;
+        }
+        ZipfianGenerator zipf = new ZipfianGenerator(size, new Random(113));
+        long[] probeIds = new long[probeCount];
+        for (int i = 0; i < probeCount; i++) {
+            probeIds[i] = sortedIds[(int) zipf.nextScrambled()];
+        }
+
+        int[] runs = new int[capacities.length + 1];
+        System.arraycopy(capacities, 0, runs, 1, capacities.length);
+        for (int capacity : runs) {
+            BTree tree = new BTree(DEGREE).bulkLoad(sortedIds, recordIds, size, 1.0);
+            SearchCache cache = capacity > 0 ? new SearchCache(capacity) : null;
+            tree.setCache(cache);
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int round = 0; round < 2; round++) {
+                latency.reset();
+                long sum = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < probeCount; i++) {
+                    long studentId = probeIds[i];
+                    if (i % 100 == 99) {
+                        tree.remove(studentId);
+                        tree.insert(studentId, i);
+                        continue;
+                    }
+                    long before = System.nanoTime();
+                    sum += tree.search(studentId);
+                    latency.record(System.nanoTime() - before);
+                }
+                long nanos = System.nanoTime() - start;
+                blackhole += sum;
+                if (round == 1) {
+                    report(capacity > 0 ? "cache " + capacity : "no cache", size, probeCount, nanos);
+                    System.out.printf("%-16s p50=%dns p99=%dns%s%n", "", latency.percentile(0.5),
+                        latency.percentile(0.99), cache != null ? " " + cache : "");
+                }
+            }
+        }
+    }
+
+    /**
+     * Times 2,000,000 searches for studentIds that aren't in a 1,000,000 row
+     * tree, and as many for ones that are, without a key filter and with one
+     * sized for each false positive rate of 1 in the given number. Prints
+     * p50 and p99 latency of each, the filter's bytes per key and the false
+     * positive rate it actually gave.
+     */
+    private static void bloom(int[] oneIn) {
+        int size = 1_000_000;
+        int probeCount = 2_000_000;
+        long[] sortedIds = shuffledIds(size, 127);
+        Arrays.sort(sortedIds);
+        long[] recordIds = new long[size];
+        for (int i = 0; i < size; i++) {
+            recordIds[i] = i;
+        }
+        long[] hitIds = probes(sortedIds, probeCount, 131);
+        // shuffledIds takes one ID from each run of ten, so the other nine
+        // are misses spread over the same range
+        Random r = new Random(137);
+        long[] missIds = new long[probeCount];
+        for (int i = 0; i < probeCount; i++) {
+            int run = r.nextInt(size);
+            long offset = sortedIds[run] - 10L * run - 1;
+            missIds[i] = 10L * run + 1 + (offset + 1 + r.nextInt(9)) % 10;
+        }
+
+        int[] runs = new int[oneIn.length + 1];
+        System.arraycopy(oneIn, 0, runs, 1, oneIn.length);
+        for (int target : runs) {
+            BTree tree = new BTree(DEGREE).bulkLoad(sortedIds, recordIds, size, 1.0);
+            if (target > 0) {
+                tree.setKeyFilter(1.0 / target);
+            }
+            KeyFilter filter = tree.keyFilter();
+            LatencyHistogram misses = new LatencyHistogram();
+            LatencyHistogram hits = new LatencyHistogram();
+            long start = 0;
+            for (int round = 0; round < 2; round++) {
+                misses.reset();
+                hits.reset();
+                long sum = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < probeCount; i++) {
+                    long before = System.nanoTime();
+                    sum += tree.search(missIds[i]);
+                    long middle = System.nanoTime();
+                    sum += tree.search(hitIds[i]);
+                    hits.record(System.nanoTime() - middle);
+                    misses.record(middle - before);
+                }
+                blackhole += sum;
+            }
+            long nanos = System.nanoTime() - start;
+            report(target > 0 ? "filter 1/" + target : "no filter", size, 2 * probeCount, nanos);
+            System.out.printf("%-16s miss p50=%dns p99=%dns, hit p50=%dns p99=%dns%n", "",
+                misses.percentile(0.5), misses.percentile(0.99), hits.percentile(0.5), hits.percentile(0.99));
+            if (filter != null) {
+                int falsePositives = 0;
+                for (long missId : missIds) {
+                    falsePositives += filter.mightContain(missId) ? 1 : 0;
+                }
+                System.out.printf("%-16s %.2f bytes/key, %.3f%% false positives%n", "",
+                    (double) filter.memoryBytes() / size, 100.0 * falsePositives / probeCount);
+            }
+        }
+    }
+
+    /**
+     * Runs batches of the given sizes against a 100,000 row student.csv, each
+     * in a new BTreeMain process and each as one request to a BTreeServer
+     * that stays up, and prints the p50 and mean time per batch. A batch is
+     * searches plus an insert and a delete of the same new studentId, so
+     * every batch sees the same table.
+     */
+    private static void daemon(int[] batchSizes) {
+        int rows = 100_000;
+        int coldRuns = 5;
+        int warmRuns = 200;
+        long[] studentIds = shuffledIds(rows, 139);
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        // The child runs in the temp directory, so relative entries won't do
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = Paths.get(entries[i]).toAbsolutePath().toString();
+        }
+        String classPath = String.join(File.pathSeparator, entries);
+        try {
+            Path dir = Files.createTempDirectory("students");
+            Path src = Files.createDirectory(dir.resolve("src"));
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(src.resolve(StudentDatabase.CSV_FILE))) {
+                    for (int i = 0; i < rows; i++) {
+                        writer.write(studentIds[i] + ",Bench Student,Major,FR,20," + i + "\n");
+                    }
+                }
+                for (int batchSize : batchSizes) {
+                    SplittableRandom r = new SplittableRandom(batchSize);
+                    String[] batches = new String[warmRuns];
+                    for (int b = 0; b < warmRuns; b++) {
+                        StringBuilder batch = new StringBuilder();
+                        long newId = 10L * rows + 1 + b;
+                        batch.append("insert ").append(newId).append(" Bench Student Major FR 20 ").append(b).append('\n');
+                        for (int i = 2; i < batchSize; i++) {
+                            batch.append("search ").append(studentIds[r.nextInt(rows)]).append('\n');
+                        }
+                        batch.append("delete ").append(newId).append('\n');
+                        batches[b] = batch.toString();
+                    }
+
+                    // Cold: a JVM per batch, which loads student.csv and exits
+                    LatencyHistogram cold = new LatencyHistogram();
+                    long coldNanos = 0;
+                    for (int b = 0; b < coldRuns; b++) {
+                        Files.write(src.resolve("input.txt"), (DEGREE + "\n" + batches[b]).getBytes(StandardCharsets.UTF_8));
+                        long start = System.nanoTime();
+                        Process process = new ProcessBuilder(java, "-cp", classPath, "BTreeMain")
+                            .directory(dir.toFile())
+                            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                            .redirectError(ProcessBuilder.Redirect.INHERIT)
+                            .start();
+                        if (process.waitFor() != 0) {
+                            throw new IllegalStateException("BTreeMain exited with " + process.exitValue());
+                        }
+                        long nanos = System.nanoTime() - start;
+                        cold.record(nanos);
+                        coldNanos += nanos;
+                    }
+
+                    // Warm: one server, warmed up on the batches first
+                    LatencyHistogram warm = new LatencyHistogram();
+                    long warmNanos = 0;
+                    StudentDatabase db = StudentDatabase.open(src, DEGREE, false);
+                    BTreeServer server = BTreeServer.open(db, dir.resolve("students.sock").toString());
+                    Thread acceptor = new Thread(() -> {
+                        try {
+                            server.serve();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    acceptor.start();
+                    try {
+                        for (int round = 0; round < 2; round++) {
+                            warm.reset();
+                            warmNanos = 0;
+                            for (String batch : batches) {
+                                long start = System.nanoTime();
+                                blackhole += BTreeServer.request(server.address(), batch).length();
+                                long nanos = System.nanoTime() - start;
+                                warm.record(nanos);
+                                warmNanos += nanos;
+                            }
+                        }
+                    } finally {
+                        server.close();
+                        acceptor.join();
+                        db.close();
+                    }
+
+                    System.out.printf("%-16s batch of %,6d: p50=%9.3f ms mean=%9.3f ms%n", "cold CLI", batchSize,
+                        cold.percentile(0.5) / 1e6, coldNanos / 1e6 / coldRuns);
+                    System.out.printf("%-16s batch of %,6d: p50=%9.3f ms mean=%9.3f ms%s%n", "warm daemon", batchSize,
+                        warm.percentile(0.5) / 1e6, warmNanos / 1e6 / warmRuns,
+                        server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)");
+                }
+            } finally {
+                deleteDirectory(src);
+                deleteDirectory(dir);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs 1,000 queries of each of several filter combinations from the
+     * search sidebar against a GameCatalog of each size, and against a check
+     * of every game, and prints p50 and p99 latency and the average number of
+     * matches.
+     */
+    private static void catalog(int[] sizes) {
+        String[] mixes = {"players", "players+playtime", "players+playtime+weight",
+            "players+playtime+weight+year", "weight+year", "title", "players+creator"};
+        int queryCount = 1_000;
+        for (int size : sizes) {
+            List<Game> games = games(size, 149);
+            long start = System.nanoTime();
+            GameCatalog catalog = GameCatalog.build(DEGREE, games, ForkJoinPool.commonPool());
+            report("build", size, size, System.nanoTime() - start);
+
+            for (String mix : mixes) {
+                Random r = new Random(151);
+                GameCatalog.Query[] queries = new GameCatalog.Query[queryCount];
+                for (int i = 0; i < queryCount; i++) {
+                    GameCatalog.Query q = new GameCatalog.Query();
+                    if (mix.contains("players")) {
+                        q.players(1 + r.nextInt(6));
+                    }
+                    if (mix.contains("playtime")) {
+                        int shortest = 15 * r.nextInt(4);
+                        q.playtime(shortest, shortest + 30 + 30 * r.nextInt(4));
+                    }
+                    if (mix.contains("weight")) {
+                        double lightest = 1 + r.nextInt(30) / 10.0;
+                        q.weight(lightest, lightest + 0.5 + r.nextInt(10) / 10.0);
+                    }
+                    if (mix.contains("year")) {
+                        int earliest = 1990 + r.nextInt(30);
+                        q.year(earliest, earliest + r.nextInt(10));
+                    }
+                    if (mix.contains("title")) {
+                        q.title(GAME_WORDS[r.nextInt(GAME_WORDS.length)]);
+                    }
+                    if (mix.contains("creator")) {
+                        q.creator("Designer " + r.nextInt(5_000) + " ");
+                    }
+                    queries[i] = q;
+                }
+
+                LatencyHistogram indexed = new LatencyHistogram();
+                LatencyHistogram scanned = new LatencyHistogram();
+                long matches = 0;
+                for (int round = 0; round < 2; round++) {
+                    indexed.reset();
+                    scanned.reset();
+                    matches = 0;
+                    for (GameCatalog.Query q : queries) {
+                        long before = System.nanoTime();
+                        matches += catalog.search(q, Integer.MAX_VALUE).size();
+                        indexed.record(System.nanoTime() - before);
+
+                        before = System.nanoTime();
+                        int found = 0;
+                        for (Game g : games) {
+                            found += q.matches(g) ? 1 : 0;
+                        }
+                        scanned.record(System.nanoTime() - before);
+                        blackhole += found;
+                    }
+                }
+                System.out.printf("%-30s %,8d games %,8d matches  indexed p50=%8.3f ms p99=%8.3f ms  scan p50=%8.3f ms%n",
+                    mix, size, matches / queryCount, indexed.percentile(0.5) / 1e6,
+                    indexed.percentile(0.99) / 1e6, scanned.percentile(0.5) / 1e6);
+            }
+        }
+    }
+
+    private static final String[] GAME_WORDS = {"Castle", "Dragon", "Empire", "Forest", "Galaxy", "Harbor",
+        "Island", "Kingdom", "Legend", "Market", "Ocean", "Railroad", "Saga", "Temple", "Village", "War"};
+
+    // Made-up games, with player counts, playtimes, weights and years spread
+    // roughly as on BoardGameGeek
+    private static List<Game> games(int count, long seed) {
+        Random r = new Random(seed);
+        List<Game> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int minPlayers = 1 + Math.min(3, (int) Math.abs(r.nextGaussian() * 1.2));
+            int maxPlayers = minPlayers + r.nextInt(5);
+            int minPlaytime = 15 * (1 + Math.min(11, (int) Math.abs(r.nextGaussian() * 3)));
+            int maxPlaytime = minPlaytime * (1 + r.nextInt(3));
+            double weight = Math.round(Math.max(1, Math.min(5, 2.3 + r.nextGaussian() * 0.8)) * 100) / 100.0;
+            int year = 2024 - Math.min(74, (int) Math.abs(r.nextGaussian() * 15));
+            String title = GAME_WORDS[r.nextInt(GAME_WORDS.length)] + " " + GAME_WORDS[r.nextInt(GAME_WORDS.length)] + " " + i;
+            String creators = "Designer " + r.nextInt(5_000) + " , Designer " + r.nextInt(5_000) + " ";
+            games.add(new Game(1 + 3L * i, title, year, minPlayers, maxPlayers, minPlaytime, maxPlaytime, weight, creators));
+        }
+        return games;
+    }
+
+    // Deletes a directory of files
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    // Prints the rows and MB read per second
+    private static void throughput(String name, long bytes, int rows, long nanos) {
+        System.out.printf("%-16s %,12d rows %10.1f ms %10.1f MB/s%n",
+            name, rows, nanos / 1e6, bytes / 1e6 / (nanos / 1e9));
+    }
+
+    // Random existing keys to look up
+    private static long[] probes(long[] sortedIds, int count, long seed) {
+        Random r = new Random(seed);
+        long[] probeIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            probeIds[i] = sortedIds[r.nextInt(sortedIds.length)];
+        }
+        return probeIds;
+    }
+
+    // Time taken by one full collection with the current live set
+    private static long fullGcMillis() {
+        long gc = gcMillis();
+        System.gc();
+        return gcMillis() - gc;
+    }
+
+    // Heap in use after a full collection
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Total time spent in GC so far
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    // Bytes allocated so far by this thread, or 0 if the JVM can't tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    // Distinct student IDs in random order, like an unsorted Student.csv
+    private static long[] shuffledIds(int size, long seed) {
+        Random r = new Random(seed);
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 10L * i + 1 + r.nextInt(10);
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            long tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+        return ids;
+    }
+
+    // Spot check that a sample of keys can be found
+    private static void check(BTree tree, long[] sortedIds) {
+        for (int i = 0; i < sortedIds.length; i += Math.max(1, sortedIds.length / 1000)) {
+            if (tree.search(sortedIds[i]) == -1) {
+                throw new IllegalStateException("Missing key " + sortedIds[i]);
+            }
+        }
+    }
+
+    // Prints the time taken for ops operations on a tree of the given size
+    private static void report(String name, int size, int ops, long nanos) {
+        System.out.printf("%-16s %,12d rows %10.1f ms %,14.0f ops/s%n",
+            name, size, nanos / 1e6, ops / (nanos / 1e9));
+    }
+
+    private static int[] sizes(String[] args, int... defaults) {
+        if (args.length < 2) {
+            return defaults;
+        }
+        int[] sizes = new int[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            sizes[i - 1] = Integer.parseInt(args[i].replace("_", ""));
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Cursor over the [ key,recordId ] entries of a range of B+Tree leaves.
+ * <p>
+ * The cursor starts before the first entry. Each call to next() moves it one
+ * entry along the leaf chain, after which key() and recordId() return that
+ * entry. The cursor stops at the end of the range or after its limit.
+ */
+class BTreeCursor {
+
+    /**
+     * Store holding the leaves.
+     */
+    private final NodeStore store;
+    /**
+     * Leaf holding the next entry, or NONE once the cursor is exhausted.
+     */
+    private int leaf;
+    /**
+     * Index of the next entry in the leaf. May run past either end of the leaf,
+     * in which case the cursor moves on to the neighbouring leaf.
+     */
+    private int index;
+    /**
+     * Smallest studentId in the range.
+     */
+    private final long lowId;
+    /**
+     * Largest studentId in the range.
+     */
+    private final long highId;
+    /**
+     * Number of entries the cursor may still return.
+     */
+    private long remaining;
+    /**
+     * True when walking from highId down to lowId.
+     */
+    private final boolean reverse;
+
+    private long key;
+    private long recordId;
+
+    // Constructor
+    BTreeCursor(NodeStore store, int leaf, int index, long lowId, long highId, long limit, boolean reverse) {
+        this.store = store;
+        this.leaf = leaf;
+        this.index = index;
+        this.lowId = lowId;
+        this.highId = highId;
+        this.remaining = limit;
+        this.reverse = reverse;
+    }
+
+    /**
+     * Moves to the next entry in the range.
+     *
+     * @return True if the cursor is on an entry. False once the range or limit
+     *         is exhausted.
+     */
+    boolean next() {
+        if (leaf == NodeStore.NONE || remaining == 0) {
+            return false;
+        }
+
+        if (reverse) {
+            // Step back over leaves that have no entries left
+            while (index < 0) {
+                leaf = store.prev(leaf);
+                if (leaf == NodeStore.NONE) {
+                    return false;
+                }
+                index = store.n(leaf) - 1;
+            }
+            key = store.key(leaf, index);
+            if (key < lowId) {
+                leaf = NodeStore.NONE;
+                return false;
+            }
+            recordId = store.value(leaf, index);
+            index--;
+        } else {
+            // Step forward over leaves that have no entries left
+            while (index >= store.n(leaf)) {
+                leaf = store.next(leaf);
+                if (leaf == NodeStore.NONE) {
+                    return false;
+                }
+                index = 0;
+            }
+            key = store.key(leaf, index);
+            if (key > highId) {
+                leaf = NodeStore.NONE;
+                return false;
+            }
+            recordId = store.value(leaf, index);
+            index++;
+        }
+
+        remaining--;
+        return true;
+    }
+
+    /**
+     * @return The studentId of the current entry
+     */
+    long key() {
+        return key;
+    }
+
+    /**
+     * @return The recordId of the current entry
+     */
+    long recordId() {
+        return recordId;
+    }
+}
@@ -1,17 +1,46 @@
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.Random;
-import java.io.FileWriter;
 
 /**
  * Main Application.
+ * <p>
+ * Run with --heap to keep rows in the binary heap file src/Student.heap
+ * instead of src/Student.csv. The heap file is created from student.csv on
+ * the first run, and recordIds are then heap file addresses.
+ * <p>
+ * Inserts and deletes go through the write-ahead log src/Student.wal, which
+ * is replayed on startup if the last run crashed before its checkpoint.
+ * <p>
+ * Run with --batch to apply the operations in batches (see CommandBatcher)
+ * instead of one line at a time. The output is the same.
+ * <p>
+ * Run with --serve [port or socket path] to keep the database open and take
+ * operations over a socket instead (see BTreeServer). The minimum degree is
+ * still read from input.txt, and the rest of the file is ignored.
  */
 public class BTreeMain {
 
     public static void main(String[] args) {
+        boolean useHeap = Arrays.asList(args).contains("--heap");
+        if (Arrays.asList(args).contains("--batch")) {
+            runBatched(useHeap);
+            return;
+        }
+        int serve = Arrays.asList(args).indexOf("--serve");
+        if (serve >= 0) {
+            boolean hasAddress = serve + 1 < args.length && !args[serve + 1].startsWith("--");
+            runServer(useHeap, hasAddress ? args[serve + 1] : BTreeServer.DEFAULT_ADDRESS);
+            return;
+        }
 
         /** Read the input file -- input.txt */
         Scanner scan = null;
@@ -25,15 +54,46 @@ public class BTreeMain {
 
         int degree = scan.nextInt();
 
-        BTree bTree = new BTree(degree);
-
-        /** Reading the database student.csv into B+Tree Node*/
-        List<Student> studentsDB = getStudents();
+        /** Reading the database student.csv (or the heap file) into B+Tree Node*/
+        StudentDatabase db;
+        try {
+            db = StudentDatabase.open(degree, useHeap);
+        } catch (IOException e) {
+            System.out.println("Error opening student database: " + e.getMessage());
+            return;
+        }
 
-        for (Student s : studentsDB) {
-            bTree.insert(s);
+        try {
+            runCommands(scan, db);
+        } finally {
+            try {
+                db.close();
+            } catch (IOException e) {
+                System.out.println("Error closing student database: " + e.getMessage());
+            }
         }
+    }
+
+    /**
+     * Runs the operations in input.txt one line at a time, printing the result
+     * of each.
+     *
+     * @param scan - The input, after the minimum degree
+     * @param db   - The database to run the operations against
+     */
+    static void runCommands(Scanner scan, StudentDatabase db) {
+        runCommands(scan, db, System.out);
+    }
 
+    /**
+     * Runs the operations one line at a time, printing the result of each to
+     * the given stream.
+     *
+     * @param scan - The input, after the minimum degree
+     * @param db   - The database to run the operations against
+     * @param out  - Where to print the results
+     */
+    static void runCommands(Scanner scan, StudentDatabase db, PrintStream out) {
         /** Start reading the operations now from input file*/
         try {
             while (scan.hasNextLine()) {
@@ -61,50 +121,40 @@ public class BTreeMain {
                             }
 
                             Student s = new Student(studentId, age, studentName, major, level, recordID);
-                            bTree.insert(s);
-                            
-                            if(!studentsDB.contains(s)) {
-                                studentsDB.add(s);
-                                //insert student into student.csv
-                                try(
-                                    FileWriter fw = new FileWriter("src/Student.csv", true);   
-                                ) {
-                                    fw.write(studentId + "," + studentName + "," + major + "," + level + "," + age + "," + recordID + "\n");
-                                } catch (Exception e) {
-                                    System.out.println("Error writing to student.csv: " + e.getMessage());
-                                }
-                            }
+                            db.insert(s);
 
-                            System.out.println("Student inserted successfully.");
+                            out.println("Student inserted successfully.");
 
                             break;
                         }
                         case "delete": {
                             long studentId = Long.parseLong(s2.next());
-                            boolean result = bTree.delete(studentId);
-                            if (result)
-                                System.out.println("Student deleted successfully.");
-                            else
-                                System.out.println("Student deletion failed.");
+                            boolean result = db.delete(studentId);
+                            if (result) {
+                                out.println("Student deleted successfully.");
+                            } else {
+                                out.println("Student deletion failed.");
+                            }
 
                             break;
                         }
                         case "search": {
                             long studentId = Long.parseLong(s2.next());
-                            long recordID = bTree.search(studentId);
+                            long recordID = db.search(studentId);
                             if (recordID != -1)
-                                System.out.println("Student exists in the database at " + recordID);
-                            else
-                                System.out.println("Student does not exist.");
+                                out.println("Student exists in the database at " + recordID);
+                            else {
+                                out.println("Student ID: " + studentId + "was not found in the B+Tree.");
+                                out.println("Student does not exist.");
+                            }
                             break;
                         }
                         case "print": {
-                            List<Long> listOfRecordID = new ArrayList<>();
-                            listOfRecordID = bTree.print();
-                            System.out.println("List of recordIDs in B+Tree " + listOfRecordID.toString());
+                            LongList listOfRecordID = db.print();
+                            out.println("List of recordIDs in B+Tree " + listOfRecordID.toString());
                         }
                         default:
-                            System.out.println("Wrong Operation");
+                            out.println("Wrong Operation");
                             break;
                     }
                 }
@@ -114,21 +164,55 @@ public class BTreeMain {
         }
     }
 
-    private static List<Student> getStudents() {
-        List<Student> studentList = new ArrayList<>();
-        Scanner scan = null;
+    // Serves operations over a socket until the JVM is stopped, then closes
+    // the database
+    private static void runServer(boolean useHeap, String address) {
+        int degree;
+        try (Scanner scan = new Scanner(new File("src/input.txt"))) {
+            degree = scan.nextInt();
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found.");
+            return;
+        }
         try {
-            scan = new Scanner(new File("src/Student.csv"));
-            while (scan.hasNextLine()) {
-                String line = scan.nextLine();
-                if (line.isEmpty()) { break; }
-                String[] params = line.split(",");
-                Student student = new Student(Long.parseLong(params[0]), Integer.parseInt(params[4]), params[1], params[2], params[3], Long.parseLong(params[5]));
-                studentList.add(student);
+            StudentDatabase db = StudentDatabase.open(degree, useHeap);
+            BTreeServer server;
+            try {
+                server = BTreeServer.open(db, address);
+            } catch (IOException e) {
+                db.close();
+                throw e;
             }
-        } catch (FileNotFoundException e) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                    server.closeDatabase();
+                } catch (IOException e) {
+                    System.out.println("Error closing student database: " + e.getMessage());
+                }
+            }));
+            System.out.println("Serving on " + server.address()
+                + (server.usesVirtualThreads() ? " with virtual threads" : " with a thread per connection"));
+            server.serve();
+        } catch (IOException e) {
+            System.out.println("Error serving student database: " + e.getMessage());
+        }
+    }
+
+    // Runs input.txt through a CommandBatcher
+    private static void runBatched(boolean useHeap) {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get("src/input.txt"))) {
+            CommandBatcher batcher = new CommandBatcher(reader);
+            StudentDatabase db = StudentDatabase.open(batcher.readDegree(), useHeap);
+            try {
+                batcher.run(db, System.out);
+            } finally {
+                db.close();
+            }
+        } catch (NoSuchFileException e) {
             System.out.println("File not found.");
+        } catch (IOException e) {
+            System.out.println("Error opening student database: " + e.getMessage());
         }
-        return studentList;
     }
 }
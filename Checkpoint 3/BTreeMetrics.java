@@ -0,0 +1,162 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives what a BTree does, for monitoring. Attach one with
+ * BTree.setMetrics(); a tree with none attached doesn't time anything.
+ * <p>
+ * The tree calls these from whichever thread is using it, so an
+ * implementation read by another thread, such as a monitoring endpoint or a
+ * periodic dump, has to be thread-safe.
+ */
+interface BTreeMetrics {
+
+    /**
+     * Called after each search.
+     *
+     * @param nanos - Time the search took
+     * @param found - True if the studentId was in the tree
+     */
+    void searched(long nanos, boolean found);
+
+    /**
+     * Called after each insert.
+     *
+     * @param nanos - Time the insert took, splits included
+     */
+    void inserted(long nanos);
+
+    /**
+     * Called after each delete from the tree.
+     *
+     * @param nanos - Time the delete took, rebalancing included
+     * @param found - True if the studentId was in the tree
+     */
+    void deleted(long nanos, boolean found);
+
+    /**
+     * Called when a full node is split in two.
+     *
+     * @param leaf - True if the node is a leaf
+     */
+    void split(boolean leaf);
+
+    /**
+     * Called when a node left with too few keys is merged into a sibling.
+     *
+     * @param leaf - True if the nodes are leaves
+     */
+    void merged(boolean leaf);
+
+    /**
+     * Called when a node left with too few keys takes one from a sibling.
+     *
+     * @param leaf - True if the nodes are leaves
+     */
+    void redistributed(boolean leaf);
+
+    /**
+     * Counts every event and keeps a LatencyHistogram per operation. All
+     * counters are LongAdders and the histograms are lock-free, so recording
+     * never blocks and the numbers can be read at any time.
+     */
+    final class Recorder implements BTreeMetrics {
+
+        private final LatencyHistogram searches = new LatencyHistogram();
+        private final LatencyHistogram inserts = new LatencyHistogram();
+        private final LatencyHistogram deletes = new LatencyHistogram();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder leafSplits = new LongAdder();
+        private final LongAdder internalSplits = new LongAdder();
+        private final LongAdder leafMerges = new LongAdder();
+        private final LongAdder internalMerges = new LongAdder();
+        private final LongAdder leafRedistributions = new LongAdder();
+        private final LongAdder internalRedistributions = new LongAdder();
+
+        @Override
+        public void searched(long nanos, boolean found) {
+            searches.record(nanos);
+            if (!found) {
+                misses.increment();
+            }
+        }
+
+        @Override
+        public void inserted(long nanos) {
+            inserts.record(nanos);
+        }
+
+        @Override
+        public void deleted(long nanos, boolean found) {
+            deletes.record(nanos);
+            if (!found) {
+                misses.increment();
+            }
+        }
+
+        @Override
+        public void split(boolean leaf) {
+            (leaf ? leafSplits : internalSplits).increment();
+        }
+
+        @Override
+        public void merged(boolean leaf) {
+            (leaf ? leafMerges : internalMerges).increment();
+        }
+
+        @Override
+        public void redistributed(boolean leaf) {
+            (leaf ? leafRedistributions : internalRedistributions).increment();
+        }
+
+        LatencyHistogram searches() {
+            return searches;
+        }
+
+        LatencyHistogram inserts() {
+            return inserts;
+        }
+
+        LatencyHistogram deletes() {
+            return deletes;
+        }
+
+        /**
+         * @return Searches and deletes of studentIds that weren't in the tree
+         */
+        long misses() {
+            return misses.sum();
+        }
+
+        long splits() {
+            return leafSplits.sum() + internalSplits.sum();
+        }
+
+        long merges() {
+            return leafMerges.sum() + internalMerges.sum();
+        }
+
+        long redistributions() {
+            return leafRedistributions.sum() + internalRedistributions.sum();
+        }
+
+        /**
+         * Describes the counters and the shape of the tree, one line per
+         * item, for a periodic dump. Measuring the fill visits every node,
+         * so call it from the thread that owns the tree.
+         *
+         * @param tree - The tree this recorder is attached to
+         * @return The report
+         */
+        String report(BTree tree) {
+            return "search  " + searches + "\n"
+                + "insert  " + inserts + "\n"
+                + "delete  " + deletes + "\n"
+                + "misses " + misses() + "\n"
+                + "splits " + leafSplits.sum() + " leaf, " + internalSplits.sum() + " internal\n"
+                + "merges " + leafMerges.sum() + " leaf, " + internalMerges.sum() + " internal\n"
+                + "redistributions " + leafRedistributions.sum() + " leaf, " + internalRedistributions.sum() + " internal\n"
+                + String.format("height %d, %d keys, average fill %.1f%%%n",
+                    tree.height(), tree.size(), 100 * tree.averageFill());
+        }
+    }
+}
@@ -1,11 +1,18 @@
 class BTreeNode {
 
+    /**
+     * Nodes holding at most this many keys are searched with a branch-free
+     * linear scan. Larger nodes use binary search.
+     */
+    static final int LINEAR_SEARCH_MAX = 32;
+
     /**
      * Array of the keys stored in the node.
      */
     long[] keys;
     /**
-     * Array of the values[recordID] stored in the node. This will only be filled when the node is a leaf node.
+     * Array of the values[recordID] stored in the node. Only leaves have one;
+     * it is null in an internal node.
      */
     long[] values;
     /**
@@ -31,15 +38,90 @@ class BTreeNode {
      */
     BTreeNode next;
 
+    /**
+     * point to the previous node when it is a leaf node. Otherwise null
+     */
+    BTreeNode prev;
+
+    /**
+     * Latch version used by ConcurrentBTree, only accessed through its
+     * VarHandle, or the write that created the node in CopyOnWriteBTree.
+     * Unused by BTree.
+     */
+    long version;
+
+    /**
+     * ID of the node in the HeapNodeStore holding it. Unused elsewhere.
+     */
+    int id;
+
     // Constructor
     BTreeNode(int t, boolean leaf) {
         this.t = t;
         this.leaf = leaf;
         this.keys = new long[2 * t];
-        this.children = new BTreeNode[2 * t + 1];
+        // Leaves hold values and internal nodes hold children, never both
+        this.children = leaf ? null : new BTreeNode[2 * t + 1];
         this.n = 0;
         this.next = null;
-        this.values = new long[2 * t];
+        this.prev = null;
+        this.values = leaf ? new long[2 * t] : null;
     }
 
+    /**
+     * Finds the index of the first key greater than the given key, which is
+     * also the child to follow for that key in an internal node.
+     *
+     * @param key - The key to search for
+     * @return The number of keys less than or equal to key
+     */
+    int upperBound(long key) {
+        if (n <= LINEAR_SEARCH_MAX) {
+            // Count instead of breaking early so the loop compiles to
+            // conditional moves rather than an unpredictable branch
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                count += keys[i] <= key ? 1 : 0;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the index of the first key greater than or equal to the given key.
+     *
+     * @param key - The key to search for
+     * @return The number of keys less than key
+     */
+    int lowerBound(long key) {
+        if (n <= LINEAR_SEARCH_MAX) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                count += keys[i] < key ? 1 : 0;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 }
@@ -0,0 +1,235 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves input.txt operations against one open StudentDatabase, so the tree
+ * stays loaded and the JIT stays warm between batches.
+ * <p>
+ * The address is a TCP port, bound on the loopback interface only, or the
+ * path of a Unix domain socket. A client connects, writes operation lines in
+ * the input.txt grammar without the minimum degree, and shuts down its side
+ * of the connection. The server then runs the lines in order, exactly as
+ * BTreeMain.runCommands() would, writes back what they print and closes the
+ * connection. For example:
+ * <pre>
+ *   printf 'search 51135593\n' | nc -N localhost 5564
+ *   printf 'search 51135593\n' | nc -U students.sock
+ * </pre>
+ * Each connection is handled on its own thread: a virtual thread when the
+ * JVM has them (Java 21 and later), or a platform thread otherwise. The
+ * database is not thread-safe, so a request holds a lock while it runs, and
+ * batches never interleave. A request is read in full before the lock is
+ * taken, and its output is written after it is released, so a slow client
+ * only holds up its own thread. The lock is a ReentrantLock rather than a
+ * monitor, which would pin a virtual thread to its carrier while it waits
+ * before Java 24.
+ */
+class BTreeServer implements Closeable {
+
+    /** Port used when none is given */
+    static final String DEFAULT_ADDRESS = "5564";
+    /** How long close() waits for running requests to finish */
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final StudentDatabase db;
+    /** Held while a request runs against db */
+    private final ReentrantLock dbLock = new ReentrantLock();
+    private final ServerSocketChannel server;
+    private final String address;
+    /** Socket file to delete on close, or null for TCP */
+    private final Path socketFile;
+    private final ExecutorService handlers;
+    private final boolean virtualThreads;
+    private volatile boolean closed;
+
+    private BTreeServer(StudentDatabase db, ServerSocketChannel server, String address, Path socketFile) {
+        this.db = db;
+        this.server = server;
+        this.address = address;
+        this.socketFile = socketFile;
+        ExecutorService virtual = virtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.handlers = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "btree-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds the server. Call serve() to start accepting connections.
+     *
+     * @param db      - The database to run operations against
+     * @param address - A TCP port, or the path of a Unix domain socket. A
+     *                socket file left behind by an earlier server is
+     *                replaced.
+     * @return The bound server
+     * @throws IOException if the address can't be bound
+     */
+    static BTreeServer open(StudentDatabase db, String address) throws IOException {
+        if (isPort(address)) {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(socketAddress(address));
+            return new BTreeServer(db, server, address, null);
+        }
+        Path socketFile = Paths.get(address);
+        Files.deleteIfExists(socketFile);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketFile));
+        return new BTreeServer(db, server, address, socketFile);
+    }
+
+    /**
+     * Accepts connections until close() is called, handing each to its own
+     * thread.
+     *
+     * @throws IOException if accepting fails for any reason other than close()
+     */
+    void serve() throws IOException {
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (AsynchronousCloseException e) {
+                break;
+            }
+            handlers.execute(() -> handle(channel));
+        }
+    }
+
+    /**
+     * @return The address the server is bound to, as given to open()
+     */
+    String address() {
+        return address;
+    }
+
+    /**
+     * @return True if connections are handled on virtual threads
+     */
+    boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting connections and waits for running requests to finish.
+     * The database is left open.
+     *
+     * @throws IOException if the socket can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.close();
+        handlers.shutdown();
+        try {
+            handlers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    /**
+     * Closes the database, waiting for any request still running on it.
+     * Call after close(), so no new request can start.
+     *
+     * @throws IOException if the database can't be closed
+     */
+    void closeDatabase() throws IOException {
+        dbLock.lock();
+        try {
+            db.close();
+        } finally {
+            dbLock.unlock();
+        }
+    }
+
+    /**
+     * Sends operation lines to a server and waits for its reply.
+     *
+     * @param address  - The server's TCP port or socket path
+     * @param commands - Operation lines in the input.txt grammar
+     * @return What the operations printed
+     * @throws IOException if the server can't be reached
+     */
+    static String request(String address, String commands) throws IOException {
+        try (SocketChannel channel = isPort(address)
+                ? SocketChannel.open(socketAddress(address))
+                : SocketChannel.open(UnixDomainSocketAddress.of(address))) {
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write(commands.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            channel.shutdownOutput();
+            return new String(Channels.newInputStream(channel).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Runs one connection's operations and writes back their output
+    private void handle(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            InputStream in = Channels.newInputStream(c);
+            String commands = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(output, false, StandardCharsets.UTF_8);
+            dbLock.lock();
+            try {
+                BTreeMain.runCommands(new Scanner(commands), db, out);
+            } finally {
+                dbLock.unlock();
+            }
+            out.flush();
+            OutputStream reply = Channels.newOutputStream(c);
+            output.writeTo(reply);
+            reply.flush();
+        } catch (IOException e) {
+            System.out.println("Error serving connection: " + e.getMessage());
+        }
+    }
+
+    private static boolean isPort(String address) {
+        return !address.isEmpty() && address.chars().allMatch(Character::isDigit);
+    }
+
+    private static SocketAddress socketAddress(String port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), looked up at run time so
+    // the server still builds and runs on JVMs without virtual threads.
+    // Returns null on those.
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * Spliterator over the recordIds of a studentId range of a B+Tree, for
+ * parallel scans and aggregates.
+ * <p>
+ * Until it is first advanced, the spliterator covers a run of children of one
+ * internal node. trySplit() hands the left half of the run to a new
+ * spliterator, cutting the key range at the separator between the halves.
+ * Once the run is down to one child, it moves down to that child and splits
+ * its children in turn, so each piece ends up with its own run of leaves.
+ */
+class BTreeSpliterator implements Spliterator.OfLong {
+
+    /**
+     * Store holding the nodes.
+     */
+    private final NodeStore store;
+    /**
+     * Internal node whose children [childFrom, childTo) cover the key range,
+     * or a leaf once the range can't be split any further.
+     */
+    private int node;
+    private int childFrom;
+    private int childTo;
+    /**
+     * Smallest studentId still to return.
+     */
+    private long lowId;
+    /**
+     * Largest studentId to return.
+     */
+    private final long highId;
+    /**
+     * Rough number of entries left, halved by each split.
+     */
+    private long estimate;
+
+    /**
+     * Leaf holding the next entry, or NONE before the first advance.
+     */
+    private int leaf = NodeStore.NONE;
+    private int index;
+    private boolean done;
+
+    // Constructor
+    BTreeSpliterator(NodeStore store, int root, long lowId, long highId, long estimate) {
+        this.store = store;
+        this.highId = highId;
+        this.estimate = estimate;
+        this.lowId = lowId;
+        cover(root);
+    }
+
+    private BTreeSpliterator(NodeStore store, int node, int childFrom, int childTo, long lowId, long highId,
+            long estimate) {
+        this.store = store;
+        this.node = node;
+        this.childFrom = childFrom;
+        this.childTo = childTo;
+        this.lowId = lowId;
+        this.highId = highId;
+        this.estimate = estimate;
+    }
+
+    @Override
+    public OfLong trySplit() {
+        if (leaf != NodeStore.NONE || done) {
+            return null;
+        }
+        // Move down while the run is a single child
+        while (!store.isLeaf(node) && childTo - childFrom == 1) {
+            cover(store.child(node, childFrom));
+        }
+        if (store.isLeaf(node)) {
+            return null;
+        }
+
+        // Keys below the separator left of child mid belong to the left half
+        int mid = (childFrom + childTo) >>> 1;
+        long separator = store.key(node, mid - 1);
+        estimate >>>= 1;
+        BTreeSpliterator left = new BTreeSpliterator(store, node, childFrom, mid, lowId, separator - 1, estimate);
+        childFrom = mid;
+        lowId = separator;
+        return left;
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+        if (!start()) {
+            return false;
+        }
+        while (leaf != NodeStore.NONE) {
+            if (index < store.n(leaf)) {
+                if (store.key(leaf, index) > highId) {
+                    break;
+                }
+                action.accept(store.value(leaf, index++));
+                return true;
+            }
+            leaf = store.next(leaf);
+            index = 0;
+        }
+        done = true;
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+        if (!start()) {
+            return;
+        }
+        for (; leaf != NodeStore.NONE; leaf = store.next(leaf), index = 0) {
+            for (int n = store.n(leaf); index < n; index++) {
+                if (store.key(leaf, index) > highId) {
+                    done = true;
+                    return;
+                }
+                action.accept(store.value(leaf, index));
+            }
+        }
+        done = true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    // Restricts the run to the children of node that overlap the key range
+    private void cover(int node) {
+        this.node = node;
+        if (!store.isLeaf(node)) {
+            childFrom = store.upperBound(node, lowId);
+            childTo = store.upperBound(node, highId) + 1;
+        }
+    }
+
+    // Positions the cursor at the first entry >= lowId on the first advance.
+    // Returns false once the range is exhausted.
+    private boolean start() {
+        if (done) {
+            return false;
+        }
+        if (leaf == NodeStore.NONE) {
+            int current = node;
+            while (!store.isLeaf(current)) {
+                current = store.childFor(current, lowId);
+            }
+            leaf = current;
+            index = store.lowerBound(current, lowId);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed number of in-memory frames caching the pages of a page file.
+ * <p>
+ * pin() returns the frame holding a page, reading it from the file first if
+ * it is not resident. A pinned page is never evicted, and every pin must be
+ * matched by an unpin(). Pages unpinned as dirty are written back when they
+ * are evicted or on flush(). Which unpinned page to evict is left to the
+ * EvictionPolicy. The pool is not thread-safe.
+ * <p>
+ * Pools sit under the page files: PagedIndex.open(file, frames, policy)
+ * reads a saved index image through one, StudentHeapFile reads and writes
+ * rows through one, and a BTree on a PooledNodeStore keeps its nodes in one.
+ * Search, insert and delete on that tree pin each node they touch, so the
+ * tree can be larger than the pool's frames.
+ */
+class BufferPool {
+
+    private final FileChannel channel;
+    /**
+     * File offset of page 0.
+     */
+    private final long firstPageOffset;
+    private final int pageSize;
+    private final EvictionPolicy policy;
+
+    /**
+     * Buffer of each frame, pageSize bytes starting at index 0.
+     */
+    private final ByteBuffer[] frames;
+    /**
+     * Page held by each frame, or -1 if the frame is empty.
+     */
+    private final int[] framePages;
+    private final int[] pinCounts;
+    private final boolean[] dirty;
+    /**
+     * Page ID -> frame of every resident page.
+     */
+    private final LongLongMap pageTable;
+    /**
+     * Number of frames that have never held a page.
+     */
+    private int unusedFrames;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long writes;
+
+    /**
+     * @param channel         - The page file. Must be writable if pages are
+     *                        ever unpinned as dirty.
+     * @param firstPageOffset - File offset of page 0
+     * @param pageSize        - Bytes per page
+     * @param frameCount      - Number of pages the pool holds in memory
+     * @param policy          - Eviction policy sized for frameCount frames
+     * @throws IllegalArgumentException if there are no frames, or the frames
+     *                                  come to more than Integer.MAX_VALUE
+     *                                  bytes
+     */
+    BufferPool(FileChannel channel, long firstPageOffset, int pageSize, int frameCount,
+            EvictionPolicy policy) {
+        if (frameCount <= 0) {
+            throw new IllegalArgumentException("A buffer pool needs at least one frame");
+        }
+        // The frames share one direct buffer, which can't pass 2 GB
+        long poolBytes = (long) frameCount * pageSize;
+        if (poolBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer pool of " + frameCount + " frames of " + pageSize
+                + " bytes needs " + poolBytes + " bytes, more than the " + Integer.MAX_VALUE + " one pool can hold");
+        }
+        this.channel = channel;
+        this.firstPageOffset = firstPageOffset;
+        this.pageSize = pageSize;
+        this.policy = policy;
+        this.frames = new ByteBuffer[frameCount];
+        this.framePages = new int[frameCount];
+        this.pinCounts = new int[frameCount];
+        this.dirty = new boolean[frameCount];
+        this.pageTable = new LongLongMap(frameCount);
+        this.unusedFrames = frameCount;
+
+        // One direct allocation sliced into frames
+        ByteBuffer memory = ByteBuffer.allocateDirect((int) poolBytes);
+        for (int i = 0; i < frameCount; i++) {
+            memory.limit((i + 1) * pageSize).position(i * pageSize);
+            frames[i] = memory.slice().order(ByteOrder.LITTLE_ENDIAN);
+            framePages[i] = -1;
+        }
+    }
+
+    /**
+     * Pins a page in memory, reading it from the file if needed.
+     *
+     * @param page - The page ID
+     * @return The frame buffer, with the page at index 0
+     * @throws IllegalStateException if every frame is pinned
+     * @throws UncheckedIOException  if the page can't be read or a dirty page
+     *                               can't be written back
+     */
+    ByteBuffer pin(int page) {
+        int frame = (int) pageTable.get(page, -1);
+        if (frame != -1) {
+            hits++;
+        } else {
+            misses++;
+            frame = freeFrame();
+            read(page, frame);
+            framePages[frame] = page;
+            pageTable.put(page, frame);
+        }
+        pinCounts[frame]++;
+        policy.accessed(frame);
+        return frames[frame];
+    }
+
+    /**
+     * Releases one pin on a page.
+     *
+     * @param page    - The page ID
+     * @param isDirty - True if the page was modified while pinned
+     */
+    void unpin(int page, boolean isDirty) {
+        int frame = (int) pageTable.get(page, -1);
+        if (frame == -1 || pinCounts[frame] == 0) {
+            throw new IllegalStateException("Page " + page + " is not pinned");
+        }
+        pinCounts[frame]--;
+        dirty[frame] |= isDirty;
+    }
+
+    /**
+     * Writes every dirty page back to the file.
+     *
+     * @throws UncheckedIOException if a page can't be written
+     */
+    void flush() {
+        for (int frame = 0; frame < frames.length; frame++) {
+            if (dirty[frame]) {
+                write(frame);
+            }
+        }
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of dirty pages written back to the file
+     */
+    long writes() {
+        return writes;
+    }
+
+    int frameCount() {
+        return frames.length;
+    }
+
+    // Finds an empty frame, evicting a page if the pool is full
+    private int freeFrame() {
+        if (unusedFrames > 0) {
+            return frames.length - unusedFrames--;
+        }
+        int frame = policy.victim(pinCounts);
+        if (frame == -1) {
+            throw new IllegalStateException("All " + frames.length + " buffer pool frames are pinned");
+        }
+        if (dirty[frame]) {
+            write(frame);
+        }
+        pageTable.remove(framePages[frame]);
+        policy.evicted(frame);
+        framePages[frame] = -1;
+        evictions++;
+        return frame;
+    }
+
+    private void read(int page, int frame) {
+        ByteBuffer buffer = frames[frame].clear();
+        long position = firstPageOffset + (long) page * pageSize;
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Page " + page + " is past the end of the file");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(int frame) {
+        ByteBuffer buffer = frames[frame].duplicate().clear();
+        long position = firstPageOffset + (long) framePages[frame] * pageSize;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dirty[frame] = false;
+        writes++;
+    }
+}
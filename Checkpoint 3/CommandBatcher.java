@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Batched execution of the input.txt operation stream.
+ * <p>
+ * Operations are parsed BATCH_SIZE at a time and handed to
+ * StudentDatabase.apply(), which logs them with one commit, applies them in
+ * studentId order and writes student.csv once per batch. A print runs after
+ * the batch before it. The output is the same as running the operations one
+ * by one, in the same order, and is written once per batch.
+ */
+class CommandBatcher {
+
+    /** Operations applied together */
+    static final int BATCH_SIZE = 10_000;
+
+    private final BufferedReader reader;
+    /** Picks recordIds for inserts that don't give one */
+    private final Random random = new Random();
+
+    /** Tokens of the current line */
+    private final List<String> tokens = new ArrayList<>();
+    private int tokenIndex;
+
+    /**
+     * Operations of the current batch, in order, with null for each wrong
+     * operation so its message is printed in the right place.
+     */
+    private final List<StudentDatabase.Operation> entries = new ArrayList<>();
+    private final List<StudentDatabase.Operation> batch = new ArrayList<>();
+
+    // Constructor
+    CommandBatcher(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the minimum degree at the start of the input. The rest of its line
+     * is read as operations.
+     *
+     * @return The minimum degree of the B+Tree
+     * @throws IOException            if the input can't be read
+     * @throws NoSuchElementException if the input is empty
+     */
+    int readDegree() throws IOException {
+        while (tokenIndex == tokens.size()) {
+            if (!nextLine()) {
+                throw new NoSuchElementException("No minimum degree in the input");
+            }
+        }
+        return Integer.parseInt(next());
+    }
+
+    /**
+     * Runs every remaining operation against the database. Like the line by
+     * line loop, a malformed operation stops the run after everything before
+     * it has been applied, and its stack trace is printed.
+     *
+     * @param db  - The database to run the operations against
+     * @param out - Receives the result of each operation
+     */
+    void run(StudentDatabase db, PrintStream out) {
+        try {
+            do {
+                while (tokenIndex < tokens.size()) {
+                    String operation = next();
+
+                    switch (operation) {
+                        case "insert": {
+                            long studentId = Long.parseLong(next());
+                            String studentName = next() + " " + next();
+                            String major = next();
+                            String level = next();
+                            int age = Integer.parseInt(next());
+                            long recordID = tokenIndex < tokens.size()
+                                ? Long.parseLong(next()) : random.nextInt(Integer.MAX_VALUE);
+                            add(StudentDatabase.Operation.insert(new Student(studentId, age, studentName, major, level, recordID)));
+                            break;
+                        }
+                        case "delete":
+                            add(StudentDatabase.Operation.delete(Long.parseLong(next())));
+                            break;
+                        case "search":
+                            add(StudentDatabase.Operation.search(Long.parseLong(next())));
+                            break;
+                        case "print":
+                            flush(db, out);
+                            out.println("List of recordIDs in B+Tree " + db.print().toString());
+                            out.println("Wrong Operation");
+                            break;
+                        default:
+                            entries.add(null);
+                            break;
+                    }
+                    if (batch.size() >= BATCH_SIZE) {
+                        flush(db, out);
+                    }
+                }
+            } while (nextLine());
+            flush(db, out);
+        } catch (Exception e) {
+            try {
+                flush(db, out);
+            } catch (Exception flushError) {
+                e.addSuppressed(flushError);
+            }
+            e.printStackTrace();
+        }
+    }
+
+    private void add(StudentDatabase.Operation op) {
+        entries.add(op);
+        batch.add(op);
+    }
+
+    // Applies the current batch and prints its results
+    private void flush(StudentDatabase db, PrintStream out) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<StudentDatabase.Operation> pending = new ArrayList<>(batch);
+        batch.clear();
+        db.apply(pending);
+
+        StringBuilder output = new StringBuilder();
+        for (StudentDatabase.Operation op : entries) {
+            if (op == null) {
+                output.append("Wrong Operation\n");
+            } else if (op.type == StudentDatabase.Operation.INSERT) {
+                output.append("Student inserted successfully.\n");
+            } else if (op.type == StudentDatabase.Operation.DELETE) {
+                output.append(op.result == 1 ? "Student deleted successfully.\n" : "Student deletion failed.\n");
+            } else if (op.result != -1) {
+                output.append("Student exists in the database at ").append(op.result).append('\n');
+            } else {
+                output.append("Student ID: ").append(op.studentId).append("was not found in the B+Tree.\n");
+                output.append("Student does not exist.\n");
+            }
+        }
+        entries.clear();
+        out.print(output);
+        out.flush();
+    }
+
+    // Moves to the next line. Returns false at the end of the input.
+    private boolean nextLine() throws IOException {
+        String line = reader.readLine();
+        tokens.clear();
+        tokenIndex = 0;
+        if (line == null) {
+            return false;
+        }
+        // Split on whitespace, as Scanner does
+        int i = 0;
+        while (i < line.length()) {
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                tokens.add(line.substring(start, i));
+            }
+        }
+        return true;
+    }
+
+    // The next token of the current line
+    private String next() {
+        if (tokenIndex == tokens.size()) {
+            throw new NoSuchElementException();
+        }
+        return tokens.get(tokenIndex++);
+    }
+}
@@ -0,0 +1,385 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread-safe B+Tree index of [ studentId,recordId ] pairs, for many threads
+ * searching and updating at once.
+ * <p>
+ * Nodes are latched with optimistic lock coupling. Every node carries a
+ * version that a writer bumps when it unlocks the node. Readers take no
+ * latches: they note a node's version, read it, and check the version is
+ * unchanged before trusting what they read or moving on to a child. If it
+ * changed, a writer got in the way and the operation restarts from the root.
+ * <p>
+ * Writers descend the same way and latch only the nodes they change: the leaf
+ * for a plain insert or delete, and a node plus its parent for a split. Full
+ * nodes are split on the way down, so a split never has to go further up than
+ * the parent. Latches are taken with a compare-and-set on the version and are
+ * never waited on, so writers cannot deadlock.
+ * <p>
+ * Nodes have the same layout as BTree: leaves hold up to 2t keys, and the
+ * separator is the lowest key of the right subtree. Deletes only remove the
+ * key from its leaf. Leaves are not merged, so a leaf may end up with fewer
+ * than t keys, or none.
+ */
+class ConcurrentBTree {
+
+    /** Version bit set while a writer holds the latch */
+    private static final long LOCKED = 2;
+    /** Added to the version by each unlock */
+    private static final long UNLOCK = 2;
+
+    private static final VarHandle VERSION;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(BTreeNode.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Pointer to the root node. Changed only while the old root is latched.
+     */
+    private volatile BTreeNode root;
+    /**
+     * Minimum degree of the B+Tree
+     **/
+    private final int t;
+    /**
+     * Number of key-value pairs in the tree.
+     */
+    private final LongAdder size = new LongAdder();
+    /**
+     * Number of times an operation started over because of a writer.
+     */
+    private final LongAdder restarts = new LongAdder();
+
+    ConcurrentBTree(int t) {
+        this.t = t;
+        this.root = new BTreeNode(t, true);
+    }
+
+    /**
+     * Looks up a studentId without taking any latches.
+     *
+     * @param studentId - The studentId to search for
+     * @return The recordId, or -1 if the studentId is not in the tree
+     */
+    long search(long studentId) {
+        long[] version = new long[1];
+        while (true) {
+            BTreeNode leaf = findLeaf(studentId, version);
+            if (leaf == null) {
+                restarted();
+                continue;
+            }
+            int i = leaf.lowerBound(studentId);
+            long recordId = i < leaf.n && leaf.keys[i] == studentId ? leaf.values[i] : -1;
+            if (!validate(leaf, version[0])) {
+                restarted();
+                continue;
+            }
+            return recordId;
+        }
+    }
+
+    /**
+     * Inserts a student's [ studentId,recordId ], or replaces the recordId if
+     * the studentId is already in the tree.
+     *
+     * @param studentId - The key
+     * @param recordId  - The value
+     * @return True if the studentId was new
+     */
+    boolean insert(long studentId, long recordId) {
+        restart:
+        while (true) {
+            BTreeNode node = root;
+            long version = readLock(node);
+            if (version < 0 || node != root) {
+                restarted();
+                continue;
+            }
+            BTreeNode parent = null;
+            long parentVersion = 0;
+
+            while (!node.leaf) {
+                if (node.n == 2 * t) {
+                    // Make room before going below a full node, so any split
+                    // under it has a free slot for its separator
+                    splitNode(parent, parentVersion, node, version);
+                    restarted();
+                    continue restart;
+                }
+                BTreeNode child = node.children[node.upperBound(studentId)];
+                if (!validate(node, version)) {
+                    restarted();
+                    continue restart;
+                }
+                long childVersion = readLock(child);
+                if (childVersion < 0 || !validate(node, version)) {
+                    restarted();
+                    continue restart;
+                }
+                parent = node;
+                parentVersion = version;
+                node = child;
+                version = childVersion;
+            }
+
+            if (node.n == 2 * t) {
+                splitNode(parent, parentVersion, node, version);
+                restarted();
+                continue;
+            }
+            if (!upgrade(node, version)) {
+                restarted();
+                continue;
+            }
+            int i = node.lowerBound(studentId);
+            if (i < node.n && node.keys[i] == studentId) {
+                node.values[i] = recordId;
+                unlock(node);
+                return false;
+            }
+            System.arraycopy(node.keys, i, node.keys, i + 1, node.n - i);
+            System.arraycopy(node.values, i, node.values, i + 1, node.n - i);
+            node.keys[i] = studentId;
+            node.values[i] = recordId;
+            node.n++;
+            unlock(node);
+            size.increment();
+            return true;
+        }
+    }
+
+    /**
+     * Removes a studentId from its leaf.
+     *
+     * @param studentId - The studentId to delete
+     * @return True if the studentId was in the tree
+     */
+    boolean delete(long studentId) {
+        long[] version = new long[1];
+        while (true) {
+            BTreeNode leaf = findLeaf(studentId, version);
+            if (leaf == null || !upgrade(leaf, version[0])) {
+                restarted();
+                continue;
+            }
+            int i = leaf.lowerBound(studentId);
+            boolean found = i < leaf.n && leaf.keys[i] == studentId;
+            if (found) {
+                System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.n - i - 1);
+                System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.n - i - 1);
+                leaf.n--;
+                size.decrement();
+            }
+            unlock(leaf);
+            return found;
+        }
+    }
+
+    /**
+     * Passes the recordId of every studentId in [lowId, highId] to the sink,
+     * in studentId order. Each leaf is copied and validated before any of it
+     * is passed on, so the sink never sees a half-updated leaf. If a leaf
+     * changes while being copied, the scan descends again from the last key
+     * it passed on.
+     *
+     * @param lowId  - Smallest studentId in the range
+     * @param highId - Largest studentId in the range
+     * @param sink   - Receives each recordId
+     */
+    void range(long lowId, long highId, LongConsumer sink) {
+        long[] keys = new long[2 * t];
+        long[] values = new long[2 * t];
+        long[] leafVersion = new long[1];
+        long from = lowId;
+        BTreeNode leaf = null;
+        while (from <= highId) {
+            long version;
+            if (leaf == null) {
+                leaf = findLeaf(from, leafVersion);
+                if (leaf == null) {
+                    restarted();
+                    continue;
+                }
+                version = leafVersion[0];
+            } else {
+                version = readLock(leaf);
+                if (version < 0) {
+                    restarted();
+                    leaf = null;
+                    continue;
+                }
+            }
+            int n = leaf.n;
+            System.arraycopy(leaf.keys, 0, keys, 0, n);
+            System.arraycopy(leaf.values, 0, values, 0, n);
+            BTreeNode next = leaf.next;
+            if (!validate(leaf, version)) {
+                restarted();
+                leaf = null;
+                continue;
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (keys[i] > highId) {
+                    return;
+                }
+                if (keys[i] >= from) {
+                    sink.accept(values[i]);
+                    if (keys[i] == Long.MAX_VALUE) {
+                        return;
+                    }
+                    from = keys[i] + 1;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            leaf = next;
+        }
+    }
+
+    /**
+     * @return The number of [ key,recordId ] entries in the tree
+     */
+    long size() {
+        return size.sum();
+    }
+
+    /**
+     * @return The number of times an operation restarted from the root
+     */
+    long restarts() {
+        return restarts.sum();
+    }
+
+    // Descends to the leaf for studentId without latching it, and stores the
+    // leaf's version in version[0]. Returns null if a writer got in the way.
+    private BTreeNode findLeaf(long studentId, long[] leafVersion) {
+        BTreeNode node = root;
+        long version = readLock(node);
+        if (version < 0 || node != root) {
+            return null;
+        }
+        while (!node.leaf) {
+            BTreeNode child = node.children[node.upperBound(studentId)];
+            if (!validate(node, version)) {
+                return null;
+            }
+            long childVersion = readLock(child);
+            if (childVersion < 0 || !validate(node, version)) {
+                return null;
+            }
+            node = child;
+            version = childVersion;
+        }
+        leafVersion[0] = version;
+        return node;
+    }
+
+    // Splits a full node in half, latching the node and its parent. Gives up
+    // quietly if either changed since their versions were read; the caller
+    // restarts either way.
+    private void splitNode(BTreeNode parent, long parentVersion, BTreeNode node, long version) {
+        if (parent != null && !upgrade(parent, parentVersion)) {
+            return;
+        }
+        if (!upgrade(node, version)) {
+            if (parent != null) {
+                unlock(parent);
+            }
+            return;
+        }
+        if (parent == null && node != root) {
+            // Another thread split the root first
+            unlock(node);
+            return;
+        }
+
+        BTreeNode right = new BTreeNode(t, node.leaf);
+        long separator;
+        if (node.leaf) {
+            // t keys stay, t keys move, and the right leaf's first key goes up
+            System.arraycopy(node.keys, t, right.keys, 0, t);
+            System.arraycopy(node.values, t, right.values, 0, t);
+            right.n = t;
+            separator = right.keys[0];
+
+            right.next = node.next;
+            right.prev = node;
+            if (node.next != null) {
+                node.next.prev = right;
+            }
+        } else {
+            // t - 1 keys stay, the middle key goes up and t keys move
+            System.arraycopy(node.keys, t, right.keys, 0, t);
+            System.arraycopy(node.children, t, right.children, 0, t + 1);
+            right.n = t;
+            separator = node.keys[t - 1];
+        }
+        if (node.leaf) {
+            node.next = right;
+            node.n = t;
+        } else {
+            node.n = t - 1;
+            // Drop references to the moved children
+            for (int i = t; i <= 2 * t; i++) {
+                node.children[i] = null;
+            }
+        }
+
+        if (parent == null) {
+            BTreeNode newRoot = new BTreeNode(t, false);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = node;
+            newRoot.children[1] = right;
+            newRoot.n = 1;
+            root = newRoot;
+        } else {
+            int i = parent.upperBound(separator);
+            System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.n - i);
+            System.arraycopy(parent.children, i + 1, parent.children, i + 2, parent.n - i);
+            parent.keys[i] = separator;
+            parent.children[i + 1] = right;
+            parent.n++;
+            unlock(parent);
+        }
+        unlock(node);
+    }
+
+    // Returns the node's version, or -1 if a writer holds it
+    private static long readLock(BTreeNode node) {
+        long version = (long) VERSION.getAcquire(node);
+        return (version & LOCKED) != 0 ? -1 : version;
+    }
+
+    // True if the node has not been latched since version was read
+    private static boolean validate(BTreeNode node, long version) {
+        VarHandle.acquireFence();
+        return (long) VERSION.getVolatile(node) == version;
+    }
+
+    // Latches the node if it has not changed since version was read
+    private static boolean upgrade(BTreeNode node, long version) {
+        return version >= 0 && (version & LOCKED) == 0
+            && VERSION.compareAndSet(node, version, version + LOCKED);
+    }
+
+    // Releases the latch and moves the node on to a new version
+    private static void unlock(BTreeNode node) {
+        VERSION.setRelease(node, (long) VERSION.getOpaque(node) + UNLOCK);
+    }
+
+    private void restarted() {
+        restarts.increment();
+        Thread.onSpinWait();
+    }
+}
@@ -0,0 +1,487 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongConsumer;
+
+/**
+ * B+Tree index of [ studentId,recordId ] pairs whose readers see snapshots:
+ * a scan runs against the tree as it was when it started, however long it
+ * takes and whatever writers do meanwhile.
+ * <p>
+ * Published nodes are never changed. A writer copies the nodes on the path
+ * from the root to the leaf it changes, plus any sibling a split, merge or
+ * redistribution touches, and publishes the new root as the next version
+ * with one volatile write. Every node records the version that created it,
+ * so a node already copied by the current write is changed in place rather
+ * than copied again. Writers take turns on the tree's monitor; readers take
+ * no locks at all.
+ * <p>
+ * A Snapshot pins the root of one version. Nodes of older versions that no
+ * open snapshot can reach are garbage, and the collector reclaims them; the
+ * tree tracks which versions are pinned so a snapshot left open, which keeps
+ * its whole version alive, can be found. Leaves are not chained, since a
+ * next pointer would have to be copied along with every neighbour, so scans
+ * walk down from the pinned root instead.
+ * <p>
+ * Nodes have the same layout as BTree: leaves hold t to 2t keys, internal
+ * nodes t - 1 to 2t, and each separator is at most the lowest key of the
+ * subtree to its right.
+ */
+class CopyOnWriteBTree {
+
+    /**
+     * The published version. Replaced, never changed, by each write.
+     */
+    private volatile Version current;
+    /**
+     * Minimum degree of the B+Tree
+     **/
+    private final int t;
+    /**
+     * version -> number of open snapshots of it.
+     */
+    private final ConcurrentSkipListMap<Long, Integer> pinned = new ConcurrentSkipListMap<>();
+
+    /**
+     * Version being built by the write in progress. Only used by writers,
+     * under the monitor.
+     */
+    private long writeVersion;
+    /**
+     * Right half and separator of a node split by the last call to
+     * insert(BTreeNode, ...), or null if it didn't split.
+     */
+    private BTreeNode splitRight;
+    private long splitKey;
+
+    CopyOnWriteBTree(int t) {
+        if (t < 2) {
+            throw new IllegalArgumentException("Minimum degree must be at least 2: " + t);
+        }
+        this.t = t;
+        this.current = new Version(new BTreeNode(t, true), 0, 0);
+    }
+
+    /**
+     * Looks up a studentId in the latest version, without taking any locks.
+     *
+     * @param studentId - The studentId to search for
+     * @return The recordId, or -1 if the studentId is not in the tree
+     */
+    long search(long studentId) {
+        return search(current.root, studentId);
+    }
+
+    /**
+     * Inserts a student's [ studentId,recordId ], or replaces the recordId if
+     * the studentId is already in the tree, and publishes the result as a new
+     * version.
+     *
+     * @param studentId - The key
+     * @param recordId  - The value
+     * @return True if the studentId was new
+     */
+    synchronized boolean insert(long studentId, long recordId) {
+        Version base = current;
+        writeVersion = base.version + 1;
+        long before = base.size;
+        long[] size = {before};
+        BTreeNode root = insert(base.root, studentId, recordId, size);
+        if (splitRight != null) {
+            BTreeNode newRoot = node(false);
+            newRoot.keys[0] = splitKey;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitRight;
+            newRoot.n = 1;
+            root = newRoot;
+            splitRight = null;
+        }
+        current = new Version(root, size[0], writeVersion);
+        return size[0] > before;
+    }
+
+    /**
+     * Deletes a studentId and publishes the result as a new version. Nothing
+     * is copied if the studentId is not in the tree.
+     *
+     * @param studentId - The studentId to delete
+     * @return True if the studentId was in the tree
+     */
+    synchronized boolean delete(long studentId) {
+        Version base = current;
+        if (search(base.root, studentId) == -1) {
+            return false;
+        }
+        writeVersion = base.version + 1;
+        BTreeNode root = delete(base.root, studentId);
+        // A merge may have left the root with a single child
+        if (!root.leaf && root.n == 0) {
+            root = root.children[0];
+        }
+        current = new Version(root, base.size - 1, writeVersion);
+        return true;
+    }
+
+    /**
+     * Pins the latest version. The snapshot must be closed, or that version's
+     * nodes can't be reclaimed.
+     *
+     * @return The snapshot
+     */
+    Snapshot snapshot() {
+        Version version = current;
+        pinned.merge(version.version, 1, Integer::sum);
+        return new Snapshot(version);
+    }
+
+    /**
+     * @return The number of [ key,recordId ] entries in the latest version
+     */
+    long size() {
+        return current.size;
+    }
+
+    /**
+     * @return The latest version, counting writes from 0
+     */
+    long version() {
+        return current.version;
+    }
+
+    /**
+     * @return The oldest version an open snapshot pins, or the latest version
+     *         if none are open
+     */
+    long oldestPinnedVersion() {
+        Long oldest = pinned.isEmpty() ? null : pinned.firstKey();
+        return oldest != null ? oldest : current.version;
+    }
+
+    /**
+     * @return The number of snapshots not yet closed
+     */
+    int openSnapshots() {
+        int open = 0;
+        for (int count : pinned.values()) {
+            open += count;
+        }
+        return open;
+    }
+
+    /**
+     * A consistent, read-only view of the tree as of one version. It may be
+     * used by any thread, or several at once, until it is closed.
+     */
+    final class Snapshot implements AutoCloseable {
+
+        private final Version pinnedVersion;
+        private volatile boolean closed;
+
+        private Snapshot(Version pinnedVersion) {
+            this.pinnedVersion = pinnedVersion;
+        }
+
+        /**
+         * @return The version this snapshot sees
+         */
+        long version() {
+            return pinnedVersion.version;
+        }
+
+        /**
+         * @return The number of entries in this version
+         */
+        long size() {
+            return pinnedVersion.size;
+        }
+
+        /**
+         * @param studentId - The studentId to search for
+         * @return Its recordId in this version, or -1 if it wasn't there
+         */
+        long search(long studentId) {
+            return CopyOnWriteBTree.search(root(), studentId);
+        }
+
+        /**
+         * Passes every recordId in this version to the sink, in studentId
+         * order.
+         *
+         * @param sink - Receives each recordId
+         */
+        void scan(LongConsumer sink) {
+            range(Long.MIN_VALUE, Long.MAX_VALUE, (studentId, recordId) -> sink.accept(recordId));
+        }
+
+        /**
+         * Passes every entry in this version with a studentId between lowId
+         * and highId, inclusive, to the consumer, in studentId order.
+         *
+         * @param lowId    - The smallest studentId to pass on
+         * @param highId   - The largest studentId to pass on
+         * @param consumer - Receives each studentId and recordId
+         */
+        void range(long lowId, long highId, StudentCsv.KeyConsumer consumer) {
+            if (lowId <= highId) {
+                CopyOnWriteBTree.range(root(), lowId, highId, consumer);
+            }
+        }
+
+        /**
+         * Unpins the version. Closing twice does nothing.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pinned.computeIfPresent(pinnedVersion.version, (version, count) -> count == 1 ? null : count - 1);
+            }
+        }
+
+        private BTreeNode root() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot of version " + pinnedVersion.version + " is closed");
+            }
+            return pinnedVersion.root;
+        }
+    }
+
+    // A published root with its size
+    private static final class Version {
+        final BTreeNode root;
+        final long size;
+        final long version;
+
+        Version(BTreeNode root, long size, long version) {
+            this.root = root;
+            this.size = size;
+            this.version = version;
+        }
+    }
+
+    private static long search(BTreeNode node, long studentId) {
+        while (!node.leaf) {
+            node = node.children[node.upperBound(studentId)];
+        }
+        int i = node.lowerBound(studentId);
+        return i < node.n && node.keys[i] == studentId ? node.values[i] : -1;
+    }
+
+    private static void range(BTreeNode node, long lowId, long highId, StudentCsv.KeyConsumer consumer) {
+        if (node.leaf) {
+            for (int i = node.lowerBound(lowId); i < node.n && node.keys[i] <= highId; i++) {
+                consumer.accept(node.keys[i], node.values[i]);
+            }
+            return;
+        }
+        int last = node.upperBound(highId);
+        for (int i = node.upperBound(lowId); i <= last; i++) {
+            range(node.children[i], lowId, highId, consumer);
+        }
+    }
+
+    // Inserts below node and returns the node's copy. A split leaves its
+    // right half in splitRight and the separator in splitKey.
+    private BTreeNode insert(BTreeNode node, long studentId, long recordId, long[] size) {
+        if (node.leaf) {
+            int i = node.lowerBound(studentId);
+            BTreeNode leaf = own(node);
+            if (i < leaf.n && leaf.keys[i] == studentId) {
+                leaf.values[i] = recordId;
+                return leaf;
+            }
+            size[0]++;
+            if (leaf.n < 2 * t) {
+                System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.n - i);
+                System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.n - i);
+                leaf.keys[i] = studentId;
+                leaf.values[i] = recordId;
+                leaf.n++;
+                return leaf;
+            }
+            // Split the 2t + 1 entries t + 1 to the left and t to the right
+            long[] keys = new long[2 * t + 1];
+            long[] values = new long[2 * t + 1];
+            System.arraycopy(leaf.keys, 0, keys, 0, i);
+            System.arraycopy(leaf.values, 0, values, 0, i);
+            keys[i] = studentId;
+            values[i] = recordId;
+            System.arraycopy(leaf.keys, i, keys, i + 1, leaf.n - i);
+            System.arraycopy(leaf.values, i, values, i + 1, leaf.n - i);
+            BTreeNode right = node(true);
+            System.arraycopy(keys, 0, leaf.keys, 0, t + 1);
+            System.arraycopy(values, 0, leaf.values, 0, t + 1);
+            System.arraycopy(keys, t + 1, right.keys, 0, t);
+            System.arraycopy(values, t + 1, right.values, 0, t);
+            leaf.n = t + 1;
+            right.n = t;
+            splitRight = right;
+            splitKey = right.keys[0];
+            return leaf;
+        }
+
+        int c = node.upperBound(studentId);
+        BTreeNode child = insert(node.children[c], studentId, recordId, size);
+        BTreeNode parent = own(node);
+        parent.children[c] = child;
+        if (splitRight == null) {
+            return parent;
+        }
+        BTreeNode newChild = splitRight;
+        long separator = splitKey;
+        splitRight = null;
+        if (parent.n < 2 * t) {
+            System.arraycopy(parent.keys, c, parent.keys, c + 1, parent.n - c);
+            System.arraycopy(parent.children, c + 1, parent.children, c + 2, parent.n - c);
+            parent.keys[c] = separator;
+            parent.children[c + 1] = newChild;
+            parent.n++;
+            return parent;
+        }
+        // 2t + 1 keys: t stay, the middle one moves up and t go right
+        long[] keys = new long[2 * t + 1];
+        BTreeNode[] children = new BTreeNode[2 * t + 2];
+        System.arraycopy(parent.keys, 0, keys, 0, c);
+        System.arraycopy(parent.children, 0, children, 0, c + 1);
+        keys[c] = separator;
+        children[c + 1] = newChild;
+        System.arraycopy(parent.keys, c, keys, c + 1, parent.n - c);
+        System.arraycopy(parent.children, c + 1, children, c + 2, parent.n - c);
+        BTreeNode right = node(false);
+        System.arraycopy(keys, 0, parent.keys, 0, t);
+        System.arraycopy(children, 0, parent.children, 0, t + 1);
+        Arrays.fill(parent.children, t + 1, 2 * t + 1, null);
+        System.arraycopy(keys, t + 1, right.keys, 0, t);
+        System.arraycopy(children, t + 1, right.children, 0, t + 1);
+        parent.n = t;
+        right.n = t;
+        splitRight = right;
+        splitKey = keys[t];
+        return parent;
+    }
+
+    // Deletes a studentId known to be below node and returns the node's copy.
+    // A child left with too few keys is fixed by its parent.
+    private BTreeNode delete(BTreeNode node, long studentId) {
+        if (node.leaf) {
+            BTreeNode leaf = own(node);
+            int i = leaf.lowerBound(studentId);
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.n - i - 1);
+            System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.n - i - 1);
+            leaf.n--;
+            return leaf;
+        }
+
+        int c = node.upperBound(studentId);
+        BTreeNode child = delete(node.children[c], studentId);
+        BTreeNode parent = own(node);
+        parent.children[c] = child;
+        if (child.n >= minKeys(child)) {
+            return parent;
+        }
+        // Borrow from a sibling that can spare a key, or else merge with one
+        if (c > 0 && parent.children[c - 1].n > minKeys(child)) {
+            rotateRight(parent, c);
+        } else if (c < parent.n && parent.children[c + 1].n > minKeys(child)) {
+            rotateLeft(parent, c);
+        } else if (c > 0) {
+            merge(parent, c - 1);
+        } else {
+            merge(parent, c);
+        }
+        return parent;
+    }
+
+    // Moves the last entry of child index - 1 to the front of child index
+    private void rotateRight(BTreeNode parent, int index) {
+        BTreeNode left = own(parent.children[index - 1]);
+        BTreeNode node = parent.children[index];
+        parent.children[index - 1] = left;
+        System.arraycopy(node.keys, 0, node.keys, 1, node.n);
+        if (node.leaf) {
+            System.arraycopy(node.values, 0, node.values, 1, node.n);
+            node.keys[0] = left.keys[left.n - 1];
+            node.values[0] = left.values[left.n - 1];
+            parent.keys[index - 1] = node.keys[0];
+        } else {
+            System.arraycopy(node.children, 0, node.children, 1, node.n + 1);
+            node.keys[0] = parent.keys[index - 1];
+            node.children[0] = left.children[left.n];
+            left.children[left.n] = null;
+            parent.keys[index - 1] = left.keys[left.n - 1];
+        }
+        node.n++;
+        left.n--;
+    }
+
+    // Moves the first entry of child index + 1 to the end of child index
+    private void rotateLeft(BTreeNode parent, int index) {
+        BTreeNode node = parent.children[index];
+        BTreeNode right = own(parent.children[index + 1]);
+        parent.children[index + 1] = right;
+        if (node.leaf) {
+            node.keys[node.n] = right.keys[0];
+            node.values[node.n] = right.values[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            System.arraycopy(right.values, 1, right.values, 0, right.n - 1);
+            parent.keys[index] = right.keys[0];
+        } else {
+            node.keys[node.n] = parent.keys[index];
+            node.children[node.n + 1] = right.children[0];
+            parent.keys[index] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.n);
+            right.children[right.n] = null;
+        }
+        node.n++;
+        right.n--;
+    }
+
+    // Merges child index + 1 into child index and drops their separator
+    private void merge(BTreeNode parent, int index) {
+        BTreeNode left = own(parent.children[index]);
+        BTreeNode right = parent.children[index + 1];
+        if (left.leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+            System.arraycopy(right.values, 0, left.values, left.n, right.n);
+            left.n += right.n;
+        } else {
+            left.keys[left.n] = parent.keys[index];
+            System.arraycopy(right.keys, 0, left.keys, left.n + 1, right.n);
+            System.arraycopy(right.children, 0, left.children, left.n + 1, right.n + 1);
+            left.n += right.n + 1;
+        }
+        parent.children[index] = left;
+        System.arraycopy(parent.keys, index + 1, parent.keys, index, parent.n - index - 1);
+        System.arraycopy(parent.children, index + 2, parent.children, index + 1, parent.n - index - 1);
+        parent.children[parent.n] = null;
+        parent.n--;
+    }
+
+    private int minKeys(BTreeNode node) {
+        return node.leaf ? t : t - 1;
+    }
+
+    // The node itself if the current write created it, or else a copy that
+    // the write can change
+    private BTreeNode own(BTreeNode node) {
+        if (node.version == writeVersion) {
+            return node;
+        }
+        BTreeNode copy = node(node.leaf);
+        System.arraycopy(node.keys, 0, copy.keys, 0, node.n);
+        if (node.leaf) {
+            System.arraycopy(node.values, 0, copy.values, 0, node.n);
+        } else {
+            System.arraycopy(node.children, 0, copy.children, 0, node.n + 1);
+        }
+        copy.n = node.n;
+        return copy;
+    }
+
+    // A new node owned by the current write
+    private BTreeNode node(boolean leaf) {
+        BTreeNode node = new BTreeNode(t, leaf);
+        node.version = writeVersion;
+        return node;
+    }
+}
@@ -0,0 +1,297 @@
+import java.util.Arrays;
+
+/**
+ * Chooses which buffer pool frame to evict when a page has to be read into
+ * a full pool.
+ * <p>
+ * Frames are numbered 0 to frames - 1. The pool reports every access to a
+ * frame, and asks for a victim among frames with no pins.
+ */
+interface EvictionPolicy {
+
+    /**
+     * Called whenever a page in the frame is pinned, including right after it
+     * is loaded.
+     *
+     * @param frame - The frame accessed
+     */
+    void accessed(int frame);
+
+    /**
+     * Picks a frame to evict.
+     *
+     * @param pinCounts - Current pin count of every frame
+     * @return A frame with a pin count of 0, or -1 if every frame is pinned
+     */
+    int victim(int[] pinCounts);
+
+    /**
+     * Called after the page in the frame is evicted, so any history kept for
+     * it can be dropped.
+     *
+     * @param frame - The frame emptied
+     */
+    void evicted(int frame);
+
+    /**
+     * Least recently used. Frames are kept in a doubly-linked list in access
+     * order, so accesses are O(1) and the victim is the first unpinned frame
+     * from the cold end.
+     */
+    final class Lru implements EvictionPolicy {
+
+        private final int[] prev;
+        private final int[] next;
+        /** Most recently used frame */
+        private int head = -1;
+        /** Least recently used frame */
+        private int tail = -1;
+
+        Lru(int frames) {
+            prev = new int[frames];
+            next = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                prev[i] = -2; // Not in the list
+            }
+        }
+
+        @Override
+        public void accessed(int frame) {
+            if (head == frame) {
+                return;
+            }
+            unlink(frame);
+            prev[frame] = -1;
+            next[frame] = head;
+            if (head != -1) {
+                prev[head] = frame;
+            }
+            head = frame;
+            if (tail == -1) {
+                tail = frame;
+            }
+        }
+
+        @Override
+        public int victim(int[] pinCounts) {
+            for (int frame = tail; frame != -1; frame = prev[frame]) {
+                if (pinCounts[frame] == 0) {
+                    return frame;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void evicted(int frame) {
+            unlink(frame);
+        }
+
+        private void unlink(int frame) {
+            if (prev[frame] == -2) {
+                return;
+            }
+            if (prev[frame] != -1) {
+                next[prev[frame]] = next[frame];
+            } else {
+                head = next[frame];
+            }
+            if (next[frame] != -1) {
+                prev[next[frame]] = prev[frame];
+            } else {
+                tail = prev[frame];
+            }
+            prev[frame] = -2;
+        }
+    }
+
+    /**
+     * CLOCK second-chance approximation of LRU. Each access sets a reference
+     * bit, and the hand clears bits as it sweeps until it finds an unpinned
+     * frame whose bit is already clear.
+     */
+    final class Clock implements EvictionPolicy {
+
+        private final boolean[] referenced;
+        private int hand;
+
+        Clock(int frames) {
+            referenced = new boolean[frames];
+        }
+
+        @Override
+        public void accessed(int frame) {
+            referenced[frame] = true;
+        }
+
+        @Override
+        public int victim(int[] pinCounts) {
+            // Two sweeps clear every reference bit, so a third finds nothing new
+            for (int step = 0; step < 2 * referenced.length + 1; step++) {
+                int frame = hand;
+                hand = (hand + 1) % referenced.length;
+                if (pinCounts[frame] != 0) {
+                    continue;
+                }
+                if (!referenced[frame]) {
+                    return frame;
+                }
+                referenced[frame] = false;
+            }
+            return -1;
+        }
+
+        @Override
+        public void evicted(int frame) {
+            referenced[frame] = false;
+        }
+    }
+
+    /**
+     * LRU-K. The victim is the frame whose K-th most recent access is oldest,
+     * and frames with fewer than K accesses go first, oldest access first.
+     * This keeps pages touched once by a scan from pushing out pages that are
+     * used repeatedly. History is only kept for resident pages. Frames are
+     * kept in a binary heap ordered by eviction priority, so accesses and
+     * victim selection are O(log frames).
+     */
+    final class LruK implements EvictionPolicy {
+
+        private final int k;
+        /** Last k access times of each frame, most recent first */
+        private final long[][] history;
+        /** Number of accesses recorded for each frame, up to k */
+        private final int[] accesses;
+        private long clock;
+
+        /** Frames ordered by eviction priority, first to go at index 0 */
+        private final int[] heap;
+        /** Position of each frame in the heap, or -1 if it is not in it */
+        private final int[] position;
+        private int heapSize;
+
+        LruK(int frames, int k) {
+            this.k = k;
+            this.history = new long[frames][k];
+            this.accesses = new int[frames];
+            this.heap = new int[frames];
+            this.position = new int[frames];
+            for (int i = 0; i < frames; i++) {
+                position[i] = -1;
+            }
+        }
+
+        @Override
+        public void accessed(int frame) {
+            long[] times = history[frame];
+            System.arraycopy(times, 0, times, 1, k - 1);
+            times[0] = ++clock;
+            if (accesses[frame] < k) {
+                accesses[frame]++;
+            }
+
+            // An access only ever moves a frame later in eviction order
+            if (position[frame] == -1) {
+                position[frame] = heapSize;
+                heap[heapSize++] = frame;
+                siftUp(position[frame]);
+            } else {
+                siftDown(position[frame]);
+            }
+        }
+
+        @Override
+        public int victim(int[] pinCounts) {
+            // Walk the heap in priority order, skipping pinned frames, by
+            // keeping a frontier of candidate heap positions
+            int[] frontier = new int[Math.min(heapSize, 64)];
+            int count = 0;
+            if (heapSize > 0) {
+                frontier[count++] = 0;
+            }
+            while (count > 0) {
+                int best = 0;
+                for (int i = 1; i < count; i++) {
+                    if (before(heap[frontier[i]], heap[frontier[best]])) {
+                        best = i;
+                    }
+                }
+                int pos = frontier[best];
+                int frame = heap[pos];
+                if (pinCounts[frame] == 0) {
+                    return frame;
+                }
+                frontier[best] = frontier[--count];
+                for (int child = 2 * pos + 1; child <= 2 * pos + 2 && child < heapSize; child++) {
+                    if (count == frontier.length) {
+                        frontier = Arrays.copyOf(frontier, count * 2);
+                    }
+                    frontier[count++] = child;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void evicted(int frame) {
+            int pos = position[frame];
+            if (pos != -1) {
+                int last = heap[--heapSize];
+                position[frame] = -1;
+                if (pos < heapSize) {
+                    heap[pos] = last;
+                    position[last] = pos;
+                    siftUp(pos);
+                    siftDown(position[last]);
+                }
+            }
+            accesses[frame] = 0;
+        }
+
+        // True if frame a should be evicted before frame b
+        private boolean before(int a, int b) {
+            boolean shortA = accesses[a] < k;
+            boolean shortB = accesses[b] < k;
+            if (shortA != shortB) {
+                return shortA;
+            }
+            return history[a][accesses[a] - 1] < history[b][accesses[b] - 1];
+        }
+
+        private void siftUp(int pos) {
+            int frame = heap[pos];
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!before(frame, heap[parent])) {
+                    break;
+                }
+                heap[pos] = heap[parent];
+                position[heap[pos]] = pos;
+                pos = parent;
+            }
+            heap[pos] = frame;
+            position[frame] = pos;
+        }
+
+        private void siftDown(int pos) {
+            int frame = heap[pos];
+            while (true) {
+                int child = 2 * pos + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], frame)) {
+                    break;
+                }
+                heap[pos] = heap[child];
+                position[heap[pos]] = pos;
+                pos = child;
+            }
+            heap[pos] = frame;
+            position[frame] = pos;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Represents a board game in the catalog, with the fields the game page and
+ * the search sidebar show.
+ */
+
+public class Game {
+
+    long gameId;
+    String title;
+    int year;
+    int minPlayers;
+    int maxPlayers;
+    /** Minutes */
+    int minPlaytime;
+    int maxPlaytime;
+    /** Complexity from 1 (light) to 5 (heavy), or 0 if unrated */
+    double weight;
+    /** Designers, separated by commas */
+    String creators;
+
+    public Game(long gameId, String title, int year, int minPlayers, int maxPlayers,
+            int minPlaytime, int maxPlaytime, double weight, String creators) {
+        this.gameId = gameId;
+        this.title = title;
+        this.year = year;
+        this.minPlayers = minPlayers;
+        this.maxPlayers = maxPlayers;
+        this.minPlaytime = minPlaytime;
+        this.maxPlaytime = maxPlaytime;
+        this.weight = weight;
+        this.creators = creators;
+    }
+}
@@ -0,0 +1,494 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The board game catalog behind the search sidebar: a primary B+Tree on
+ * gameId and secondary B+Trees on players, playtime, weight and year.
+ * <p>
+ * Games are rows numbered in the order they were added, and every tree maps
+ * its key to the row. The players tree is keyed on (minPlayers, maxPlayers,
+ * gameId) and the playtime tree on (minPlaytime, maxPlaytime, gameId), so
+ * both ends of a range are in the key and a predicate on them is answered
+ * from the leaves alone. Weight, in hundredths, and year are keyed like the
+ * ages in SecondaryIndexes.
+ * <p>
+ * A query estimates how many games each of its predicates matches from a
+ * sample of the rows, and scans the trees from the most selective predicate
+ * to the least. Each scan sets the matching rows in a bitmap, which is ANDed
+ * with the rows left so far. Once checking the games left would cost less
+ * than scanning the next tree, the remaining predicates are checked on the
+ * games instead. Title and creator terms are substring matches, with no
+ * index, and are always checked on the games the predicates leave.
+ * <p>
+ * Not thread-safe.
+ */
+class GameCatalog {
+
+    /** Largest gameId that fits in the low half of a key */
+    static final long MAX_GAME_ID = 0xFFFF_FFFFL;
+    /** Largest player count that fits in a players key */
+    static final int MAX_PLAYERS = 0xFF;
+    /** Longest playtime, in minutes, that fits in a playtime key */
+    static final int MAX_PLAYTIME = 0x7FFF;
+    static final double MAX_WEIGHT = 5;
+
+    /** Rows sampled to estimate how many games a predicate matches */
+    private static final int SAMPLE_SIZE = 256;
+    /** Tree entries scanned in the time it takes to check one game */
+    private static final int ENTRIES_PER_CHECK = 8;
+
+    private final BTree games;
+    private final BTree players;
+    private final BTree playtimes;
+    private final BTree weights;
+    private final BTree years;
+    /** Game of every row, or null once it is removed */
+    private final List<Game> rows = new ArrayList<>();
+
+    /**
+     * @param degree - Minimum degree of each B+Tree
+     */
+    GameCatalog(int degree) {
+        this.games = new BTree(degree);
+        this.players = new BTree(degree);
+        this.playtimes = new BTree(degree);
+        this.weights = new BTree(degree);
+        this.years = new BTree(degree);
+    }
+
+    /**
+     * Builds a catalog of the given games. Each tree is sorted and bulk
+     * loaded rather than filled one insert at a time.
+     *
+     * @param degree - Minimum degree of each B+Tree
+     * @param list   - The games
+     * @param pool   - Pool to sort and load on
+     * @return The catalog
+     * @throws IllegalArgumentException if a game can't be indexed or a gameId
+     *                                  appears twice
+     */
+    static GameCatalog build(int degree, List<Game> list, ForkJoinPool pool) {
+        GameCatalog catalog = new GameCatalog(degree);
+        int count = list.size();
+        long[] gameKeys = new long[count];
+        long[] playerKeys = new long[count];
+        long[] playtimeKeys = new long[count];
+        long[] weightKeys = new long[count];
+        long[] yearKeys = new long[count];
+        for (int i = 0; i < count; i++) {
+            Game g = list.get(i);
+            check(g);
+            catalog.rows.add(g);
+            gameKeys[i] = g.gameId;
+            playerKeys[i] = playersKey(g.minPlayers, g.maxPlayers, g.gameId);
+            playtimeKeys[i] = playtimeKey(g.minPlaytime, g.maxPlaytime, g.gameId);
+            weightKeys[i] = key(hundredths(g.weight), g.gameId);
+            yearKeys[i] = key(g.year, g.gameId);
+        }
+        load(catalog.games, gameKeys, pool);
+        load(catalog.players, playerKeys, pool);
+        load(catalog.playtimes, playtimeKeys, pool);
+        load(catalog.weights, weightKeys, pool);
+        load(catalog.years, yearKeys, pool);
+        return catalog;
+    }
+
+    /**
+     * Checks that a game can be indexed.
+     *
+     * @param game - The game to check
+     * @throws IllegalArgumentException if a field is out of range
+     */
+    static void check(Game game) {
+        if (game.gameId < 0 || game.gameId > MAX_GAME_ID) {
+            throw new IllegalArgumentException("Game ID can't be indexed: " + game.gameId);
+        }
+        if (game.minPlayers < 0 || game.maxPlayers > MAX_PLAYERS || game.minPlayers > game.maxPlayers) {
+            throw new IllegalArgumentException("Players can't be indexed: " + game.minPlayers + "-" + game.maxPlayers);
+        }
+        if (game.minPlaytime < 0 || game.maxPlaytime > MAX_PLAYTIME || game.minPlaytime > game.maxPlaytime) {
+            throw new IllegalArgumentException("Playtime can't be indexed: " + game.minPlaytime + "-" + game.maxPlaytime);
+        }
+        if (!(game.weight >= 0 && game.weight <= MAX_WEIGHT)) {
+            throw new IllegalArgumentException("Weight can't be indexed: " + game.weight);
+        }
+    }
+
+    /**
+     * Adds a game to the catalog.
+     *
+     * @param game - The game
+     * @throws IllegalArgumentException if the game can't be indexed or its
+     *                                  gameId is already in the catalog
+     */
+    void add(Game game) {
+        check(game);
+        if (games.search(game.gameId) != -1) {
+            throw new IllegalArgumentException("Game ID already in the catalog: " + game.gameId);
+        }
+        long row = rows.size();
+        rows.add(game);
+        games.insert(game.gameId, row);
+        players.insert(playersKey(game.minPlayers, game.maxPlayers, game.gameId), row);
+        playtimes.insert(playtimeKey(game.minPlaytime, game.maxPlaytime, game.gameId), row);
+        weights.insert(key(hundredths(game.weight), game.gameId), row);
+        years.insert(key(game.year, game.gameId), row);
+    }
+
+    /**
+     * Removes a game from the catalog. Its row is not reused.
+     *
+     * @param gameId - The gameId
+     * @return True if the game was in the catalog
+     */
+    boolean remove(long gameId) {
+        long row = games.search(gameId);
+        if (row == -1) {
+            return false;
+        }
+        Game game = rows.get((int) row);
+        rows.set((int) row, null);
+        games.remove(gameId);
+        players.remove(playersKey(game.minPlayers, game.maxPlayers, gameId));
+        playtimes.remove(playtimeKey(game.minPlaytime, game.maxPlaytime, gameId));
+        weights.remove(key(hundredths(game.weight), gameId));
+        years.remove(key(game.year, gameId));
+        return true;
+    }
+
+    /**
+     * @param gameId - The gameId
+     * @return The game, or null if it is not in the catalog
+     */
+    Game get(long gameId) {
+        long row = games.search(gameId);
+        return row == -1 ? null : rows.get((int) row);
+    }
+
+    /**
+     * @return The number of games in the catalog
+     */
+    long size() {
+        return games.size();
+    }
+
+    /**
+     * Finds the games matching every predicate of a query, in the order they
+     * were added.
+     *
+     * @param query - The query
+     * @param limit - Most games to return
+     * @return The matching games
+     */
+    List<Game> search(Query query, int limit) {
+        List<Game> result = new ArrayList<>();
+        long[] candidates = null;
+        long left = rows.size();
+        for (long estimate : estimates(query)) {
+            // Estimated matches in the high half, the predicate in the low
+            if ((estimate >>> 32) > ENTRIES_PER_CHECK * left) {
+                break;
+            }
+            long[] matches = scan(query, (int) estimate);
+            left = 0;
+            for (int i = 0; i < matches.length; i++) {
+                long word = candidates == null ? matches[i] : candidates[i] & matches[i];
+                matches[i] = word;
+                left += Long.bitCount(word);
+            }
+            candidates = matches;
+        }
+
+        if (candidates == null) {
+            // Nothing indexed to narrow it down, so check every game
+            for (int row = 0; row < rows.size() && result.size() < limit; row++) {
+                Game g = rows.get(row);
+                if (g != null && query.matches(g)) {
+                    result.add(g);
+                }
+            }
+            return result;
+        }
+        for (int i = 0; i < candidates.length && result.size() < limit; i++) {
+            for (long word = candidates[i]; word != 0 && result.size() < limit; word &= word - 1) {
+                Game g = rows.get(64 * i + Long.numberOfTrailingZeros(word));
+                if (query.matches(g)) {
+                    result.add(g);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The filters of one search. Every predicate set must match; a query
+     * with none matches every game.
+     */
+    static final class Query {
+
+        /** Predicates that have a tree */
+        private static final int INDEXED = 4;
+        private static final int PLAYERS = 0;
+        private static final int PLAYTIME = 1;
+        private static final int WEIGHT = 2;
+        private static final int YEAR = 3;
+
+        private boolean hasPlayers;
+        private int playerCount;
+        private boolean hasPlaytime;
+        private int shortestPlaytime;
+        private int longestPlaytime;
+        private boolean hasWeight;
+        private int lightest;
+        private int heaviest;
+        private boolean hasYear;
+        private int earliest;
+        private int latest;
+        private String titleTerm;
+        private String creatorTerm;
+
+        /**
+         * @param count - Number of players, which must be within the game's
+         *              range
+         * @return This query
+         */
+        Query players(int count) {
+            hasPlayers = true;
+            playerCount = count;
+            return this;
+        }
+
+        /**
+         * @param shortest - Fewest minutes a game may take
+         * @param longest  - Most minutes a game may take
+         * @return This query, matching games whose whole playtime range is
+         *         within [shortest, longest]
+         */
+        Query playtime(int shortest, int longest) {
+            hasPlaytime = true;
+            shortestPlaytime = shortest;
+            longestPlaytime = longest;
+            return this;
+        }
+
+        /**
+         * @param lightest - Lowest weight, inclusive
+         * @param heaviest - Highest weight, inclusive
+         * @return This query
+         */
+        Query weight(double lightest, double heaviest) {
+            hasWeight = true;
+            // Rounded to thousandths first, so 2.31 * 100 can't come out as
+            // 231.00000000000003 and round up past 2.31
+            this.lightest = (int) Math.ceil(Math.round(lightest * 1000) / 10.0);
+            this.heaviest = (int) Math.floor(Math.round(heaviest * 1000) / 10.0);
+            return this;
+        }
+
+        /**
+         * @param earliest - First year published, inclusive
+         * @param latest   - Last year published, inclusive
+         * @return This query
+         */
+        Query year(int earliest, int latest) {
+            hasYear = true;
+            this.earliest = earliest;
+            this.latest = latest;
+            return this;
+        }
+
+        /**
+         * @param term - Text the title must contain, ignoring case
+         * @return This query
+         */
+        Query title(String term) {
+            titleTerm = term;
+            return this;
+        }
+
+        /**
+         * @param term - Text the creators must contain, ignoring case
+         * @return This query
+         */
+        Query creator(String term) {
+            creatorTerm = term;
+            return this;
+        }
+
+        /**
+         * @param g - A game
+         * @return True if the game matches every predicate
+         */
+        boolean matches(Game g) {
+            for (int predicate = 0; predicate < INDEXED; predicate++) {
+                if (has(predicate) && !matches(g, predicate)) {
+                    return false;
+                }
+            }
+            return (titleTerm == null || containsIgnoreCase(g.title, titleTerm))
+                && (creatorTerm == null || containsIgnoreCase(g.creators, creatorTerm));
+        }
+
+        private boolean has(int predicate) {
+            switch (predicate) {
+                case PLAYERS:
+                    return hasPlayers;
+                case PLAYTIME:
+                    return hasPlaytime;
+                case WEIGHT:
+                    return hasWeight;
+                default:
+                    return hasYear;
+            }
+        }
+
+        // Checks one indexed predicate, whether or not it is set
+        private boolean matches(Game g, int predicate) {
+            switch (predicate) {
+                case PLAYERS:
+                    return g.minPlayers <= playerCount && playerCount <= g.maxPlayers;
+                case PLAYTIME:
+                    return shortestPlaytime <= g.minPlaytime && g.maxPlaytime <= longestPlaytime;
+                case WEIGHT:
+                    return lightest <= hundredths(g.weight) && hundredths(g.weight) <= heaviest;
+                default:
+                    return earliest <= g.year && g.year <= latest;
+            }
+        }
+
+        // String.contains() ignoring case, without lowercasing a copy of the
+        // text for every game
+        private static boolean containsIgnoreCase(String text, String term) {
+            if (term.isEmpty()) {
+                return true;
+            }
+            char lower = Character.toLowerCase(term.charAt(0));
+            char upper = Character.toUpperCase(term.charAt(0));
+            for (int i = 0; i + term.length() <= text.length(); i++) {
+                char c = text.charAt(i);
+                if ((c == lower || c == upper) && text.regionMatches(true, i, term, 0, term.length())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // The query's indexed predicates, each with the number of games it is
+    // estimated to match in the high half, in ascending order
+    private long[] estimates(Query q) {
+        int step = Math.max(1, rows.size() / SAMPLE_SIZE);
+        long[] estimates = new long[Query.INDEXED];
+        int count = 0;
+        for (int predicate = 0; predicate < Query.INDEXED; predicate++) {
+            if (!q.has(predicate)) {
+                continue;
+            }
+            int sampled = 0;
+            int matched = 0;
+            for (int row = 0; row < rows.size(); row += step) {
+                Game g = rows.get(row);
+                if (g != null) {
+                    sampled++;
+                    matched += q.matches(g, predicate) ? 1 : 0;
+                }
+            }
+            long estimate = sampled == 0 ? 0 : (long) matched * rows.size() / sampled;
+            estimates[count++] = estimate << 32 | predicate;
+        }
+        estimates = Arrays.copyOf(estimates, count);
+        Arrays.sort(estimates);
+        return estimates;
+    }
+
+    // Bitmap of the rows matching one indexed predicate
+    private long[] scan(Query q, int predicate) {
+        long[] matches = new long[(rows.size() + 63) / 64];
+        switch (predicate) {
+            case Query.PLAYERS: {
+                // One run of the tree per minPlayers that allows the count,
+                // from maxPlayers = count up
+                int count = q.playerCount;
+                if (count < 0 || count > MAX_PLAYERS) {
+                    return matches;
+                }
+                for (int min = 0; min <= count; min++) {
+                    set(matches, players.range(playersKey(min, count, 0), playersKey(min, MAX_PLAYERS, MAX_GAME_ID)));
+                }
+                return matches;
+            }
+            case Query.PLAYTIME: {
+                // Every minPlaytime in range, skipping keys whose maxPlaytime
+                // is too long
+                int low = Math.max(0, q.shortestPlaytime);
+                int high = Math.min(MAX_PLAYTIME, q.longestPlaytime);
+                if (low > high) {
+                    return matches;
+                }
+                BTreeCursor cursor = playtimes.range(playtimeKey(low, low, 0), playtimeKey(high, high, MAX_GAME_ID));
+                while (cursor.next()) {
+                    if (((cursor.key() >>> 32) & 0xFFFF) <= high) {
+                        int row = (int) cursor.recordId();
+                        matches[row >>> 6] |= 1L << row;
+                    }
+                }
+                return matches;
+            }
+            case Query.WEIGHT:
+                if (q.lightest <= q.heaviest) {
+                    set(matches, weights.range(key(q.lightest, 0), key(q.heaviest, MAX_GAME_ID)));
+                }
+                return matches;
+            default:
+                if (q.earliest <= q.latest) {
+                    set(matches, years.range(key(q.earliest, 0), key(q.latest, MAX_GAME_ID)));
+                }
+                return matches;
+        }
+    }
+
+    // Sets the row of every entry of the cursor
+    private static void set(long[] bitmap, BTreeCursor cursor) {
+        while (cursor.next()) {
+            int row = (int) cursor.recordId();
+            bitmap[row >>> 6] |= 1L << row;
+        }
+    }
+
+    private static void load(BTree tree, long[] keys, ForkJoinPool pool) {
+        long[] rowIds = new long[keys.length];
+        for (int i = 0; i < rowIds.length; i++) {
+            rowIds[i] = i;
+        }
+        StudentCsv.sort(keys, rowIds, keys.length, pool);
+        // The games tree is loaded first, so a repeat is caught there
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] == keys[i]) {
+                throw new IllegalArgumentException("Game ID appears twice: " + (keys[i] & MAX_GAME_ID));
+            }
+        }
+        tree.bulkLoad(keys, rowIds, keys.length, 0.9, pool);
+    }
+
+    // A negative value gives a negative key, so keys sort by value and then
+    // gameId
+    private static long key(long value, long gameId) {
+        return value << 32 | gameId;
+    }
+
+    // minPlayers in bits 40-47 and maxPlayers in bits 32-39
+    private static long playersKey(int minPlayers, int maxPlayers, long gameId) {
+        return (long) minPlayers << 40 | (long) maxPlayers << 32 | gameId;
+    }
+
+    // minPlaytime in bits 48-62 and maxPlaytime in bits 32-47
+    private static long playtimeKey(int minPlaytime, int maxPlaytime, long gameId) {
+        return (long) minPlaytime << 48 | (long) maxPlaytime << 32 | gameId;
+    }
+
+    private static int hundredths(double weight) {
+        return (int) Math.round(weight * 100);
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+
+/**
+ * Node store keeping each node as a BTreeNode object on the Java heap, with
+ * its own keys, values and children arrays. Node IDs index a table of the
+ * objects, and links between nodes are object references.
+ */
+final class HeapNodeStore implements NodeStore {
+
+    private final int t;
+    /**
+     * Node of each ID, or null for a freed or reserved ID.
+     */
+    private BTreeNode[] nodes = new BTreeNode[16];
+    /**
+     * Number of IDs handed out, freed ones included.
+     */
+    private int nodeCount;
+    /**
+     * Freed IDs, reused last in first out.
+     */
+    private int[] freed = new int[16];
+    private int freedCount;
+
+    HeapNodeStore(int t) {
+        this.t = t;
+    }
+
+    @Override
+    public int degree() {
+        return t;
+    }
+
+    @Override
+    public int allocate(boolean leaf) {
+        int node = freedCount > 0 ? freed[--freedCount] : reserve(1);
+        create(node, leaf);
+        return node;
+    }
+
+    @Override
+    public int reserve(int count) {
+        int first = nodeCount;
+        nodeCount += count;
+        if (nodeCount > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodeCount, nodes.length * 2));
+        }
+        return first;
+    }
+
+    @Override
+    public void create(int node, boolean leaf) {
+        BTreeNode created = new BTreeNode(t, leaf);
+        created.id = node;
+        nodes[node] = created;
+    }
+
+    @Override
+    public void free(int node) {
+        nodes[node] = null;
+        if (freedCount == freed.length) {
+            freed = Arrays.copyOf(freed, freedCount * 2);
+        }
+        freed[freedCount++] = node;
+    }
+
+    @Override
+    public void clear() {
+        nodes = new BTreeNode[16];
+        nodeCount = 0;
+        freedCount = 0;
+    }
+
+    @Override
+    public boolean parallelBuild() {
+        return true;
+    }
+
+    @Override
+    public boolean isLeaf(int node) {
+        return nodes[node].leaf;
+    }
+
+    @Override
+    public int n(int node) {
+        return nodes[node].n;
+    }
+
+    @Override
+    public void setN(int node, int n) {
+        nodes[node].n = n;
+    }
+
+    @Override
+    public long key(int node, int i) {
+        return nodes[node].keys[i];
+    }
+
+    @Override
+    public void setKey(int node, int i, long key) {
+        nodes[node].keys[i] = key;
+    }
+
+    @Override
+    public long value(int node, int i) {
+        return nodes[node].values[i];
+    }
+
+    @Override
+    public void setValue(int node, int i, long value) {
+        nodes[node].values[i] = value;
+    }
+
+    @Override
+    public int child(int node, int i) {
+        return id(nodes[node].children[i]);
+    }
+
+    @Override
+    public void setChild(int node, int i, int child) {
+        nodes[node].children[i] = child == NONE ? null : nodes[child];
+    }
+
+    @Override
+    public int next(int node) {
+        return id(nodes[node].next);
+    }
+
+    @Override
+    public void setNext(int node, int next) {
+        nodes[node].next = next == NONE ? null : nodes[next];
+    }
+
+    @Override
+    public int prev(int node) {
+        return id(nodes[node].prev);
+    }
+
+    @Override
+    public void setPrev(int node, int prev) {
+        nodes[node].prev = prev == NONE ? null : nodes[prev];
+    }
+
+    @Override
+    public int upperBound(int node, long key) {
+        return nodes[node].upperBound(key);
+    }
+
+    @Override
+    public int lowerBound(int node, long key) {
+        return nodes[node].lowerBound(key);
+    }
+
+    @Override
+    public int childFor(int node, long key) {
+        BTreeNode parent = nodes[node];
+        return parent.children[parent.upperBound(key)].id;
+    }
+
+    @Override
+    public int find(int node, long key) {
+        BTreeNode leaf = nodes[node];
+        int i = leaf.lowerBound(key);
+        return i < leaf.n && leaf.keys[i] == key ? i : -1;
+    }
+
+    @Override
+    public long search(int node, long key) {
+        // Follow references rather than IDs on the way down
+        BTreeNode current = nodes[node];
+        while (!current.leaf) {
+            current = current.children[current.upperBound(key)];
+        }
+        int i = current.lowerBound(key);
+        return i < current.n && current.keys[i] == key ? current.values[i] : -1;
+    }
+
+    @Override
+    public void copyKeys(int from, int fromPos, int to, int toPos, int count) {
+        System.arraycopy(nodes[from].keys, fromPos, nodes[to].keys, toPos, count);
+    }
+
+    @Override
+    public void copyValues(int from, int fromPos, int to, int toPos, int count) {
+        System.arraycopy(nodes[from].values, fromPos, nodes[to].values, toPos, count);
+    }
+
+    @Override
+    public void copyChildren(int from, int fromPos, int to, int toPos, int count) {
+        System.arraycopy(nodes[from].children, fromPos, nodes[to].children, toPos, count);
+    }
+
+    @Override
+    public void putEntries(int leaf, long[] keys, long[] values, int offset, int count) {
+        BTreeNode node = nodes[leaf];
+        System.arraycopy(keys, offset, node.keys, 0, count);
+        System.arraycopy(values, offset, node.values, 0, count);
+    }
+
+    @Override
+    public void getValues(int leaf, long[] values, int offset, int count) {
+        System.arraycopy(nodes[leaf].values, 0, values, offset, count);
+    }
+
+    private static int id(BTreeNode node) {
+        return node == null ? NONE : node.id;
+    }
+}
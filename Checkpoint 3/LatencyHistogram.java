@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, for many threads to record
+ * into while another reads it.
+ * <p>
+ * Buckets are laid out like HdrHistogram's: values below SUB_BUCKETS get a
+ * bucket each, and every power of two above that is cut into SUB_BUCKETS
+ * equal buckets. A value is reported as the top of its bucket, at most 1/16
+ * (about 6%) above what was recorded. Recording is an increment of one
+ * array slot plus two adders, so writers never wait on each other or on
+ * readers. A reader sees each count as it was when read, which may be a
+ * few records behind a busy writer.
+ */
+class LatencyHistogram {
+
+    /** log2 of the number of buckets each power of two is cut into */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for any non-negative long */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency. Negative values are counted as 0.
+     *
+     * @param nanos - The latency in nanoseconds
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * @return The number of latencies recorded
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return The mean latency in nanoseconds, or 0 if none were recorded
+     */
+    double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * @return The largest latency recorded, in nanoseconds
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * Finds the latency that the given fraction of the records are at or
+     * below.
+     *
+     * @param quantile - Between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return The top of the bucket holding that record, in nanoseconds, or 0
+     *         if none were recorded
+     */
+    long percentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears every count, for a monitor that reports per interval. Records
+     * made while it runs may be kept or lost.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p999=%dns max=%dns",
+            count(), mean(), percentile(0.5), percentile(0.99), percentile(0.999), max());
+    }
+
+    // The bucket a non-negative value falls in
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Position of the highest bit, at least SUB_BUCKET_BITS
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // The largest value that falls in the bucket
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, used for BTree output instead of a boxed
+ * List&lt;Long&gt;.
+ */
+class LongList {
+
+    /**
+     * Backing array. Only the first size entries are in use.
+     */
+    private long[] data;
+    /**
+     * Number of values in the list.
+     */
+    private int size;
+
+    LongList() {
+        this(16);
+    }
+
+    LongList(int capacity) {
+        this.data = new long[Math.max(1, capacity)];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a value, growing the backing array if it is full.
+     *
+     * @param value - The value to append
+     */
+    void add(long value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        data[size++] = value;
+    }
+
+    /**
+     * @param index - Position of the value, from 0 to size() - 1
+     * @return The value at the index
+     */
+    long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return data[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return A copy of the values in the list
+     */
+    long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Formats the list the same way as List.toString, e.g. [1, 2, 3].
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(data[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Open-addressing hash map from primitive long keys to primitive long values.
+ * <p>
+ * Keys and values live in two parallel arrays probed linearly, so a lookup
+ * touches no objects and nothing is boxed. Removal shifts later entries of the
+ * probe run back, so no tombstones are left behind.
+ */
+class LongLongMap {
+
+    /**
+     * Marks an empty slot in keys. The key with this value is stored outside
+     * the arrays.
+     */
+    private static final long FREE_KEY = 0L;
+    /**
+     * The map grows once more than this fraction of slots are in use.
+     */
+    private static final double LOAD_FACTOR = 0.6;
+
+    private long[] keys;
+    private long[] values;
+    /**
+     * keys.length - 1. The table size is always a power of two.
+     */
+    private int mask;
+    /**
+     * Number of entries stored in the arrays.
+     */
+    private int used;
+    /**
+     * Resize once used reaches this.
+     */
+    private int threshold;
+    /**
+     * True when FREE_KEY itself is mapped, to freeKeyValue.
+     */
+    private boolean hasFreeKey;
+    private long freeKeyValue;
+
+    LongLongMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize - Number of entries the map should hold without
+     *                     resizing
+     */
+    LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(2, expectedSize / LOAD_FACTOR) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key - The key to look up
+     * @return True if the key is in the map
+     */
+    boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        return keys[indexOf(key)] != FREE_KEY;
+    }
+
+    /**
+     * @param key          - The key to look up
+     * @param defaultValue - Returned when the key is not in the map
+     * @return The value mapped to the key, or defaultValue
+     */
+    long get(long key, long defaultValue) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : defaultValue;
+        }
+        int i = indexOf(key);
+        return keys[i] != FREE_KEY ? values[i] : defaultValue;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key   - The key
+     * @param value - The value
+     * @return True if the key was not in the map before
+     */
+    boolean put(long key, long value) {
+        if (key == FREE_KEY) {
+            boolean added = !hasFreeKey;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return added;
+        }
+        int i = indexOf(key);
+        if (keys[i] != FREE_KEY) {
+            values[i] = value;
+            return false;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++used >= threshold) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the key from the map.
+     *
+     * @param key - The key to remove
+     * @return True if the key was in the map
+     */
+    boolean remove(long key) {
+        if (key == FREE_KEY) {
+            boolean removed = hasFreeKey;
+            hasFreeKey = false;
+            return removed;
+        }
+        int i = indexOf(key);
+        if (keys[i] == FREE_KEY) {
+            return false;
+        }
+
+        // Move later entries of the probe run into the gap when their home
+        // slot is at or before it, so every entry stays reachable.
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != FREE_KEY) {
+            int home = hash(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = FREE_KEY;
+        used--;
+        return true;
+    }
+
+    /**
+     * @return The number of entries in the map
+     */
+    int size() {
+        return used + (hasFreeKey ? 1 : 0);
+    }
+
+    // Slot holding the key, or the empty slot where it would be inserted
+    private int indexOf(long key) {
+        int i = hash(key);
+        while (keys[i] != FREE_KEY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // Spreads the key bits so sequential student IDs don't cluster
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int j = indexOf(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
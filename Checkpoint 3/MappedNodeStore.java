@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Node store whose slabs are mapped from a file, so the tree built in it
+ * persists and a later run can open it with search() ready at once, without
+ * reading a node.
+ * <p>
+ * The file is a HEADER_SIZE byte header followed by the slabs' pages, in page
+ * ID order. All values are little-endian:
+ * <pre>
+ *   0   long magic
+ *   8   int  format version
+ *   12  int  t, the minimum degree
+ *   16  int  page size
+ *   20  int  page count
+ *   24  int  root page, or NONE for an empty tree
+ *   28  int  first free page, or NONE
+ *   32  long number of entries in the tree
+ *   40  long stamp, identifying what the tree was built from
+ *   48  int  1 if the pages match the fields above, 0 after any change
+ *   52  int  CRC32C of bytes 0 to 51
+ * </pre>
+ * save() forces the pages to disk and then records the tree in the header.
+ * The first write to a page after that clears the clean flag on disk before
+ * the page changes, so a tree that was changed and not saved again, say by a
+ * crash, is never taken for a saved one. A file that is missing, damaged or
+ * sized for another degree is started over empty.
+ */
+final class MappedNodeStore extends SlabNodeStore {
+
+    static final int HEADER_SIZE = 4096;
+    /** Identifies a mapped node store file, "BTMAPPED" in ASCII */
+    private static final long MAGIC = 0x42544D4150504544L;
+    private static final int FORMAT_VERSION = 1;
+    /** Header bytes the checksum covers */
+    private static final int HEADER_CHECKED_BYTES = 52;
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private int root = NONE;
+    private long entries;
+    private long stamp;
+    /**
+     * True while the pages match the header on disk.
+     */
+    private boolean clean;
+
+    private MappedNodeStore(int t, FileChannel channel) {
+        super(t);
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a mapped node store file, creating it if it doesn't exist.
+     *
+     * @param file - The node store file
+     * @param t    - The minimum degree the pages are sized for
+     * @return The open store. isClean() tells whether it holds a saved tree.
+     * @throws IOException if the file can't be opened or mapped
+     */
+    static MappedNodeStore open(Path file, int t) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedNodeStore store = new MappedNodeStore(t, channel);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_CHECKED_BYTES + 4).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            if (!header.hasRemaining() && header.getLong(0) == MAGIC && header.getInt(8) == FORMAT_VERSION
+                    && header.getInt(12) == t && header.getInt(16) == store.pageSize
+                    && header.getInt(HEADER_CHECKED_BYTES) == checksum(header)) {
+                store.pageCount = header.getInt(20);
+                store.root = header.getInt(24);
+                store.freeHead = header.getInt(28);
+                store.entries = header.getLong(32);
+                store.stamp = header.getLong(40);
+                store.clean = header.getInt(48) == 1;
+                // Map the pages the tree uses
+                store.grow(store.pageCount);
+            } else {
+                store.writeHeader();
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return True if the pages hold the tree last passed to save(), unchanged
+     */
+    boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * @return The root of the saved tree, or NONE for an empty one
+     */
+    int root() {
+        return root;
+    }
+
+    /**
+     * @return The number of entries in the saved tree
+     */
+    long entries() {
+        return entries;
+    }
+
+    /**
+     * @return The stamp the tree was saved with
+     */
+    long stamp() {
+        return stamp;
+    }
+
+    /**
+     * Makes the tree in the store durable: forces its pages to disk, then
+     * writes and forces a header recording it as clean.
+     *
+     * @param root    - The tree's root, or NONE for an empty tree
+     * @param entries - The number of entries in the tree
+     * @param stamp   - Identifies what the tree was built from, for the
+     *                caller to check when it opens the file again
+     * @throws IOException if the file can't be written
+     */
+    void save(int root, long entries, long stamp) throws IOException {
+        for (MappedByteBuffer slab : mapped) {
+            slab.force();
+        }
+        this.root = root;
+        this.entries = entries;
+        this.stamp = stamp;
+        this.clean = true;
+        writeHeader();
+    }
+
+    /**
+     * Closes the file. A tree changed since the last save() is not saved.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void clear() {
+        markChanged();
+        super.clear();
+    }
+
+    @Override
+    void unpin(int node, boolean dirty) {
+        // Bulk loads clear() first, so parallel writers never get here clean
+        if (dirty && clean) {
+            markChanged();
+        }
+    }
+
+    @Override
+    ByteBuffer newSlab(int index) {
+        try {
+            MappedByteBuffer slab = channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_SIZE + (long) index * slabBytes(), slabBytes());
+            mapped.add(slab);
+            return slab;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Clears the clean flag on disk before the pages start to differ from
+    // the header
+    private synchronized void markChanged() {
+        if (!clean) {
+            return;
+        }
+        clean = false;
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_CHECKED_BYTES + 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, MAGIC);
+        header.putInt(8, FORMAT_VERSION);
+        header.putInt(12, t);
+        header.putInt(16, pageSize);
+        header.putInt(20, pageCount);
+        header.putInt(24, root);
+        header.putInt(28, freeHead);
+        header.putLong(32, entries);
+        header.putLong(40, stamp);
+        header.putInt(48, clean ? 1 : 0);
+        header.putInt(HEADER_CHECKED_BYTES, checksum(header));
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+    }
+
+    // CRC32C of the header fields before the checksum
+    private static int checksum(ByteBuffer header) {
+        CRC32C crc = new CRC32C();
+        crc.update(header.duplicate().position(0).limit(HEADER_CHECKED_BYTES));
+        return (int) crc.getValue();
+    }
+}
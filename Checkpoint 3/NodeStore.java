@@ -0,0 +1,173 @@
+/**
+ * Where a BTree keeps its nodes.
+ * <p>
+ * Nodes are addressed by int IDs instead of object references, and every read
+ * and write of a node goes through the store, so the same BTree code runs on
+ * BTreeNode objects (HeapNodeStore), on fixed-size pages in off-heap slabs
+ * (SlabNodeStore) or on pages of a file paged through a BufferPool
+ * (PooledNodeStore). A node has room for 2t keys. A leaf holds a value with each
+ * key and links to its neighbours in key order; an internal node holds up to
+ * 2t + 1 children.
+ * <p>
+ * Stores are not thread-safe, except that a store whose parallelBuild() is
+ * true lets several threads create and fill distinct reserved nodes at once.
+ */
+interface NodeStore {
+
+    /**
+     * ID standing for no node, such as the next link of the last leaf.
+     */
+    int NONE = -1;
+
+    /**
+     * @return The minimum degree t the nodes are sized for
+     */
+    int degree();
+
+    /**
+     * Allocates an empty node, reusing the ID of a freed one if there is one.
+     *
+     * @param leaf - True for a leaf
+     * @return The node's ID
+     */
+    int allocate(boolean leaf);
+
+    /**
+     * Reserves count consecutive IDs for new nodes, which the caller then sets
+     * up with create(). Freed IDs are never handed out this way.
+     *
+     * @param count - Number of IDs
+     * @return The first ID
+     */
+    int reserve(int count);
+
+    /**
+     * Sets up an empty node at a reserved ID.
+     *
+     * @param node - The reserved ID
+     * @param leaf - True for a leaf
+     */
+    void create(int node, boolean leaf);
+
+    /**
+     * Releases a node that is no longer in the tree, so its ID can be reused.
+     *
+     * @param node - The node
+     */
+    void free(int node);
+
+    /**
+     * Frees every node.
+     */
+    void clear();
+
+    /**
+     * @return True if distinct nodes reserved together may be created and
+     *         filled from several threads at once
+     */
+    boolean parallelBuild();
+
+    boolean isLeaf(int node);
+
+    /**
+     * @return The number of keys in the node
+     */
+    int n(int node);
+
+    void setN(int node, int n);
+
+    long key(int node, int i);
+
+    void setKey(int node, int i, long key);
+
+    long value(int node, int i);
+
+    void setValue(int node, int i, long value);
+
+    int child(int node, int i);
+
+    void setChild(int node, int i, int child);
+
+    /**
+     * @return The leaf after this one, or NONE for the last leaf
+     */
+    int next(int node);
+
+    void setNext(int node, int next);
+
+    /**
+     * @return The leaf before this one, or NONE for the first leaf
+     */
+    int prev(int node);
+
+    void setPrev(int node, int prev);
+
+    /**
+     * Finds the index of the first key greater than the given key, which is
+     * also the child to follow for that key in an internal node.
+     *
+     * @return The number of keys in the node less than or equal to key
+     */
+    int upperBound(int node, long key);
+
+    /**
+     * Finds the index of the first key greater than or equal to the given key.
+     *
+     * @return The number of keys in the node less than key
+     */
+    int lowerBound(int node, long key);
+
+    /**
+     * @return The child of an internal node to follow for key
+     */
+    default int childFor(int node, long key) {
+        return child(node, upperBound(node, key));
+    }
+
+    /**
+     * @return The index of key in the node, or -1 if it is not there
+     */
+    default int find(int node, long key) {
+        int i = lowerBound(node, key);
+        return i < n(node) && key(node, i) == key ? i : -1;
+    }
+
+    /**
+     * Descends from a node to the leaf for key and looks the key up there.
+     *
+     * @return The value stored with key, or -1 if it is not in the subtree
+     */
+    default long search(int node, long key) {
+        while (!isLeaf(node)) {
+            node = childFor(node, key);
+        }
+        int i = find(node, key);
+        return i < 0 ? -1 : value(node, i);
+    }
+
+    /**
+     * Copies keys from one node to another, or within one node even when the
+     * ranges overlap.
+     */
+    void copyKeys(int from, int fromPos, int to, int toPos, int count);
+
+    /**
+     * Copies values between leaves, or within one leaf, like copyKeys.
+     */
+    void copyValues(int from, int fromPos, int to, int toPos, int count);
+
+    /**
+     * Copies children between internal nodes, or within one, like copyKeys.
+     */
+    void copyChildren(int from, int fromPos, int to, int toPos, int count);
+
+    /**
+     * Fills a leaf's first count keys and values from arrays.
+     */
+    void putEntries(int leaf, long[] keys, long[] values, int offset, int count);
+
+    /**
+     * Copies a leaf's first count values into an array.
+     */
+    void getValues(int leaf, long[] values, int offset, int count);
+}
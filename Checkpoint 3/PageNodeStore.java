@@ -0,0 +1,414 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Node store keeping each node in a fixed-size page of bytes, addressed by
+ * page ID. The layout is that of an uncompressed PagedIndex page:
+ * <pre>
+ *   0   int  n          number of keys
+ *   4   int  flags      LEAF_FLAG when the page is a leaf
+ *   8   int  next       next leaf page, or NONE
+ *   12  int  prev       previous leaf page, or NONE
+ *   16  long keys[2t]
+ *   ..  long values[2t] on leaves, int children[2t + 1] on internal pages
+ * </pre>
+ * Subclasses decide where the pages live. Every access pins the page, reads
+ * or writes it at offset() and unpins it, so no page is held between calls.
+ * Freed pages are chained through their next field and reused first.
+ */
+abstract class PageNodeStore implements NodeStore {
+
+    /** Set in the flags of leaf pages */
+    static final int LEAF_FLAG = 1;
+
+    static final int N_OFFSET = 0;
+    static final int FLAGS_OFFSET = 4;
+    static final int NEXT_OFFSET = 8;
+    static final int PREV_OFFSET = 12;
+    static final int KEYS_OFFSET = 16;
+
+    /**
+     * Minimum degree. Pages hold up to 2t keys.
+     */
+    final int t;
+    /**
+     * Bytes per page.
+     */
+    final int pageSize;
+    /**
+     * Byte offset of the values/children area within a page.
+     */
+    private final int valuesOffset;
+    /**
+     * Number of page IDs handed out, freed ones included.
+     */
+    int pageCount;
+    /**
+     * Most recently freed page, or NONE if there is none.
+     */
+    int freeHead = NONE;
+
+    PageNodeStore(int t) {
+        this.t = t;
+        this.pageSize = PagedIndex.pageSize(t);
+        this.valuesOffset = KEYS_OFFSET + 16 * t;
+    }
+
+    /**
+     * Pins a page until the matching unpin().
+     *
+     * @param node - The page ID
+     * @return The buffer holding the page at offset(node)
+     */
+    abstract ByteBuffer pin(int node);
+
+    /**
+     * @param node - The page ID
+     * @return The byte offset of the page in the buffer pin() returns
+     */
+    abstract int offset(int node);
+
+    /**
+     * Releases a pin taken by pin().
+     *
+     * @param node  - The page ID
+     * @param dirty - True if the page was written while pinned
+     */
+    abstract void unpin(int node, boolean dirty);
+
+    /**
+     * Makes room for pages [0, pageCount).
+     *
+     * @param pageCount - The number of pages needed
+     */
+    abstract void grow(int pageCount);
+
+    /**
+     * @return The number of pages handed out, freed ones included
+     */
+    int pageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public int degree() {
+        return t;
+    }
+
+    @Override
+    public int allocate(boolean leaf) {
+        int node;
+        if (freeHead != NONE) {
+            node = freeHead;
+            freeHead = getInt(node, NEXT_OFFSET);
+        } else {
+            node = reserve(1);
+        }
+        create(node, leaf);
+        return node;
+    }
+
+    @Override
+    public int reserve(int count) {
+        int first = pageCount;
+        grow(pageCount + count);
+        pageCount += count;
+        return first;
+    }
+
+    @Override
+    public void create(int node, boolean leaf) {
+        ByteBuffer page = pin(node);
+        int base = offset(node);
+        page.putInt(base + N_OFFSET, 0);
+        page.putInt(base + FLAGS_OFFSET, leaf ? LEAF_FLAG : 0);
+        page.putInt(base + NEXT_OFFSET, NONE);
+        page.putInt(base + PREV_OFFSET, NONE);
+        unpin(node, true);
+    }
+
+    @Override
+    public void free(int node) {
+        ByteBuffer page = pin(node);
+        int base = offset(node);
+        page.putInt(base + N_OFFSET, 0);
+        page.putInt(base + NEXT_OFFSET, freeHead);
+        unpin(node, true);
+        freeHead = node;
+    }
+
+    @Override
+    public void clear() {
+        pageCount = 0;
+        freeHead = NONE;
+    }
+
+    @Override
+    public boolean isLeaf(int node) {
+        return (getInt(node, FLAGS_OFFSET) & LEAF_FLAG) != 0;
+    }
+
+    @Override
+    public int n(int node) {
+        return getInt(node, N_OFFSET);
+    }
+
+    @Override
+    public void setN(int node, int n) {
+        putInt(node, N_OFFSET, n);
+    }
+
+    @Override
+    public long key(int node, int i) {
+        return getLong(node, KEYS_OFFSET + 8 * i);
+    }
+
+    @Override
+    public void setKey(int node, int i, long key) {
+        putLong(node, KEYS_OFFSET + 8 * i, key);
+    }
+
+    @Override
+    public long value(int node, int i) {
+        return getLong(node, valuesOffset + 8 * i);
+    }
+
+    @Override
+    public void setValue(int node, int i, long value) {
+        putLong(node, valuesOffset + 8 * i, value);
+    }
+
+    @Override
+    public int child(int node, int i) {
+        return getInt(node, valuesOffset + 4 * i);
+    }
+
+    @Override
+    public void setChild(int node, int i, int child) {
+        putInt(node, valuesOffset + 4 * i, child);
+    }
+
+    @Override
+    public int next(int node) {
+        return getInt(node, NEXT_OFFSET);
+    }
+
+    @Override
+    public void setNext(int node, int next) {
+        putInt(node, NEXT_OFFSET, next);
+    }
+
+    @Override
+    public int prev(int node) {
+        return getInt(node, PREV_OFFSET);
+    }
+
+    @Override
+    public void setPrev(int node, int prev) {
+        putInt(node, PREV_OFFSET, prev);
+    }
+
+    @Override
+    public int upperBound(int node, long key) {
+        ByteBuffer page = pin(node);
+        int i = upperBound(page, offset(node), key);
+        unpin(node, false);
+        return i;
+    }
+
+    @Override
+    public int lowerBound(int node, long key) {
+        ByteBuffer page = pin(node);
+        int i = lowerBound(page, offset(node), key);
+        unpin(node, false);
+        return i;
+    }
+
+    @Override
+    public int childFor(int node, long key) {
+        ByteBuffer page = pin(node);
+        int base = offset(node);
+        int child = page.getInt(base + valuesOffset + 4 * upperBound(page, base, key));
+        unpin(node, false);
+        return child;
+    }
+
+    @Override
+    public int find(int node, long key) {
+        ByteBuffer page = pin(node);
+        int base = offset(node);
+        int i = lowerBound(page, base, key);
+        if (i == page.getInt(base + N_OFFSET) || page.getLong(base + KEYS_OFFSET + 8 * i) != key) {
+            i = -1;
+        }
+        unpin(node, false);
+        return i;
+    }
+
+    @Override
+    public long search(int node, long key) {
+        // One pin per level
+        while (true) {
+            ByteBuffer page = pin(node);
+            int base = offset(node);
+            if ((page.getInt(base + FLAGS_OFFSET) & LEAF_FLAG) != 0) {
+                int i = lowerBound(page, base, key);
+                long value = i < page.getInt(base + N_OFFSET) && page.getLong(base + KEYS_OFFSET + 8 * i) == key
+                        ? page.getLong(base + valuesOffset + 8 * i)
+                        : -1;
+                unpin(node, false);
+                return value;
+            }
+            int child = page.getInt(base + valuesOffset + 4 * upperBound(page, base, key));
+            unpin(node, false);
+            node = child;
+        }
+    }
+
+    @Override
+    public void copyKeys(int from, int fromPos, int to, int toPos, int count) {
+        copyLongs(from, KEYS_OFFSET + 8 * fromPos, to, KEYS_OFFSET + 8 * toPos, count);
+    }
+
+    @Override
+    public void copyValues(int from, int fromPos, int to, int toPos, int count) {
+        copyLongs(from, valuesOffset + 8 * fromPos, to, valuesOffset + 8 * toPos, count);
+    }
+
+    @Override
+    public void copyChildren(int from, int fromPos, int to, int toPos, int count) {
+        if (count <= 0) {
+            return;
+        }
+        ByteBuffer source = pin(from);
+        ByteBuffer target = pin(to);
+        int s = offset(from) + valuesOffset + 4 * fromPos;
+        int d = offset(to) + valuesOffset + 4 * toPos;
+        if (source == target && s < d) {
+            // Back to front, in case the ranges overlap
+            for (int i = count - 1; i >= 0; i--) {
+                target.putInt(d + 4 * i, source.getInt(s + 4 * i));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                target.putInt(d + 4 * i, source.getInt(s + 4 * i));
+            }
+        }
+        unpin(from, false);
+        unpin(to, true);
+    }
+
+    @Override
+    public void putEntries(int leaf, long[] keys, long[] values, int offset, int count) {
+        ByteBuffer page = pin(leaf);
+        int base = offset(leaf);
+        for (int i = 0; i < count; i++) {
+            page.putLong(base + KEYS_OFFSET + 8 * i, keys[offset + i]);
+            page.putLong(base + valuesOffset + 8 * i, values[offset + i]);
+        }
+        unpin(leaf, true);
+    }
+
+    @Override
+    public void getValues(int leaf, long[] values, int offset, int count) {
+        ByteBuffer page = pin(leaf);
+        int base = offset(leaf);
+        for (int i = 0; i < count; i++) {
+            values[offset + i] = page.getLong(base + valuesOffset + 8 * i);
+        }
+        unpin(leaf, false);
+    }
+
+    // Index of the first key greater than the given key, as BTreeNode.upperBound
+    private static int upperBound(ByteBuffer page, int base, long key) {
+        int n = page.getInt(base + N_OFFSET);
+        int keys = base + KEYS_OFFSET;
+        if (n <= BTreeNode.LINEAR_SEARCH_MAX) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                count += page.getLong(keys + 8 * i) <= key ? 1 : 0;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (page.getLong(keys + 8 * mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first key greater than or equal to the given key, as BTreeNode.lowerBound
+    private static int lowerBound(ByteBuffer page, int base, long key) {
+        int n = page.getInt(base + N_OFFSET);
+        int keys = base + KEYS_OFFSET;
+        if (n <= BTreeNode.LINEAR_SEARCH_MAX) {
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                count += page.getLong(keys + 8 * i) < key ? 1 : 0;
+            }
+            return count;
+        }
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (page.getLong(keys + 8 * mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Copies count longs starting at the given byte offsets of two pages, or
+    // of one page even if the ranges overlap
+    private void copyLongs(int from, int fromOffset, int to, int toOffset, int count) {
+        if (count <= 0) {
+            return;
+        }
+        ByteBuffer source = pin(from);
+        ByteBuffer target = pin(to);
+        int s = offset(from) + fromOffset;
+        int d = offset(to) + toOffset;
+        if (source == target && s < d) {
+            // Back to front, in case the ranges overlap
+            for (int i = count - 1; i >= 0; i--) {
+                target.putLong(d + 8 * i, source.getLong(s + 8 * i));
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                target.putLong(d + 8 * i, source.getLong(s + 8 * i));
+            }
+        }
+        unpin(from, false);
+        unpin(to, true);
+    }
+
+    private int getInt(int node, int field) {
+        int value = pin(node).getInt(offset(node) + field);
+        unpin(node, false);
+        return value;
+    }
+
+    private void putInt(int node, int field, int value) {
+        pin(node).putInt(offset(node) + field, value);
+        unpin(node, true);
+    }
+
+    private long getLong(int node, int field) {
+        long value = pin(node).getLong(offset(node) + field);
+        unpin(node, false);
+        return value;
+    }
+
+    private void putLong(int node, int field, long value) {
+        pin(node).putLong(offset(node) + field, value);
+        unpin(node, true);
+    }
+}
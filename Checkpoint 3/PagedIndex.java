@@ -0,0 +1,883 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Read-only, off-heap snapshot of a B+Tree, exported from it by build().
+ * <p>
+ * This is an export: keys can't be inserted or deleted in place. A snapshot
+ * answers search and scan for the keys the tree held when it was built, and
+ * after the tree changes, build() a new one to see the changes. A BTree that
+ * itself lives off the heap, with search, insert and delete running on it,
+ * is a BTree on a SlabNodeStore, which uses the same uncompressed page
+ * layout.
+ * <p>
+ * Every node is a fixed-size page in large direct ByteBuffer slabs, and nodes
+ * refer to each other by int page ID instead of object references. The whole
+ * index is a handful of slab objects, however many keys it holds, so it adds
+ * nothing to GC marking. Within a page the keys and the values (or child page
+ * IDs) are each stored contiguously:
+ * <pre>
+ *   0   int  n          number of keys
+ *   4   int  flags      LEAF_FLAG when the page is a leaf
+ *   8   int  next       next leaf page, or NO_PAGE
+ *   12  int  prev       previous leaf page, or NO_PAGE
+ *   16  long keys[2t]
+ *   ..  long values[2t] on leaves, int children[2t + 1] on internal pages
+ * </pre>
+ * build() can also compress the pages, which are then packed with as many
+ * entries as fit instead of 2t. Each page stores its smallest key and value
+ * once and every entry as an unsigned offset from them (frame of reference),
+ * 1, 2, 4 or 8 bytes wide, whichever is enough for the page:
+ * <pre>
+ *   0   int  n          number of keys
+ *   4   int  flags      LEAF_FLAG when the page is a leaf
+ *   8   int  next       next leaf page, or NO_PAGE
+ *   12  int  prev       previous leaf page, or NO_PAGE
+ *   16  long key base
+ *   24  long value base  on leaves
+ *   32  byte key width
+ *   33  byte value width on leaves
+ *   34  byte key shift   on internal pages
+ *   36  keys[n] offsets, then values[n] offsets on leaves or int children[n + 1]
+ * </pre>
+ * Separators in internal pages are suffix truncated: between two children
+ * the separator is the value with the most trailing zero bits that still
+ * splits them, rather than the right child's lowest key. The zero bits
+ * shared by a page's separator offsets are shifted out before they are
+ * stored, so they pack into fewer bytes.
+ * <p>
+ * save() writes the image to a page file: a HEADER_SIZE byte header followed
+ * by the pages in page ID order. open() maps that file back into slabs, so a
+ * restart can serve search() without rebuilding anything. The header holds
+ * <pre>
+ *   0   long MAGIC
+ *   8   int  FORMAT_VERSION
+ *   12  int  t
+ *   16  int  page count
+ *   20  int  root page
+ *   24  long number of entries
+ *   32  int  CRC32C of the pages
+ *   36  int  flags, COMPRESSED_FLAG if the pages are compressed
+ *   40  int  CRC32C of header bytes 0 to 40
+ * </pre>
+ * All values are little-endian. A page file can also be opened through a
+ * BufferPool, which holds only a fixed number of pages in memory, for indexes
+ * larger than the memory they may use.
+ */
+class PagedIndex {
+
+    /** Marks a missing page link */
+    static final int NO_PAGE = -1;
+    /** Set in the flags of leaf pages */
+    static final int LEAF_FLAG = 1;
+
+    private static final int N_OFFSET = 0;
+    private static final int FLAGS_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+    private static final int PREV_OFFSET = 12;
+    private static final int KEYS_OFFSET = 16;
+    /** Set in the header flags of a page file with compressed pages */
+    static final int COMPRESSED_FLAG = 1;
+
+    // Layout of a compressed page after the common fields
+    private static final int KEY_BASE_OFFSET = 16;
+    private static final int VALUE_BASE_OFFSET = 24;
+    private static final int KEY_WIDTH_OFFSET = 32;
+    private static final int VALUE_WIDTH_OFFSET = 33;
+    private static final int KEY_SHIFT_OFFSET = 34;
+    private static final int PACKED_OFFSET = 36;
+    /** Slabs are at most this many bytes */
+    private static final int MAX_SLAB_BYTES = 1 << 30;
+
+    /** Identifies a page file, "BTREEIDX" in ASCII */
+    private static final long MAGIC = 0x4254524545494458L;
+    private static final int FORMAT_VERSION = 2;
+    /** Bytes before the first page in a page file */
+    static final int HEADER_SIZE = 4096;
+    /** Bytes of the header covered by the header checksum */
+    private static final int HEADER_CHECKED_BYTES = 40;
+
+    /**
+     * Minimum degree. Pages hold up to 2t keys.
+     */
+    private final int t;
+    /**
+     * True if the pages use the compressed layout.
+     */
+    private final boolean compressed;
+    /**
+     * Bytes per page.
+     */
+    private final int pageSize;
+    /**
+     * Byte offset of the values/children area within a page.
+     */
+    private final int valuesOffset;
+    /**
+     * log2 of the number of pages per slab.
+     */
+    private final int slabShift;
+    /**
+     * Off-heap slabs holding the pages, in page ID order. Null when pages are
+     * read through the buffer pool instead.
+     */
+    private final ByteBuffer[] slabs;
+    /**
+     * Number of pages in use.
+     */
+    private final int pageCount;
+    /**
+     * Page ID of the root, or NO_PAGE for an empty index.
+     */
+    private final int root;
+    /**
+     * Number of [ key,recordId ] entries.
+     */
+    private final long size;
+    /**
+     * Page checksum from the header of the file this index was opened from,
+     * or null when it was built in memory.
+     */
+    private Integer expectedChecksum;
+    /**
+     * Buffer pool pages are read through, or null when they are all in slabs.
+     */
+    private BufferPool pool;
+    /**
+     * Page file read by the buffer pool.
+     */
+    private FileChannel channel;
+
+    private PagedIndex(int t, boolean compressed, int pageCount, int root, long size, ByteBuffer[] slabs) {
+        this.t = t;
+        this.compressed = compressed;
+        this.pageSize = pageSize(t);
+        this.valuesOffset = KEYS_OFFSET + 16 * t;
+        this.slabShift = slabShift(t);
+        this.pageCount = pageCount;
+        this.root = root;
+        this.size = size;
+        this.slabs = slabs;
+    }
+
+    // log2 of the number of pages per slab for degree t
+    private static int slabShift(int t) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(1, MAX_SLAB_BYTES / pageSize(t)));
+    }
+
+    // Number of slabs needed to hold the pages
+    private static int slabCount(int t, int pageCount) {
+        int pagesPerSlab = 1 << slabShift(t);
+        return (pageCount + pagesPerSlab - 1) / pagesPerSlab;
+    }
+
+    // Pages held by the given slab
+    private static int slabPages(int t, int pageCount, int slab) {
+        int pagesPerSlab = 1 << slabShift(t);
+        return Math.min(pagesPerSlab, pageCount - slab * pagesPerSlab);
+    }
+
+    /**
+     * @param t - Minimum degree
+     * @return The number of bytes in a page for that degree
+     */
+    static int pageSize(int t) {
+        // Header, 2t keys, then 2t values, which need more room than 2t + 1 int children
+        return KEYS_OFFSET + 16 * t + 16 * t;
+    }
+
+    /**
+     * Exports a packed snapshot of the tree. Leaves are filled completely and
+     * written first, in key order, followed by each internal level and
+     * finally the root. Later changes to the tree don't reach the snapshot.
+     *
+     * @param tree - The tree to copy
+     * @param t    - Minimum degree of the image, independent of the tree's
+     * @return The new image
+     */
+    static PagedIndex build(BTree tree, int t) {
+        return build(tree, t, false);
+    }
+
+    /**
+     * Builds an image of the tree, with compressed pages if asked. Compressed
+     * pages are the same size as plain ones but are packed left to right with
+     * as many entries, or children, as fit.
+     *
+     * @param tree       - The tree to copy
+     * @param t          - Minimum degree of the image, which sets the page
+     *                   size. At least 2 for compressed pages.
+     * @param compressed - True to compress the pages
+     * @return The new image
+     */
+    static PagedIndex build(BTree tree, int t, boolean compressed) {
+        if (compressed) {
+            return buildCompressed(tree, t);
+        }
+        long size = tree.size();
+        int perLeaf = 2 * t;
+        int perInternal = 2 * t + 1;
+
+        // Count pages level by level so the slabs can be allocated up front.
+        int leafCount = (int) ((size + perLeaf - 1) / perLeaf);
+        int pageCount = leafCount;
+        for (int width = leafCount; width > 1; ) {
+            width = (width + perInternal - 1) / perInternal;
+            pageCount += width;
+        }
+        ByteBuffer[] slabs = new ByteBuffer[slabCount(t, pageCount)];
+        for (int i = 0; i < slabs.length; i++) {
+            int bytes = slabPages(t, pageCount, i) * pageSize(t);
+            slabs[i] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        PagedIndex index = new PagedIndex(t, false, pageCount, pageCount - 1, size, slabs);
+        if (size == 0) {
+            return index;
+        }
+
+        // Leaves, from the tree's leaf chain
+        long[] lowKeys = new long[leafCount];
+        BTreeCursor cursor = tree.range(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int page = 0; page < leafCount; page++) {
+            ByteBuffer slab = index.slab(page);
+            int base = index.base(page);
+            int n = 0;
+            while (n < perLeaf && cursor.next()) {
+                slab.putLong(base + KEYS_OFFSET + 8 * n, cursor.key());
+                slab.putLong(base + index.valuesOffset + 8 * n, cursor.recordId());
+                n++;
+            }
+            slab.putInt(base + N_OFFSET, n);
+            slab.putInt(base + FLAGS_OFFSET, LEAF_FLAG);
+            slab.putInt(base + NEXT_OFFSET, page + 1 < leafCount ? page + 1 : NO_PAGE);
+            slab.putInt(base + PREV_OFFSET, page > 0 ? page - 1 : NO_PAGE);
+            lowKeys[page] = slab.getLong(base + KEYS_OFFSET);
+        }
+
+        // Internal levels. The pages of a level are consecutive, so each
+        // parent's children are the next run of pages on the level below.
+        int levelStart = 0;
+        int width = leafCount;
+        while (width > 1) {
+            int parentStart = levelStart + width;
+            int parentCount = (width + perInternal - 1) / perInternal;
+            for (int i = 0; i < parentCount; i++) {
+                int page = parentStart + i;
+                ByteBuffer slab = index.slab(page);
+                int base = index.base(page);
+                int first = i * perInternal;
+                int children = Math.min(perInternal, width - first);
+                for (int j = 0; j < children; j++) {
+                    slab.putInt(base + index.valuesOffset + 4 * j, levelStart + first + j);
+                    if (j > 0) {
+                        slab.putLong(base + KEYS_OFFSET + 8 * (j - 1), lowKeys[first + j]);
+                    }
+                }
+                slab.putInt(base + N_OFFSET, children - 1);
+                slab.putInt(base + FLAGS_OFFSET, 0);
+                slab.putInt(base + NEXT_OFFSET, NO_PAGE);
+                slab.putInt(base + PREV_OFFSET, NO_PAGE);
+                lowKeys[i] = lowKeys[first];
+            }
+            levelStart = parentStart;
+            width = parentCount;
+        }
+        return index;
+    }
+
+    // Builds an image with compressed pages. The pages are packed greedily,
+    // so the number on each level is only known once that level is laid out;
+    // the layout is worked out first and the slabs filled in afterwards.
+    private static PagedIndex buildCompressed(BTree tree, int t) {
+        if (t < 2) {
+            throw new IllegalArgumentException("Compressed pages need a minimum degree of at least 2: " + t);
+        }
+        int pageSize = pageSize(t);
+        int size = (int) tree.size();
+        long[] keys = new long[size];
+        long[] values = new long[size];
+        BTreeCursor cursor = tree.range(Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int i = 0; cursor.next(); i++) {
+            keys[i] = cursor.key();
+            values[i] = cursor.recordId();
+        }
+
+        // Leaves: as many entries as fit, starting at each leaf's first entry
+        LongList leafStarts = new LongList();
+        for (int i = 0; i < size; ) {
+            leafStarts.add(i);
+            long valueMin = values[i];
+            long valueMax = values[i];
+            int n = 1;
+            while (i + n < size) {
+                long nextMin = Math.min(valueMin, values[i + n]);
+                long nextMax = Math.max(valueMax, values[i + n]);
+                int entryBytes = width(keys[i + n] - keys[i]) + width(nextMax - nextMin);
+                if (PACKED_OFFSET + (n + 1) * entryBytes > pageSize) {
+                    break;
+                }
+                valueMin = nextMin;
+                valueMax = nextMax;
+                n++;
+            }
+            i += n;
+        }
+        leafStarts.add(size);
+
+        // Internal levels, each from the lowest and highest key under each
+        // page of the level below
+        int leafCount = leafStarts.size() - 1;
+        long[] lows = new long[leafCount];
+        long[] highs = new long[leafCount];
+        for (int page = 0; page < leafCount; page++) {
+            lows[page] = keys[(int) leafStarts.get(page)];
+            highs[page] = keys[(int) leafStarts.get(page + 1) - 1];
+        }
+        List<long[]> levels = new ArrayList<>();
+        int pageCount = leafCount;
+        int width = leafCount;
+        while (width > 1) {
+            LongList starts = new LongList();
+            for (int i = 0; i < width; ) {
+                starts.add(i);
+                long base = separator(highs[i], lows[i + 1 < width ? i + 1 : i]);
+                int shift = 63;
+                int children = 1;
+                while (i + children < width) {
+                    long offset = separator(highs[i + children - 1], lows[i + children]) - base;
+                    int nextShift = offset == 0 ? shift : Math.min(shift, Long.numberOfTrailingZeros(offset));
+                    int separatorBytes = width(offset >>> nextShift);
+                    // Separators between this many + 1 children, plus their ids
+                    if (PACKED_OFFSET + children * separatorBytes + 4 * (children + 1) > pageSize) {
+                        break;
+                    }
+                    shift = nextShift;
+                    children++;
+                }
+                i += children;
+            }
+            starts.add(width);
+            long[] levelStarts = starts.toArray();
+            levels.add(levelStarts);
+            int parents = levelStarts.length - 1;
+            for (int page = 0; page < parents; page++) {
+                lows[page] = lows[(int) levelStarts[page]];
+                highs[page] = highs[(int) levelStarts[page + 1] - 1];
+            }
+            pageCount += parents;
+            width = parents;
+        }
+
+        ByteBuffer[] slabs = new ByteBuffer[slabCount(t, pageCount)];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(slabPages(t, pageCount, i) * pageSize).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        PagedIndex index = new PagedIndex(t, true, pageCount, pageCount - 1, size, slabs);
+        if (size == 0) {
+            return index;
+        }
+
+        for (int page = 0; page < leafCount; page++) {
+            ByteBuffer slab = index.slab(page);
+            int base = index.base(page);
+            int from = (int) leafStarts.get(page);
+            int n = (int) leafStarts.get(page + 1) - from;
+            long valueMin = Long.MAX_VALUE;
+            long valueMax = Long.MIN_VALUE;
+            for (int i = from; i < from + n; i++) {
+                valueMin = Math.min(valueMin, values[i]);
+                valueMax = Math.max(valueMax, values[i]);
+            }
+            int keyWidth = width(keys[from + n - 1] - keys[from]);
+            int valueWidth = width(valueMax - valueMin);
+            putHeader(slab, base, n, LEAF_FLAG, page + 1 < leafCount ? page + 1 : NO_PAGE, page > 0 ? page - 1 : NO_PAGE);
+            slab.putLong(base + KEY_BASE_OFFSET, keys[from]);
+            slab.putLong(base + VALUE_BASE_OFFSET, valueMin);
+            slab.put(base + KEY_WIDTH_OFFSET, (byte) keyWidth);
+            slab.put(base + VALUE_WIDTH_OFFSET, (byte) valueWidth);
+            slab.put(base + KEY_SHIFT_OFFSET, (byte) 0);
+            int valuesAt = base + PACKED_OFFSET + n * keyWidth;
+            for (int i = 0; i < n; i++) {
+                putPacked(slab, base + PACKED_OFFSET + i * keyWidth, keyWidth, keys[from + i] - keys[from]);
+                putPacked(slab, valuesAt + i * valueWidth, valueWidth, values[from + i] - valueMin);
+            }
+        }
+
+        // Each level's pages are consecutive, so the children of a page are a
+        // run of page ids on the level below
+        for (int i = 0; i < leafCount; i++) {
+            lows[i] = keys[(int) leafStarts.get(i)];
+            highs[i] = keys[(int) leafStarts.get(i + 1) - 1];
+        }
+        int levelStart = 0;
+        width = leafCount;
+        for (long[] levelStarts : levels) {
+            int parentStart = levelStart + width;
+            int parents = levelStarts.length - 1;
+            for (int parent = 0; parent < parents; parent++) {
+                int page = parentStart + parent;
+                ByteBuffer slab = index.slab(page);
+                int base = index.base(page);
+                int first = (int) levelStarts[parent];
+                int n = (int) levelStarts[parent + 1] - first - 1;
+                long[] separators = new long[n];
+                for (int j = 0; j < n; j++) {
+                    separators[j] = separator(highs[first + j], lows[first + j + 1]);
+                }
+                long keyBase = n > 0 ? separators[0] : 0;
+                int shift = 63;
+                for (long separator : separators) {
+                    if (separator != keyBase) {
+                        shift = Math.min(shift, Long.numberOfTrailingZeros(separator - keyBase));
+                    }
+                }
+                int keyWidth = width(n > 0 ? (separators[n - 1] - keyBase) >>> shift : 0);
+                putHeader(slab, base, n, 0, NO_PAGE, NO_PAGE);
+                slab.putLong(base + KEY_BASE_OFFSET, keyBase);
+                slab.put(base + KEY_WIDTH_OFFSET, (byte) keyWidth);
+                slab.put(base + KEY_SHIFT_OFFSET, (byte) shift);
+                int childrenAt = base + PACKED_OFFSET + n * keyWidth;
+                for (int j = 0; j < n; j++) {
+                    putPacked(slab, base + PACKED_OFFSET + j * keyWidth, keyWidth, (separators[j] - keyBase) >>> shift);
+                }
+                for (int j = 0; j <= n; j++) {
+                    slab.putInt(childrenAt + 4 * j, levelStart + first + j);
+                }
+                lows[parent] = lows[first];
+                highs[parent] = highs[first + n];
+            }
+            levelStart = parentStart;
+            width = parents;
+        }
+        return index;
+    }
+
+    // The value with the most trailing zero bits in (low, high], which splits
+    // keys up to low from keys from high on
+    private static long separator(long low, long high) {
+        for (int bits = 62; bits > 0; bits--) {
+            long rounded = high & (-1L << bits);
+            if (rounded > low) {
+                return rounded;
+            }
+        }
+        return high;
+    }
+
+    // Bytes needed for an unsigned offset: 1, 2, 4 or 8
+    private static int width(long offset) {
+        int bits = 64 - Long.numberOfLeadingZeros(offset);
+        return bits <= 8 ? 1 : bits <= 16 ? 2 : bits <= 32 ? 4 : 8;
+    }
+
+    private static void putHeader(ByteBuffer slab, int base, int n, int flags, int next, int prev) {
+        slab.putInt(base + N_OFFSET, n);
+        slab.putInt(base + FLAGS_OFFSET, flags);
+        slab.putInt(base + NEXT_OFFSET, next);
+        slab.putInt(base + PREV_OFFSET, prev);
+    }
+
+    private static void putPacked(ByteBuffer slab, int offset, int width, long value) {
+        switch (width) {
+            case 1:
+                slab.put(offset, (byte) value);
+                break;
+            case 2:
+                slab.putShort(offset, (short) value);
+                break;
+            case 4:
+                slab.putInt(offset, (int) value);
+                break;
+            default:
+                slab.putLong(offset, value);
+                break;
+        }
+    }
+
+    private static long getPacked(ByteBuffer slab, int offset, int width) {
+        switch (width) {
+            case 1:
+                return slab.get(offset) & 0xFFL;
+            case 2:
+                return slab.getShort(offset) & 0xFFFFL;
+            case 4:
+                return slab.getInt(offset) & 0xFFFFFFFFL;
+            default:
+                return slab.getLong(offset);
+        }
+    }
+
+    /**
+     * Writes the index to a page file, replacing any existing file.
+     *
+     * @param file - The page file to write
+     * @throws IOException if the file can't be written
+     */
+    void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_SIZE);
+            for (int page = 0; page < pageCount; page++) {
+                ByteBuffer buffer = pin(page).duplicate();
+                int base = base(page);
+                buffer.limit(base + pageSize).position(base);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                unpin(page);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, MAGIC);
+            header.putInt(8, FORMAT_VERSION);
+            header.putInt(12, t);
+            header.putInt(16, pageCount);
+            header.putInt(20, root);
+            header.putLong(24, size);
+            header.putInt(32, pagesChecksum());
+            header.putInt(36, compressed ? COMPRESSED_FLAG : 0);
+            header.putInt(HEADER_CHECKED_BYTES, headerChecksum(header));
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Maps a page file written by save(). The header is validated, but the
+     * pages are only read as searches touch them, so opening takes the same
+     * time whatever the size of the index. Call verify() to check the pages.
+     *
+     * @param file - The page file to open
+     * @return The index stored in the file
+     * @throws IOException if the file can't be read or its header is invalid
+     */
+    static PagedIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel, file);
+            int t = header.getInt(12);
+            int pageCount = header.getInt(16);
+
+            // Map the pages slab by slab, since one mapping is limited to 2GB
+            ByteBuffer[] slabs = new ByteBuffer[slabCount(t, pageCount)];
+            long position = HEADER_SIZE;
+            for (int i = 0; i < slabs.length; i++) {
+                long bytes = (long) slabPages(t, pageCount, i) * pageSize(t);
+                slabs[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                position += bytes;
+            }
+            boolean compressed = (header.getInt(36) & COMPRESSED_FLAG) != 0;
+            PagedIndex index = new PagedIndex(t, compressed, pageCount, header.getInt(20), header.getLong(24), slabs);
+            index.expectedChecksum = header.getInt(32);
+            return index;
+        }
+    }
+
+    /**
+     * Opens a page file written by save() for access through a buffer pool,
+     * for indexes larger than the memory they may use. Only frames pages are
+     * held in memory at a time. The file stays open until close().
+     *
+     * @param file   - The page file to open
+     * @param frames - Number of pages the buffer pool holds
+     * @param policy - Eviction policy for the buffer pool, sized for frames
+     * @return The index stored in the file
+     * @throws IOException if the file can't be read or its header is invalid
+     */
+    static PagedIndex open(Path file, int frames, EvictionPolicy policy) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readHeader(channel, file);
+            int t = header.getInt(12);
+            boolean compressed = (header.getInt(36) & COMPRESSED_FLAG) != 0;
+            PagedIndex index = new PagedIndex(t, compressed, header.getInt(16), header.getInt(20), header.getLong(24), null);
+            index.pool = new BufferPool(channel, HEADER_SIZE, pageSize(t), frames, policy);
+            index.channel = channel;
+            return index;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Reads and validates the header of a page file
+    private static ByteBuffer readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // Keep reading until the header is complete or the file ends
+        }
+        if (header.hasRemaining() || header.getLong(0) != MAGIC) {
+            throw new IOException(file + " is not a B+Tree page file");
+        }
+        if (header.getInt(8) != FORMAT_VERSION) {
+            throw new IOException(file + " has unsupported format version " + header.getInt(8));
+        }
+        if (header.getInt(HEADER_CHECKED_BYTES) != headerChecksum(header)) {
+            throw new IOException(file + " has a corrupt header");
+        }
+
+        long expectedLength = HEADER_SIZE + (long) header.getInt(16) * pageSize(header.getInt(12));
+        if (channel.size() != expectedLength) {
+            throw new IOException(file + " is " + channel.size() + " bytes, expected " + expectedLength);
+        }
+        return header;
+    }
+
+    /**
+     * Closes the page file of an index opened through a buffer pool. Indexes
+     * in memory or mapped from a file need no closing.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The buffer pool pages are read through, or null if the whole
+     *         index is in memory or mapped
+     */
+    BufferPool pool() {
+        return pool;
+    }
+
+    /**
+     * Checks the pages of an index opened from a page file against the
+     * checksum in its header. This reads every page.
+     *
+     * @return True if the pages match the checksum, or the index was not
+     *         opened from a file
+     */
+    boolean verify() {
+        return expectedChecksum == null || expectedChecksum == pagesChecksum();
+    }
+
+    // CRC32C of every page, in page ID order
+    private int pagesChecksum() {
+        CRC32C crc = new CRC32C();
+        for (int page = 0; page < pageCount; page++) {
+            ByteBuffer buffer = pin(page).duplicate();
+            int base = base(page);
+            buffer.limit(base + pageSize).position(base);
+            crc.update(buffer);
+            unpin(page);
+        }
+        return (int) crc.getValue();
+    }
+
+    // CRC32C of the header fields before the header checksum
+    private static int headerChecksum(ByteBuffer header) {
+        CRC32C crc = new CRC32C();
+        crc.update(header.array(), 0, HEADER_CHECKED_BYTES);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Looks up the recordId of a student.
+     *
+     * @param studentId - The studentId to search for
+     * @return The recordId, or -1 if the studentId is not in the index
+     */
+    long search(long studentId) {
+        if (size == 0) {
+            return -1;
+        }
+
+        int page = root;
+        ByteBuffer slab = pin(page);
+        int base = base(page);
+        while ((slab.getInt(base + FLAGS_OFFSET) & LEAF_FLAG) == 0) {
+            int child;
+            if (compressed) {
+                int n = slab.getInt(base + N_OFFSET);
+                int i = packedUpperBound(slab, base, studentId);
+                child = slab.getInt(base + PACKED_OFFSET + n * slab.get(base + KEY_WIDTH_OFFSET) + 4 * i);
+            } else {
+                int i = upperBound(slab, base, studentId);
+                child = slab.getInt(base + valuesOffset + 4 * i);
+            }
+            unpin(page);
+            page = child;
+            slab = pin(page);
+            base = base(page);
+        }
+
+        long recordId = -1;
+        int n = slab.getInt(base + N_OFFSET);
+        if (compressed) {
+            int i = packedLowerBound(slab, base, studentId);
+            if (i < n && packedKey(slab, base, i) == studentId) {
+                recordId = packedValue(slab, base, n, i);
+            }
+        } else {
+            int i = lowerBound(slab, base, studentId);
+            if (i < n && slab.getLong(base + KEYS_OFFSET + 8 * i) == studentId) {
+                recordId = slab.getLong(base + valuesOffset + 8 * i);
+            }
+        }
+        unpin(page);
+        return recordId;
+    }
+
+    /**
+     * Passes every recordId to the sink in studentId order.
+     *
+     * @param sink - Receives each recordId
+     */
+    void scan(LongConsumer sink) {
+        if (size == 0) {
+            return;
+        }
+        // Leaves are pages 0 to the first internal page, already in key order
+        for (int page = 0; page != NO_PAGE; ) {
+            ByteBuffer slab = pin(page);
+            int base = base(page);
+            int n = slab.getInt(base + N_OFFSET);
+            for (int i = 0; i < n; i++) {
+                sink.accept(compressed ? packedValue(slab, base, n, i) : slab.getLong(base + valuesOffset + 8 * i));
+            }
+            int next = slab.getInt(base + NEXT_OFFSET);
+            unpin(page);
+            page = next;
+        }
+    }
+
+    /**
+     * @return The number of [ key,recordId ] entries in the index
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return True if the pages are compressed
+     */
+    boolean compressed() {
+        return compressed;
+    }
+
+    /**
+     * @return The number of pages in the index
+     */
+    int pageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return The number of off-heap bytes holding the pages
+     */
+    long offHeapBytes() {
+        return (long) pageCount * pageSize;
+    }
+
+    // Buffer holding the page: its slab, or its buffer pool frame pinned
+    // until unpin() is called
+    private ByteBuffer pin(int page) {
+        return pool != null ? pool.pin(page) : slab(page);
+    }
+
+    private void unpin(int page) {
+        if (pool != null) {
+            pool.unpin(page, false);
+        }
+    }
+
+    // Slab holding the page
+    private ByteBuffer slab(int page) {
+        return slabs[page >>> slabShift];
+    }
+
+    // Byte offset of the page within the buffer returned by pin()
+    private int base(int page) {
+        return pool != null ? 0 : (page & ((1 << slabShift) - 1)) * pageSize;
+    }
+
+    // Index of the first key greater than the given key, as BTreeNode.upperBound
+    private static int upperBound(ByteBuffer slab, int base, long key) {
+        int n = slab.getInt(base + N_OFFSET);
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slab.getLong(base + KEYS_OFFSET + 8 * mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first key greater than or equal to the given key, as BTreeNode.lowerBound
+    private static int lowerBound(ByteBuffer slab, int base, long key) {
+        int n = slab.getInt(base + N_OFFSET);
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (slab.getLong(base + KEYS_OFFSET + 8 * mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Key i of a compressed page
+    private static long packedKey(ByteBuffer slab, int base, int i) {
+        int width = slab.get(base + KEY_WIDTH_OFFSET);
+        long offset = getPacked(slab, base + PACKED_OFFSET + i * width, width);
+        return slab.getLong(base + KEY_BASE_OFFSET) + (offset << slab.get(base + KEY_SHIFT_OFFSET));
+    }
+
+    // Value i of a compressed leaf with n keys
+    private static long packedValue(ByteBuffer slab, int base, int n, int i) {
+        int width = slab.get(base + VALUE_WIDTH_OFFSET);
+        int valuesAt = base + PACKED_OFFSET + n * slab.get(base + KEY_WIDTH_OFFSET);
+        return slab.getLong(base + VALUE_BASE_OFFSET) + getPacked(slab, valuesAt + i * width, width);
+    }
+
+    // upperBound for a compressed page
+    private static int packedUpperBound(ByteBuffer slab, int base, long key) {
+        int low = 0;
+        int high = slab.getInt(base + N_OFFSET);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (packedKey(slab, base, mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // lowerBound for a compressed page
+    private static int packedLowerBound(ByteBuffer slab, int base, long key) {
+        int low = 0;
+        int high = slab.getInt(base + N_OFFSET);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (packedKey(slab, base, mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Node store keeping the pages in a file, read and written through a
+ * BufferPool. Only the pool's frames are held in memory, so a BTree on this
+ * store can be larger than RAM: every node access pins the page, which reads
+ * it in if it is not resident, and unpins it straight after, so any unpinned
+ * page may be evicted and written back. New pages are appended to the file.
+ * <p>
+ * The file is a HEADER_SIZE byte header followed by PageNodeStore pages. The
+ * store is not thread-safe, since the pool is not.
+ */
+final class PooledNodeStore extends PageNodeStore {
+
+    static final int HEADER_SIZE = 64;
+    /** Identifies a node store file, "BTNODES1" in ASCII */
+    private static final long MAGIC = 0x42544E4F44455331L;
+    private static final int FORMAT_VERSION = 1;
+    /** Most zero bytes written at once when the file grows */
+    private static final int GROW_CHUNK = 1 << 20;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    /**
+     * Number of pages the file has room for, at least pageCount.
+     */
+    private int filePages;
+
+    private PooledNodeStore(int t, FileChannel channel, int frames, EvictionPolicy policy) throws IOException {
+        super(t);
+        this.channel = channel;
+        this.pool = new BufferPool(channel, HEADER_SIZE, pageSize, frames, policy);
+        this.filePages = (int) Math.max(0, (channel.size() - HEADER_SIZE) / pageSize);
+    }
+
+    /**
+     * Opens a node store file, creating it if it doesn't exist. The pages it
+     * holds are reused as the tree grows; a BTree built on the store starts
+     * out empty.
+     *
+     * @param file   - The node store file
+     * @param t      - The minimum degree the pages are sized for
+     * @param frames - Number of pages the buffer pool holds, at least 2 since
+     *               copies between nodes pin two pages at once
+     * @param policy - Eviction policy for the buffer pool, sized for frames
+     * @return The open store
+     * @throws IOException if the file can't be opened, or was written for
+     *                     another degree or is not a node store file
+     */
+    static PooledNodeStore open(Path file, int t, int frames, EvictionPolicy policy) throws IOException {
+        if (frames < 2) {
+            throw new IllegalArgumentException("A pooled node store needs at least 2 frames: " + frames);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                header.putLong(0, MAGIC);
+                header.putInt(8, FORMAT_VERSION);
+                header.putInt(12, t);
+                header.putInt(16, PagedIndex.pageSize(t));
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } else {
+                while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                    // Keep reading until the header is complete or the file ends
+                }
+                if (header.hasRemaining() || header.getLong(0) != MAGIC || header.getInt(8) != FORMAT_VERSION) {
+                    throw new IOException(file + " is not a node store file");
+                }
+                if (header.getInt(12) != t || header.getInt(16) != PagedIndex.pageSize(t)) {
+                    throw new IOException(file + " holds nodes of degree " + header.getInt(12) + ", not " + t);
+                }
+            }
+            return new PooledNodeStore(t, channel, frames, policy);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The buffer pool pages are read through
+     */
+    BufferPool pool() {
+        return pool;
+    }
+
+    /**
+     * Writes every dirty page back and forces the file to disk.
+     *
+     * @throws IOException if the file can't be written
+     */
+    void sync() throws IOException {
+        pool.flush();
+        channel.force(false);
+    }
+
+    /**
+     * Syncs and closes the file.
+     *
+     * @throws IOException if the file can't be written or closed
+     */
+    void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public boolean parallelBuild() {
+        return false;
+    }
+
+    @Override
+    ByteBuffer pin(int node) {
+        return pool.pin(node);
+    }
+
+    @Override
+    int offset(int node) {
+        return 0;
+    }
+
+    @Override
+    void unpin(int node, boolean dirty) {
+        pool.unpin(node, dirty);
+    }
+
+    // Appends zero pages until the file has room for pageCount pages, so the
+    // pool can read any of them
+    @Override
+    void grow(int pageCount) {
+        if (pageCount <= filePages) {
+            return;
+        }
+        long position = HEADER_SIZE + (long) filePages * pageSize;
+        long end = HEADER_SIZE + (long) pageCount * pageSize;
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(GROW_CHUNK, end - position));
+        try {
+            while (position < end) {
+                zeros.clear().limit((int) Math.min(zeros.capacity(), end - position));
+                while (zeros.hasRemaining()) {
+                    position += channel.write(zeros, position);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        filePages = pageCount;
+    }
+}
@@ -0,0 +1,374 @@
+import java.util.Arrays;
+
+/**
+ * Bounded cache of studentId -> recordId search results, for skewed lookup
+ * traffic where a few studentIds take most of the searches. Attach one with
+ * BTree.setCache(); the tree then answers repeated searches without a
+ * descent and drops a key's entry whenever it inserts or deletes the key.
+ * <p>
+ * The cache is split into segments, each an open-addressing table of
+ * primitive keys and values guarded by its own lock, so threads working on
+ * different keys rarely meet. A full segment evicts with CLOCK: every hit
+ * sets an entry's reference bit, and the hand clears bits until it finds an
+ * entry whose bit is already clear. Admission is TinyLFU: each segment counts
+ * how often keys are looked up in a small count-min sketch, and a new key
+ * only replaces the CLOCK victim if it has been looked up more often. A burst
+ * of one-off lookups, such as a scan, therefore can't flush the hot keys.
+ * The counts are halved every 10 lookups per entry, so popularity fades.
+ * A key's four counters share one long, as in Caffeine's sketch, so counting
+ * a lookup touches one cache line.
+ * <p>
+ * A search that misses takes a stamp before reading the tree and hands it
+ * back with the result. Invalidating any key in the segment moves the stamp
+ * on, and put() drops a result whose stamp is out of date, so a result read
+ * before a concurrent write is never cached after it.
+ */
+class SearchCache {
+
+    /** Returned by get() when the key isn't cached */
+    static final long MISS = Long.MIN_VALUE;
+
+    /** Slot states */
+    private static final byte EMPTY = 0;
+    private static final byte PRESENT = 1;
+    private static final byte REFERENCED = 2;
+
+    /** Largest value of a 4-bit sketch counter */
+    private static final int MAX_COUNT = 15;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    /**
+     * @param capacity - Most entries the cache holds
+     */
+    SearchCache(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param capacity    - Most entries the cache holds
+     * @param concurrency - Roughly how many threads use the cache at once.
+     *                    The cache is split into about this many segments,
+     *                    of at least 64 entries each.
+     */
+    SearchCache(int capacity, int concurrency) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(concurrency, capacity / 64)));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Looks up a key, and counts the lookup towards the key's popularity.
+     *
+     * @param key - The studentId
+     * @return The cached recordId, which may be -1 for a studentId that was
+     *         not in the tree, or MISS
+     */
+    long get(long key) {
+        long hash = mix(key);
+        return segment(hash).get(key, hash);
+    }
+
+    /**
+     * @param key - The studentId about to be read from the tree
+     * @return The stamp to pass to put() with the result
+     */
+    long stamp(long key) {
+        return segment(mix(key)).stamp;
+    }
+
+    /**
+     * Caches a search result, unless the key's segment is full and the key
+     * is less popular than the entry it would replace, or the key's segment
+     * was invalidated since the stamp was taken.
+     *
+     * @param key   - The studentId
+     * @param value - The recordId the tree returned, or -1
+     * @param stamp - What stamp() returned before the tree was read
+     */
+    void put(long key, long value, long stamp) {
+        long hash = mix(key);
+        segment(hash).put(key, value, hash, stamp);
+    }
+
+    /**
+     * Drops a key's entry. Call it after changing the key in the tree.
+     *
+     * @param key - The studentId
+     */
+    void invalidate(long key) {
+        long hash = mix(key);
+        segment(hash).invalidate(key, hash);
+    }
+
+    /**
+     * Drops every entry. The popularity counts are kept.
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return The number of entries cached
+     */
+    int size() {
+        return (int) sum(STAT_SIZE);
+    }
+
+    long hits() {
+        return sum(STAT_HITS);
+    }
+
+    long misses() {
+        return sum(STAT_MISSES);
+    }
+
+    /**
+     * @return Entries pushed out to make room for a more popular key
+     */
+    long evictions() {
+        return sum(STAT_EVICTIONS);
+    }
+
+    /**
+     * @return Results not cached because the key was less popular than the
+     *         entry it would have replaced
+     */
+    long rejections() {
+        return sum(STAT_REJECTIONS);
+    }
+
+    /**
+     * @return The fraction of lookups that hit, or 0 if there were none
+     */
+    double hitRate() {
+        long hitCount = hits();
+        long total = hitCount + misses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d misses=%d hitRate=%.1f%% evictions=%d rejections=%d",
+            size(), hits(), misses(), 100 * hitRate(), evictions(), rejections());
+    }
+
+    private static final int STAT_SIZE = 0;
+    private static final int STAT_HITS = 1;
+    private static final int STAT_MISSES = 2;
+    private static final int STAT_EVICTIONS = 3;
+    private static final int STAT_REJECTIONS = 4;
+
+    // Adds up one of the counters every segment keeps under its lock
+    private long sum(int stat) {
+        long sum = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                sum += stat == STAT_SIZE ? segment.size
+                    : stat == STAT_HITS ? segment.hits
+                    : stat == STAT_MISSES ? segment.misses
+                    : stat == STAT_EVICTIONS ? segment.evictions : segment.rejections;
+            }
+        }
+        return sum;
+    }
+
+    private Segment segment(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    // Finalizer of SplitMix64, so nearby studentIds spread over the table
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // One lock's worth of the cache
+    private static final class Segment {
+
+        private final int capacity;
+        /** Key of slot i at 2i, and its value at 2i + 1 */
+        private final long[] entries;
+        private final byte[] states;
+        private final int mask;
+        private int size;
+        private int hand;
+
+        /** Sixteen 4-bit counters per long, four of them for each key */
+        private final long[] sketch;
+        private final int sketchMask;
+        private int lookups;
+        private final int resetAfter;
+
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long rejections;
+
+        /** Moved on by every invalidation */
+        private volatile long stamp;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            // Keep the table at most half full so probe runs stay short
+            int slots = Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+            entries = new long[2 * slots];
+            states = new byte[slots];
+            mask = slots - 1;
+            // At least two longs per entry, to keep collisions rare
+            int width = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+            sketch = new long[width];
+            sketchMask = width - 1;
+            resetAfter = 10 * Math.max(16, capacity);
+        }
+
+        synchronized long get(long key, long hash) {
+            record(hash);
+            int i = find(key, hash);
+            if (i < 0) {
+                misses++;
+                return MISS;
+            }
+            hits++;
+            states[i] = REFERENCED;
+            return entries[2 * i + 1];
+        }
+
+        synchronized void put(long key, long value, long hash, long expectedStamp) {
+            if (stamp != expectedStamp) {
+                return;
+            }
+            int i = find(key, hash);
+            if (i >= 0) {
+                entries[2 * i + 1] = value;
+                return;
+            }
+            if (size == capacity) {
+                int victim = victim();
+                if (frequency(hash) <= frequency(mix(entries[2 * victim]))) {
+                    rejections++;
+                    return;
+                }
+                remove(victim);
+                evictions++;
+            }
+            i = (int) hash & mask;
+            while (states[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            entries[2 * i] = key;
+            entries[2 * i + 1] = value;
+            states[i] = PRESENT;
+            size++;
+        }
+
+        synchronized void invalidate(long key, long hash) {
+            stamp++;
+            int i = find(key, hash);
+            if (i >= 0) {
+                remove(i);
+            }
+        }
+
+        synchronized void clear() {
+            stamp++;
+            Arrays.fill(states, EMPTY);
+            size = 0;
+        }
+
+        // Slot holding the key, or -1
+        private int find(long key, long hash) {
+            for (int i = (int) hash & mask; states[i] != EMPTY; i = (i + 1) & mask) {
+                if (entries[2 * i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Sweeps the hand to an entry whose reference bit is clear
+        private int victim() {
+            while (true) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if (states[i] == PRESENT) {
+                    return i;
+                }
+                if (states[i] == REFERENCED) {
+                    states[i] = PRESENT;
+                }
+            }
+        }
+
+        // Empties a slot, moving later entries of its probe run back into
+        // the gap, as LongLongMap does
+        private void remove(int gap) {
+            int j = gap;
+            while (true) {
+                j = (j + 1) & mask;
+                if (states[j] == EMPTY) {
+                    break;
+                }
+                int home = (int) mix(entries[2 * j]) & mask;
+                // Move the entry if its home slot is not between gap and j
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    entries[2 * gap] = entries[2 * j];
+                    entries[2 * gap + 1] = entries[2 * j + 1];
+                    states[gap] = states[j];
+                    gap = j;
+                }
+            }
+            states[gap] = EMPTY;
+            size--;
+        }
+
+        // Counts a lookup in each of the key's counters, halving every
+        // counter once enough lookups have been counted
+        private void record(long hash) {
+            long h = hash * 0x9E3779B97F4A7C15L;
+            int block = (int) (h >>> 32) & sketchMask;
+            long word = sketch[block];
+            for (int row = 0; row < 4; row++) {
+                int shift = counterShift(h, row);
+                if (((word >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                    word += 1L << shift;
+                }
+            }
+            sketch[block] = word;
+            if (++lookups == resetAfter) {
+                for (int i = 0; i < sketch.length; i++) {
+                    sketch[i] = (sketch[i] >>> 1) & 0x7777_7777_7777_7777L;
+                }
+                lookups /= 2;
+            }
+        }
+
+        // Smallest of the key's counters, an estimate of its lookups
+        private int frequency(long hash) {
+            long h = hash * 0x9E3779B97F4A7C15L;
+            long word = sketch[(int) (h >>> 32) & sketchMask];
+            int min = MAX_COUNT;
+            for (int row = 0; row < 4; row++) {
+                min = Math.min(min, (int) (word >>> counterShift(h, row)) & MAX_COUNT);
+            }
+            return min;
+        }
+
+        // Bit offset of a key's counter for the row: row r picks one of the
+        // four counters in the r-th quarter of the long
+        private static int counterShift(long h, int row) {
+            return 16 * row + 4 * (int) ((h >>> (2 * row)) & 3);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Secondary indexes on the major, level and age of every student, each a
+ * B+Tree keyed on (attribute, studentId) -> recordId.
+ * <p>
+ * The attribute is the high 32 bits of a key and the studentId the low 32,
+ * so the students sharing a value are one run of the tree in studentId
+ * order, and a predicate is answered by one cursor over the leaf chain
+ * without reading the data file. Majors and levels are replaced by codes in
+ * the order they are first seen, so they can only be matched for equality.
+ * Ages keep their order and can also be matched by range.
+ * <p>
+ * StudentDatabase keeps the indexes in step with every insert and delete of
+ * a row. Like the BTree, they are not thread-safe.
+ */
+class SecondaryIndexes {
+
+    /** Largest studentId that fits in the low half of a key */
+    static final long MAX_STUDENT_ID = 0xFFFF_FFFFL;
+    /** Distinct majors or levels that can be given a code */
+    private static final int MAX_CODES = 1 << 16;
+
+    private final BTree majors;
+    private final BTree levels;
+    private final BTree ages;
+
+    private final Map<String, Integer> majorCodes = new HashMap<>();
+    private final Map<String, Integer> levelCodes = new HashMap<>();
+    /**
+     * studentId -> the student's major code, level code and age, packed by
+     * pack(), so a delete can find the student's keys.
+     */
+    private final LongLongMap attributes;
+
+    private SecondaryIndexes(int degree, int expectedSize) {
+        this.majors = new BTree(degree);
+        this.levels = new BTree(degree);
+        this.ages = new BTree(degree);
+        this.attributes = new LongLongMap(expectedSize);
+    }
+
+    /**
+     * Passes every row of a table to a consumer.
+     */
+    @FunctionalInterface
+    interface Rows {
+        void forEach(Consumer<Student> consumer) throws IOException;
+    }
+
+    /**
+     * Builds the indexes over the existing rows of a table. The rows are read
+     * once, and each index is then sorted and bulk loaded. A studentId on
+     * more than one row is indexed by its last row, the one
+     * StudentDatabase.open() keeps.
+     *
+     * @param degree - Minimum degree of each B+Tree
+     * @param rows   - The rows, with their recordIds set
+     * @param pool   - Pool to sort and load on
+     * @return The indexes
+     * @throws IOException              if the rows can't be read
+     * @throws IllegalArgumentException if a studentId is negative or above
+     *                                  MAX_STUDENT_ID
+     */
+    static SecondaryIndexes build(int degree, Rows rows, ForkJoinPool pool) throws IOException {
+        LongList studentIds = new LongList();
+        LongList recordIds = new LongList();
+        LongList packed = new LongList();
+        SecondaryIndexes indexes = new SecondaryIndexes(degree, 16);
+        rows.forEach(s -> {
+            check(s);
+            studentIds.add(s.studentId);
+            recordIds.add(s.recordId);
+            packed.add(indexes.pack(s));
+        });
+
+        int rowCount = studentIds.size();
+        LongLongMap lastRows = new LongLongMap(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            lastRows.put(studentIds.get(i), i);
+        }
+        int count = lastRows.size();
+        long[] majorKeys = new long[count];
+        long[] levelKeys = new long[count];
+        long[] ageKeys = new long[count];
+        long[] rowIds = new long[count];
+        int kept = 0;
+        for (int i = 0; i < rowCount; i++) {
+            long studentId = studentIds.get(i);
+            if (lastRows.get(studentId, -1) != i) {
+                continue;
+            }
+            long attributes = packed.get(i);
+            indexes.attributes.put(studentId, attributes);
+            majorKeys[kept] = key(major(attributes), studentId);
+            levelKeys[kept] = key(level(attributes), studentId);
+            ageKeys[kept] = key(age(attributes), studentId);
+            rowIds[kept++] = recordIds.get(i);
+        }
+        load(indexes.majors, majorKeys, rowIds.clone(), count, pool);
+        load(indexes.levels, levelKeys, rowIds.clone(), count, pool);
+        load(indexes.ages, ageKeys, rowIds, count, pool);
+        return indexes;
+    }
+
+    /**
+     * Checks that a student can be indexed, so an insert can be refused before
+     * it is logged.
+     *
+     * @param student - The student to check
+     * @throws IllegalArgumentException if the studentId is negative or above
+     *                                  MAX_STUDENT_ID
+     */
+    static void check(Student student) {
+        if (student.studentId < 0 || student.studentId > MAX_STUDENT_ID) {
+            throw new IllegalArgumentException("Student ID can't be indexed: " + student.studentId);
+        }
+    }
+
+    /**
+     * Adds a new row to every index.
+     *
+     * @param student - The student, with its recordId set
+     */
+    void add(Student student) {
+        check(student);
+        long attributes = pack(student);
+        this.attributes.put(student.studentId, attributes);
+        majors.insert(key(major(attributes), student.studentId), student.recordId);
+        levels.insert(key(level(attributes), student.studentId), student.recordId);
+        ages.insert(key(age(attributes), student.studentId), student.recordId);
+    }
+
+    /**
+     * Removes a deleted row from every index.
+     *
+     * @param studentId - The studentId of the row
+     * @return True if the student was indexed
+     */
+    boolean remove(long studentId) {
+        if (!this.attributes.containsKey(studentId)) {
+            return false;
+        }
+        long attributes = this.attributes.get(studentId, 0);
+        this.attributes.remove(studentId);
+        majors.remove(key(major(attributes), studentId));
+        levels.remove(key(level(attributes), studentId));
+        ages.remove(key(age(attributes), studentId));
+        return true;
+    }
+
+    /**
+     * Opens a cursor over the students with the given major, in studentId
+     * order. The cursor's recordId() is the row; studentId() turns its key()
+     * back into the studentId.
+     *
+     * @param major - The major to match
+     * @return A cursor positioned before the first match
+     */
+    BTreeCursor major(String major) {
+        return equal(majors, majorCodes.get(major));
+    }
+
+    /**
+     * Opens a cursor over the students at the given level, in studentId
+     * order.
+     *
+     * @param level - The level to match
+     * @return A cursor positioned before the first match
+     */
+    BTreeCursor level(String level) {
+        return equal(levels, levelCodes.get(level));
+    }
+
+    /**
+     * Opens a cursor over the students aged between low and high, inclusive,
+     * in order of age and then studentId.
+     *
+     * @param low  - The youngest age to match
+     * @param high - The oldest age to match
+     * @return A cursor positioned before the first match
+     */
+    BTreeCursor age(int low, int high) {
+        if (low > high) {
+            return ages.range(1, 0);
+        }
+        return ages.range(key(low, 0), key(high, MAX_STUDENT_ID));
+    }
+
+    /**
+     * @param key - A key returned by one of the cursors
+     * @return The studentId it belongs to
+     */
+    static long studentId(long key) {
+        return key & MAX_STUDENT_ID;
+    }
+
+    /**
+     * @return The number of students indexed
+     */
+    int size() {
+        return attributes.size();
+    }
+
+    // Every key of a code, or an empty cursor for a value never seen
+    private static BTreeCursor equal(BTree tree, Integer code) {
+        if (code == null) {
+            return tree.range(1, 0);
+        }
+        return tree.range(key(code, 0), key(code, MAX_STUDENT_ID));
+    }
+
+    private static void load(BTree tree, long[] keys, long[] recordIds, int count, ForkJoinPool pool) {
+        StudentCsv.sort(keys, recordIds, count, pool);
+        tree.bulkLoad(keys, recordIds, count, 0.9, pool);
+    }
+
+    // A negative attribute gives a negative key, so keys sort by attribute and
+    // then studentId
+    private static long key(long attribute, long studentId) {
+        return attribute << 32 | studentId;
+    }
+
+    // Major code in the top 16 bits, level code in the next 16 and the age in
+    // the low 32
+    private long pack(Student s) {
+        return (long) code(majorCodes, s.major) << 48
+            | (long) code(levelCodes, s.level) << 32
+            | Integer.toUnsignedLong(s.age);
+    }
+
+    private static long major(long attributes) {
+        return attributes >>> 48;
+    }
+
+    private static long level(long attributes) {
+        return (attributes >>> 32) & 0xFFFF;
+    }
+
+    private static long age(long attributes) {
+        return (int) attributes;
+    }
+
+    private static int code(Map<String, Integer> codes, String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            if (codes.size() == MAX_CODES) {
+                throw new IllegalStateException("More than " + MAX_CODES + " distinct values to index");
+            }
+            code = codes.size();
+            codes.put(value, code);
+        }
+        return code;
+    }
+}
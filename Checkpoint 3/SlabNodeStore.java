@@ -0,0 +1,95 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Node store keeping the pages in direct ByteBuffer slabs outside the Java
+ * heap. However large the tree, the heap holds only the slab objects, so the
+ * GC has nothing to mark or copy for it, and each node's keys sit in one run
+ * of bytes instead of behind an object and an array reference.
+ * <p>
+ * A slab holds a power of two pages, about SLAB_BYTES in all. Slabs are added
+ * as the tree grows and kept by clear() for the next build. MappedNodeStore
+ * maps them from a file instead.
+ */
+class SlabNodeStore extends PageNodeStore {
+
+    /**
+     * Target size of each slab in bytes.
+     */
+    private static final int SLAB_BYTES = 1 << 20;
+
+    /**
+     * log2 of the number of pages per slab.
+     */
+    private final int slabShift;
+    private final int slabMask;
+    private ByteBuffer[] slabs = new ByteBuffer[8];
+    private int slabCount;
+
+    SlabNodeStore(int t) {
+        super(t);
+        int shift = 0;
+        while ((2L << shift) * pageSize <= SLAB_BYTES) {
+            shift++;
+        }
+        this.slabShift = shift;
+        this.slabMask = (1 << shift) - 1;
+    }
+
+    /**
+     * @return The bytes allocated off the heap for the slabs
+     */
+    long offHeapBytes() {
+        return (long) slabCount * slabBytes();
+    }
+
+    /**
+     * @return The size of each slab in bytes, a whole number of pages
+     */
+    final int slabBytes() {
+        return (slabMask + 1) * pageSize;
+    }
+
+    /**
+     * Allocates the memory for a new slab, slabBytes() long.
+     *
+     * @param index - The slab's position, 0 for the one holding page 0
+     * @return The slab
+     */
+    ByteBuffer newSlab(int index) {
+        return ByteBuffer.allocateDirect(slabBytes());
+    }
+
+    @Override
+    public boolean parallelBuild() {
+        return true;
+    }
+
+    @Override
+    final ByteBuffer pin(int node) {
+        return slabs[node >>> slabShift];
+    }
+
+    @Override
+    final int offset(int node) {
+        return (node & slabMask) * pageSize;
+    }
+
+    @Override
+    void unpin(int node, boolean dirty) {
+        // Slabs never move or get evicted
+    }
+
+    @Override
+    final void grow(int pageCount) {
+        int needed = (int) (((long) pageCount + slabMask) >>> slabShift);
+        if (needed > slabs.length) {
+            slabs = Arrays.copyOf(slabs, Math.max(needed, slabs.length * 2));
+        }
+        while (slabCount < needed) {
+            slabs[slabCount] = newSlab(slabCount).order(ByteOrder.LITTLE_ENDIAN);
+            slabCount++;
+        }
+    }
+}
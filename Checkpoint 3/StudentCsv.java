@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Streaming reader for student.csv: studentId,name,major,level,age,recordId
+ * <p>
+ * The file is memory-mapped and parsed in place. Numbers go straight from the
+ * mapped bytes into primitives, and only the rows handed out as Student
+ * objects decode any Strings. Empty lines are skipped.
+ * <p>
+ * forEach() and forEachStudent() stream the rows to a callback in file order,
+ * so a caller can insert them as they are read. read() parses the indexed
+ * columns in parallel chunks on a fork-join pool and sorts them by studentId,
+ * ready for BTree.bulkLoad.
+ */
+class StudentCsv {
+
+    /** Smallest chunk worth a task of its own */
+    private static final long MIN_CHUNK = 1 << 20;
+    /** Largest region mapped at once */
+    private static final long MAX_CHUNK = 1 << 30;
+    /** Extra bytes mapped past the end of a chunk to finish its last line */
+    private static final int TAIL = 4096;
+    /** Ranges this small are sorted without splitting further */
+    private static final int SORT_THRESHOLD = 1 << 13;
+
+    /** A file with no rows */
+    static final StudentCsv EMPTY = new StudentCsv(new long[0], new long[0], 0);
+
+    /**
+     * Student IDs in ascending order.
+     */
+    final long[] studentIds;
+    /**
+     * Record IDs matching studentIds by position.
+     */
+    final long[] recordIds;
+    /**
+     * Number of rows read.
+     */
+    final int count;
+
+    /**
+     * Receives the indexed columns of each row.
+     */
+    interface KeyConsumer {
+        void accept(long studentId, long recordId);
+    }
+
+    private StudentCsv(long[] studentIds, long[] recordIds, int count) {
+        this.studentIds = studentIds;
+        this.recordIds = recordIds;
+        this.count = count;
+    }
+
+    /**
+     * Streams the studentId and recordId of every row, in file order.
+     *
+     * @param file     - The CSV file
+     * @param consumer - Receives each row's columns
+     * @throws IOException           if the file can't be read
+     * @throws NumberFormatException if a studentId or recordId is not a number
+     */
+    static void forEach(Path file, KeyConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            for (long start = 0; start < fileSize; start += MAX_CHUNK) {
+                parseRows(channel, start, Math.min(fileSize, start + MAX_CHUNK), fileSize,
+                    (buffer, from, to) -> parseKeys(buffer, from, to, consumer));
+            }
+        }
+    }
+
+    /**
+     * Streams every row as a Student, in file order.
+     *
+     * @param file     - The CSV file
+     * @param consumer - Receives each student
+     * @throws IOException           if the file can't be read
+     * @throws NumberFormatException if a number column is not a number
+     */
+    static void forEachStudent(Path file, Consumer<Student> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            for (long start = 0; start < fileSize; start += MAX_CHUNK) {
+                parseRows(channel, start, Math.min(fileSize, start + MAX_CHUNK), fileSize,
+                    (buffer, from, to) -> consumer.accept(parseStudent(buffer, from, to)));
+            }
+        }
+    }
+
+    /**
+     * Reads the indexed columns of every row, parsing chunks of the file in
+     * parallel, and sorts them by studentId.
+     *
+     * @param file - The CSV file
+     * @param pool - The pool to parse and sort on
+     * @return The columns, sorted by studentId
+     * @throws IOException           if the file can't be read
+     * @throws NumberFormatException if a studentId or recordId is not a number
+     */
+    static StudentCsv read(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long chunkSize = Math.min(MAX_CHUNK,
+                Math.max(MIN_CHUNK, fileSize / (pool.getParallelism() * 4L) + 1));
+            List<ChunkTask> tasks = new ArrayList<>();
+            for (long start = 0; start < fileSize; start += chunkSize) {
+                tasks.add(new ChunkTask(channel, start, Math.min(fileSize, start + chunkSize), fileSize));
+            }
+            try {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // Join the chunks in file order
+            int count = 0;
+            for (ChunkTask task : tasks) {
+                count += task.studentIds.size();
+            }
+            long[] studentIds = new long[count];
+            long[] recordIds = new long[count];
+            int pos = 0;
+            boolean sorted = true;
+            for (ChunkTask task : tasks) {
+                int n = task.studentIds.size();
+                if (n > 0 && pos > 0 && studentIds[pos - 1] > task.studentIds.get(0)) {
+                    sorted = false;
+                }
+                System.arraycopy(task.studentIds.toArray(), 0, studentIds, pos, n);
+                System.arraycopy(task.recordIds.toArray(), 0, recordIds, pos, n);
+                sorted &= task.sorted;
+                pos += n;
+            }
+
+            // Rows are usually appended in no particular order, but a file
+            // written from the index is already sorted
+            if (!sorted) {
+                sort(studentIds, recordIds, count, pool);
+            }
+            return new StudentCsv(studentIds, recordIds, count);
+        }
+    }
+
+    /**
+     * Sorts the first count keys ascending, moving each value with its key.
+     * Equal keys keep their order.
+     *
+     * @param keys   - The keys to sort
+     * @param values - Values matching keys by position
+     * @param count  - Number of pairs to sort
+     * @param pool   - The pool to sort on
+     */
+    static void sort(long[] keys, long[] values, int count, ForkJoinPool pool) {
+        SortTask task = new SortTask(keys, values, new long[count], new long[count], 0, count);
+        if (count <= SORT_THRESHOLD) {
+            // Too small to split, so skip the hand-off to the pool
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Keeps only the last pair of each run of equal keys.
+     *
+     * @param keys   - Keys in ascending order, equal keys in row order
+     * @param values - Values matching keys by position
+     * @param count  - Number of pairs
+     * @return The number of pairs left, at the front of the arrays
+     * @see #dropDuplicates(long[], long[], int, LongConsumer)
+     */
+    static int dropDuplicates(long[] keys, long[] values, int count) {
+        return dropDuplicates(keys, values, count, value -> { });
+    }
+
+    /**
+     * Keeps only the last pair of each run of equal keys, so a studentId on
+     * more than one row belongs to its last row. That is the row an update
+     * leaves current: StudentDatabase treats an insert of an existing
+     * studentId as an update and appends the new row to student.csv. The
+     * original insert loop did not pick a row on purpose; it kept every pair
+     * in the tree, and search usually found the first.
+     *
+     * @param keys    - Keys in ascending order, equal keys in row order
+     * @param values  - Values matching keys by position
+     * @param count   - Number of pairs
+     * @param dropped - Receives the value of each pair that is dropped
+     * @return The number of pairs left, at the front of the arrays
+     */
+    static int dropDuplicates(long[] keys, long[] values, int count, LongConsumer dropped) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && keys[i] == keys[i + 1]) {
+                dropped.accept(values[i]);
+                continue;
+            }
+            keys[kept] = keys[i];
+            values[kept++] = values[i];
+        }
+        return kept;
+    }
+
+    // Receives the bytes [from, to) of a non-empty line, without its line end
+    private interface LineHandler {
+        void line(ByteBuffer buffer, int from, int to);
+    }
+
+    // Passes each non-empty line that starts in [start, end) of the file to
+    // the handler. The region is mapped, plus enough beyond it to finish its
+    // last line.
+    private static void parseRows(FileChannel channel, long start, long end, long fileSize,
+            LineHandler handler) throws IOException {
+        // Map from the byte before the chunk, to tell whether a row starts
+        // exactly at the chunk boundary
+        long bufferStart = start == 0 ? 0 : start - 1;
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, bufferStart,
+            Math.min(fileSize, end + TAIL) - bufferStart);
+        int limit = buffer.limit();
+        int p = 0;
+        if (start > 0) {
+            while (p < limit && buffer.get(p) != '\n') {
+                p++;
+            }
+            if (p == limit) {
+                // No row starts in this chunk
+                return;
+            }
+            p++;
+        }
+
+        while (bufferStart + p < end) {
+            int lineEnd = p;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == limit && bufferStart + lineEnd < fileSize) {
+                // The line runs past what was mapped; map further
+                bufferStart += p;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, bufferStart,
+                    Math.min(fileSize - bufferStart, 2L * limit));
+                limit = buffer.limit();
+                p = 0;
+                continue;
+            }
+            int contentEnd = lineEnd > p && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd > p) {
+                handler.line(buffer, p, contentEnd);
+            }
+            p = lineEnd + 1;
+        }
+    }
+
+    // Parses the first and sixth fields of a line
+    private static void parseKeys(ByteBuffer buffer, int from, int to, KeyConsumer consumer) {
+        int idEnd = nextComma(buffer, from, to);
+        int recordStart = from;
+        for (int field = 0; field < 5; field++) {
+            recordStart = nextComma(buffer, recordStart, to) + 1;
+            if (recordStart > to) {
+                throw new ArrayIndexOutOfBoundsException("Row has " + (field + 1) + " fields: "
+                    + decode(buffer, from, to));
+            }
+        }
+        consumer.accept(parseLong(buffer, from, idEnd), parseLong(buffer, recordStart, nextComma(buffer, recordStart, to)));
+    }
+
+    // Parses every field of a line
+    private static Student parseStudent(ByteBuffer buffer, int from, int to) {
+        int[] ends = new int[6];
+        int fieldStart = from;
+        for (int field = 0; field < 6; field++) {
+            if (fieldStart > to) {
+                throw new ArrayIndexOutOfBoundsException("Row has " + field + " fields: "
+                    + decode(buffer, from, to));
+            }
+            ends[field] = nextComma(buffer, fieldStart, to);
+            fieldStart = ends[field] + 1;
+        }
+        long studentId = parseLong(buffer, from, ends[0]);
+        String studentName = decode(buffer, ends[0] + 1, ends[1]);
+        String major = decode(buffer, ends[1] + 1, ends[2]);
+        String level = decode(buffer, ends[2] + 1, ends[3]);
+        long age = parseLong(buffer, ends[3] + 1, ends[4]);
+        if (age != (int) age) {
+            // Out of range for an int, so let Integer.parseInt say so
+            Integer.parseInt(decode(buffer, ends[3] + 1, ends[4]));
+        }
+        long recordId = parseLong(buffer, ends[4] + 1, ends[5]);
+        return new Student(studentId, (int) age, studentName, major, level, recordId);
+    }
+
+    // Index of the next comma at or after from, or to if there is none
+    private static int nextComma(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while (i < to && buffer.get(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    // Parses the rows that start in [start, end) of the file
+    @SuppressWarnings("serial")
+    private static final class ChunkTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long fileSize;
+
+        final LongList studentIds = new LongList();
+        final LongList recordIds = new LongList();
+        boolean sorted = true;
+
+        ChunkTask(FileChannel channel, long start, long end, long fileSize) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.fileSize = fileSize;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                parseRows(channel, start, end, fileSize, (buffer, from, to) -> parseKeys(buffer, from, to, this::add));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void add(long studentId, long recordId) {
+            int size = studentIds.size();
+            if (size > 0 && studentIds.get(size - 1) > studentId) {
+                sorted = false;
+            }
+            studentIds.add(studentId);
+            recordIds.add(recordId);
+        }
+    }
+
+    // Parses a decimal long from bytes [from, to), as Long.parseLong does
+    private static long parseLong(ByteBuffer buffer, int from, int to) {
+        boolean negative = from < to && buffer.get(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to || to - i > 19) {
+            return slowParse(buffer, from, to);
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return slowParse(buffer, from, to);
+            }
+            value = value * 10 + digit;
+        }
+        // 19 digits may have overflowed
+        return value < 0 ? slowParse(buffer, from, to) : negative ? -value : value;
+    }
+
+    // Leaves the edge cases and the error message to Long.parseLong
+    private static long slowParse(ByteBuffer buffer, int from, int to) {
+        return Long.parseLong(decode(buffer, from, to));
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Merge sort of [from, to), using the scratch arrays for merging. The
+    // halves are sorted in parallel.
+    @SuppressWarnings("serial")
+    private static final class SortTask extends RecursiveAction {
+        private final long[] keys;
+        private final long[] values;
+        private final long[] scratchKeys;
+        private final long[] scratchValues;
+        private final int from;
+        private final int to;
+
+        SortTask(long[] keys, long[] values, long[] scratchKeys, long[] scratchValues, int from, int to) {
+            this.keys = keys;
+            this.values = values;
+            this.scratchKeys = scratchKeys;
+            this.scratchValues = scratchValues;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SORT_THRESHOLD) {
+                insertionMergeSort(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(keys, values, scratchKeys, scratchValues, from, mid),
+                new SortTask(keys, values, scratchKeys, scratchValues, mid, to));
+            merge(from, mid, to);
+        }
+
+        // Sorts a small range: insertion sort of short runs, then merges
+        private void insertionMergeSort(int from, int to) {
+            int run = 32;
+            for (int start = from; start < to; start += run) {
+                int end = Math.min(to, start + run);
+                for (int i = start + 1; i < end; i++) {
+                    long key = keys[i];
+                    long value = values[i];
+                    int j = i - 1;
+                    while (j >= start && keys[j] > key) {
+                        keys[j + 1] = keys[j];
+                        values[j + 1] = values[j];
+                        j--;
+                    }
+                    keys[j + 1] = key;
+                    values[j + 1] = value;
+                }
+            }
+            for (int width = run; width < to - from; width *= 2) {
+                for (int start = from; start + width < to; start += 2 * width) {
+                    merge(start, start + width, Math.min(to, start + 2 * width));
+                }
+            }
+        }
+
+        // Merges the sorted runs [from, mid) and [mid, to)
+        private void merge(int from, int mid, int to) {
+            if (keys[mid - 1] <= keys[mid]) {
+                return;
+            }
+            System.arraycopy(keys, from, scratchKeys, from, mid - from);
+            System.arraycopy(values, from, scratchValues, from, mid - from);
+            int i = from;
+            int j = mid;
+            int k = from;
+            while (i < mid && j < to) {
+                if (scratchKeys[i] <= keys[j]) {
+                    keys[k] = scratchKeys[i];
+                    values[k++] = scratchValues[i++];
+                } else {
+                    keys[k] = keys[j];
+                    values[k++] = values[j++];
+                }
+            }
+            System.arraycopy(scratchKeys, i, keys, k, mid - i);
+            System.arraycopy(scratchValues, i, values, k, mid - i);
+        }
+    }
+}
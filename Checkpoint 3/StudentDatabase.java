@@ -0,0 +1,737 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The student table: rows in student.csv (or the heap file) indexed by the
+ * B+Tree on studentId.
+ * <p>
+ * Inserts and deletes are written to the write-ahead log before they are
+ * applied, so a crash between updating the tree and updating the data file
+ * is repaired on the next open, which replays the log. If a data file write
+ * fails after its operation was logged, the database refuses further writes
+ * and checkpoints, so the log is kept and the next open replays it.
+ * <p>
+ * The B+Tree lives in the index file, a MappedNodeStore. Each checkpoint
+ * saves it with a stamp of the log position and the data file, after the
+ * data file is synced and before the log is emptied. open() uses the saved
+ * tree as it is when the stamp still matches, so a restart after a clean
+ * close serves search() without reading the data file. Otherwise, such as
+ * after a crash or when the data file was changed outside the database, the
+ * tree is rebuilt from the data file before the log is replayed.
+ */
+class StudentDatabase {
+
+    static final String CSV_FILE = "Student.csv";
+    static final String HEAP_FILE = "Student.heap";
+    static final String LOG_FILE = "Student.wal";
+    static final String INDEX_FILE = "Student.idx";
+    /** Operations between checkpoints, which empty the log */
+    private static final int CHECKPOINT_INTERVAL = 10_000;
+
+    private final BTree bTree;
+    /**
+     * Index file holding the B+Tree's nodes.
+     */
+    private final MappedNodeStore indexStore;
+    /**
+     * True if open() used the saved tree instead of building one.
+     */
+    private final boolean indexRestored;
+    /**
+     * Heap file holding the rows, or null when they are in student.csv.
+     */
+    private final StudentHeapFile heapFile;
+    private final WriteAheadLog log;
+    private final Path csvFile;
+    /**
+     * The heap file or student.csv, whichever holds the rows.
+     */
+    private final Path dataFile;
+    /**
+     * Indexes on major, level and age, or null until they are created.
+     */
+    private SecondaryIndexes secondaryIndexes;
+    private int operationsSinceCheckpoint;
+    /**
+     * Why a data file write failed after its operation was logged, or null if
+     * none has. The data file is then behind the log.
+     */
+    private IOException failure;
+
+    private StudentDatabase(BTree bTree, MappedNodeStore indexStore, boolean indexRestored,
+            StudentHeapFile heapFile, WriteAheadLog log, Path csvFile, Path dataFile) {
+        this.bTree = bTree;
+        this.indexStore = indexStore;
+        this.indexRestored = indexRestored;
+        this.heapFile = heapFile;
+        this.log = log;
+        this.csvFile = csvFile;
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * Opens the database in the src directory.
+     *
+     * @param degree  - Minimum degree of the B+Tree
+     * @param useHeap - True to keep rows in the heap file
+     * @return The open database
+     * @throws IOException if the data file or log can't be opened
+     */
+    static StudentDatabase open(int degree, boolean useHeap) throws IOException {
+        return open(Paths.get("src"), degree, useHeap);
+    }
+
+    /**
+     * Opens the B+Tree saved in the index file, or loads the data file into a
+     * new one if the saved tree doesn't match the data file and log, then
+     * replays the write-ahead log.
+     *
+     * @param directory - Directory holding student.csv, the heap file, the
+     *                  index file and the log
+     * @param degree  - Minimum degree of the B+Tree
+     * @param useHeap - True to keep rows in the heap file. It is filled from
+     *                student.csv the first time, and recordIds are then heap
+     *                file addresses.
+     * @return The open database
+     * @throws IOException if the data file, index file or log can't be opened
+     */
+    static StudentDatabase open(Path directory, int degree, boolean useHeap) throws IOException {
+        Path csvFile = directory.resolve(CSV_FILE);
+        Path dataFile = useHeap ? directory.resolve(HEAP_FILE) : csvFile;
+        WriteAheadLog log = WriteAheadLog.open(directory.resolve(LOG_FILE), 0);
+        MappedNodeStore indexStore = null;
+        StudentHeapFile heapFile = null;
+        try {
+            // Stamp the data file before opening it, which may create it
+            long stamp = stamp(dataFile, log);
+            indexStore = MappedNodeStore.open(directory.resolve(INDEX_FILE), degree);
+            if (useHeap) {
+                heapFile = StudentHeapFile.open(dataFile);
+            }
+
+            // The saved tree is only as good as the data file and log it was
+            // saved with
+            boolean restored = indexStore.isClean() && indexStore.stamp() == stamp;
+            BTree bTree;
+            if (restored) {
+                bTree = new BTree(indexStore, indexStore.root(), indexStore.entries());
+            } else {
+                bTree = new BTree(indexStore);
+                load(bTree, csvFile, heapFile);
+            }
+            bTree.setCsvFile(csvFile);
+            if (heapFile != null) {
+                bTree.setHeapFile(heapFile);
+            }
+
+            // Redo whatever the data file missed before the last shutdown
+            StudentDatabase db = new StudentDatabase(bTree, indexStore, restored, heapFile, log, csvFile, dataFile);
+            // An insert that already reached the data file replaces its own
+            // row again, so inserts are redone unconditionally
+            log.replay(s -> {
+                try {
+                    db.apply(s);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, studentId -> {
+                try {
+                    db.applyDelete(studentId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            db.checkpoint();
+            return db;
+        } catch (IOException | RuntimeException e) {
+            // Keep the log for the next open
+            log.close();
+            if (heapFile != null) {
+                heapFile.close();
+            }
+            if (indexStore != null) {
+                indexStore.close();
+            }
+            if (e instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e).getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Builds the B+Tree from the rows in the heap file, or in student.csv if
+    // there is no heap file
+    private static void load(BTree bTree, Path csvFile, StudentHeapFile heapFile) throws IOException {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long[] studentIds;
+        long[] recordIds;
+        int count;
+        if (heapFile != null) {
+            StudentHeapFile heap = heapFile;
+            LongList heapIds = new LongList();
+            LongList heapRecordIds = new LongList();
+            if (heapFile.pageCount() == 0) {
+                // First run: stream the rows over, which assigns their recordIds
+                try {
+                    StudentCsv.forEachStudent(csvFile, s -> {
+                        heapIds.add(s.studentId);
+                        heapRecordIds.add(heap.insert(s));
+                    });
+                } catch (NoSuchFileException e) {
+                    System.out.println("File not found.");
+                }
+            } else {
+                heapFile.scan(s -> {
+                    heapIds.add(s.studentId);
+                    heapRecordIds.add(s.recordId);
+                });
+            }
+            count = heapIds.size();
+            studentIds = heapIds.toArray();
+            recordIds = heapRecordIds.toArray();
+            StudentCsv.sort(studentIds, recordIds, count, pool);
+            // A studentId repeated in the file belongs to its last row, and
+            // its earlier rows are freed instead of left unreachable
+            count = StudentCsv.dropDuplicates(studentIds, recordIds, count, heap::delete);
+        } else {
+            // Only the indexed columns are needed, parsed in parallel
+            StudentCsv csv;
+            try {
+                csv = StudentCsv.read(csvFile, pool);
+            } catch (NoSuchFileException e) {
+                System.out.println("File not found.");
+                csv = StudentCsv.EMPTY;
+            }
+            studentIds = csv.studentIds;
+            recordIds = csv.recordIds;
+            // A studentId repeated in the file belongs to its last row
+            count = StudentCsv.dropDuplicates(csv.studentIds, csv.recordIds, csv.count);
+        }
+
+        // Build the index bottom-up from the rows sorted by studentId
+        bTree.bulkLoad(studentIds, recordIds, count, 0.9, pool);
+    }
+
+    // Identifies the state of the data file and the log, which a saved tree
+    // must match to be used. Every change the database makes is logged
+    // first, and any other change to the data file moves its size or time.
+    private static long stamp(Path dataFile, WriteAheadLog log) throws IOException {
+        long size = -1;
+        long modified = 0;
+        if (Files.exists(dataFile)) {
+            size = Files.size(dataFile);
+            modified = Files.getLastModifiedTime(dataFile).toMillis();
+        }
+        long stamp = dataFile.getFileName().toString().hashCode();
+        stamp = stamp * 0x9E3779B97F4A7C15L + log.nextLsn();
+        stamp = stamp * 0x9E3779B97F4A7C15L + size;
+        stamp = stamp * 0x9E3779B97F4A7C15L + modified;
+        return stamp;
+    }
+
+    /**
+     * Inserts a student into the B+Tree and the data file. An insert of a
+     * studentId already in the table is an update: the student's row is
+     * replaced and the B+Tree keeps one entry for it.
+     *
+     * @param student - The student to insert. In heap file mode its recordId
+     *                is replaced by the row's address.
+     * @throws IOException              if the operation can't be logged or the
+     *                                  data file can't be written
+     * @throws IllegalArgumentException if secondary indexes are kept and the
+     *                                  studentId can't be indexed
+     */
+    void insert(Student student) throws IOException {
+        checkNotFailed();
+        if (secondaryIndexes != null) {
+            SecondaryIndexes.check(student);
+        }
+        log.commit(log.logInsert(student));
+        apply(student);
+        afterOperation();
+    }
+
+    /**
+     * Deletes a student from the B+Tree and the data file.
+     *
+     * @param studentId - The studentId to delete
+     * @return True if the student was deleted
+     * @throws IOException if the operation can't be logged or the data file
+     *                     can't be written
+     */
+    boolean delete(long studentId) throws IOException {
+        checkNotFailed();
+        log.commit(log.logDelete(studentId));
+        boolean result = applyDelete(studentId);
+        afterOperation();
+        return result;
+    }
+
+    /**
+     * Applies a batch of operations with the same results as applying them one
+     * by one in order, and fills in each operation's result.
+     * <p>
+     * The inserts and deletes are logged and made durable with a single
+     * commit. The operations are then sorted by studentId, which keeps each
+     * student's operations in order, and run in rounds: round r holds the
+     * r-th operation of every studentId in the batch, so a round never
+     * touches a studentId twice and its inserts go into the B+Tree as one
+     * sorted run that shares descents. In heap file mode the rows are first
+     * added to and freed from the heap file in the order they were issued,
+     * so they get the same addresses. In student.csv mode the batch's deletes
+     * are removed with one rewrite of the file and its new rows are then
+     * appended with one buffered write. As with insert(), an insert of a
+     * studentId already in the table replaces its row.
+     *
+     * @param batch - The operations, in the order they were issued
+     * @throws IOException              if the operations can't be logged or
+     *                                  the data file can't be written
+     * @throws IllegalArgumentException if secondary indexes are kept and an
+     *                                  insert's studentId can't be indexed.
+     *                                  Nothing in the batch is applied.
+     */
+    void apply(List<Operation> batch) throws IOException {
+        checkNotFailed();
+        if (secondaryIndexes != null) {
+            for (Operation op : batch) {
+                if (op.type == Operation.INSERT) {
+                    SecondaryIndexes.check(op.student);
+                }
+            }
+        }
+
+        // Log everything, then wait once for the whole batch to be durable
+        long lsn = -1;
+        for (Operation op : batch) {
+            if (op.type == Operation.INSERT) {
+                lsn = log.logInsert(op.student);
+            } else if (op.type == Operation.DELETE) {
+                lsn = log.logDelete(op.studentId);
+            }
+        }
+        if (lsn >= 0) {
+            log.commit(lsn);
+        }
+
+        if (heapFile != null) {
+            try {
+                applyToHeapFile(batch);
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+                throw failure;
+            }
+        }
+
+        // Arrays.sort on objects is stable, so each studentId's operations
+        // stay in the order they were issued
+        Operation[] sorted = batch.toArray(new Operation[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(op -> op.studentId));
+        int[] rounds = new int[sorted.length];
+        int roundCount = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            rounds[i] = i > 0 && sorted[i].studentId == sorted[i - 1].studentId ? rounds[i - 1] + 1 : 0;
+            roundCount = Math.max(roundCount, rounds[i] + 1);
+        }
+        // Order the operations by round, keeping studentId order within one
+        int[] roundStart = new int[roundCount + 1];
+        for (int round : rounds) {
+            roundStart[round + 1]++;
+        }
+        for (int r = 0; r < roundCount; r++) {
+            roundStart[r + 1] += roundStart[r];
+        }
+        int[] order = new int[sorted.length];
+        int[] next = Arrays.copyOf(roundStart, roundCount);
+        for (int i = 0; i < sorted.length; i++) {
+            order[next[rounds[i]]++] = i;
+        }
+
+        // studentId -> the insert whose row is still to be appended
+        LongLongMap appends = new LongLongMap(16);
+        LongLongMap csvDeletes = new LongLongMap(16);
+        long[] studentIds = new long[sorted.length];
+        long[] recordIds = new long[sorted.length];
+        for (int r = 0; r < roundCount; r++) {
+            int inserts = 0;
+            for (int j = roundStart[r]; j < roundStart[r + 1]; j++) {
+                Operation op = sorted[order[j]];
+                if (op.type == Operation.INSERT) {
+                    Student s = op.student;
+                    if (heapFile == null) {
+                        // Earlier rounds are already in the B+Tree
+                        op.replace = bTree.search(s.studentId) >= 0;
+                        // Only the studentId's last row needs appending
+                        long pending = appends.get(s.studentId, -1);
+                        if (pending >= 0) {
+                            sorted[(int) pending].append = false;
+                        }
+                        op.append = true;
+                        appends.put(s.studentId, order[j]);
+                        if (secondaryIndexes != null) {
+                            secondaryIndexes.remove(s.studentId);
+                            secondaryIndexes.add(s);
+                        }
+                    }
+                    if (op.replace) {
+                        bTree.replace(s.studentId, s.recordId);
+                    } else {
+                        studentIds[inserts] = s.studentId;
+                        recordIds[inserts++] = s.recordId;
+                    }
+                } else if (op.type == Operation.DELETE) {
+                    // The rows are removed after the loop, or were already
+                    // freed from the heap file
+                    boolean deleted = bTree.remove(op.studentId);
+                    op.result = deleted ? 1 : 0;
+                    if (deleted && heapFile == null) {
+                        csvDeletes.put(op.studentId, 1);
+                        if (secondaryIndexes != null) {
+                            secondaryIndexes.remove(op.studentId);
+                        }
+                        // A row appended earlier in the batch goes too
+                        long pending = appends.get(op.studentId, -1);
+                        if (pending >= 0) {
+                            sorted[(int) pending].append = false;
+                            appends.remove(op.studentId);
+                        }
+                    }
+                } else {
+                    op.result = bTree.search(op.studentId);
+                }
+            }
+            bTree.insertSorted(studentIds, recordIds, inserts);
+        }
+
+        try {
+            if (csvDeletes.size() > 0) {
+                removeCsvRows(csvDeletes);
+            }
+            if (appends.size() > 0) {
+                appendCsvRows(batch);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        operationsSinceCheckpoint += batch.size();
+        if (operationsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * @param studentId - The studentId to look up
+     * @return The recordId, or -1 if the student doesn't exist
+     */
+    long search(long studentId) {
+        return bTree.search(studentId);
+    }
+
+    /**
+     * @return Every recordId, in studentId order
+     */
+    LongList print() {
+        return bTree.print();
+    }
+
+    /**
+     * @return The B+Tree indexing the table
+     */
+    BTree tree() {
+        return bTree;
+    }
+
+    /**
+     * @return True if open() used the B+Tree saved in the index file instead
+     *         of building it from the data file
+     */
+    boolean indexRestored() {
+        return indexRestored;
+    }
+
+    /**
+     * Builds secondary indexes on major, level and age from the rows in the
+     * data file, and keeps them up to date from then on. Until this is
+     * called, inserts and deletes pay nothing for them.
+     *
+     * @return The indexes
+     * @throws IOException              if the data file can't be read
+     * @throws IllegalArgumentException if a row's studentId can't be indexed
+     */
+    SecondaryIndexes createSecondaryIndexes() throws IOException {
+        if (secondaryIndexes == null) {
+            SecondaryIndexes.Rows rows = heapFile != null ? heapFile::scan : consumer -> {
+                if (Files.exists(csvFile)) {
+                    StudentCsv.forEachStudent(csvFile, consumer);
+                }
+            };
+            // Skip rows the B+Tree doesn't point at, such as ones replaced
+            // by a later row with the same studentId
+            SecondaryIndexes.Rows current = consumer -> rows.forEach(s -> {
+                if (bTree.search(s.studentId) == s.recordId) {
+                    consumer.accept(s);
+                }
+            });
+            secondaryIndexes = SecondaryIndexes.build(bTree.degree(), current, ForkJoinPool.commonPool());
+        }
+        return secondaryIndexes;
+    }
+
+    /**
+     * @return The secondary indexes, or null if they weren't created
+     */
+    SecondaryIndexes secondaryIndexes() {
+        return secondaryIndexes;
+    }
+
+    /**
+     * Syncs the data file, saves the B+Tree to the index file and empties the
+     * log.
+     *
+     * @throws IOException if the data file or log can't be written, or an
+     *                     earlier data file write failed. The log is then
+     *                     kept.
+     */
+    void checkpoint() throws IOException {
+        checkNotFailed();
+        if (heapFile != null) {
+            heapFile.sync();
+        } else if (Files.exists(csvFile)) {
+            try (FileChannel channel = FileChannel.open(csvFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        // Saved before the log is emptied, so a crash in between leaves a log
+        // the next open replays over the saved tree
+        indexStore.save(bTree.rootNode(), bTree.size(), stamp(dataFile, log));
+        log.checkpoint();
+        operationsSinceCheckpoint = 0;
+    }
+
+    /**
+     * Checkpoints and closes the data file, index file and log.
+     *
+     * @throws IOException if the files can't be written or closed
+     */
+    void close() throws IOException {
+        try {
+            checkpoint();
+        } finally {
+            log.close();
+            try {
+                if (heapFile != null) {
+                    heapFile.close();
+                }
+            } finally {
+                indexStore.close();
+            }
+        }
+    }
+
+    // Applies a logged insert, replacing the row of a studentId that is
+    // already in the table
+    private void apply(Student s) throws IOException {
+        long oldRecordId = bTree.search(s.studentId);
+        boolean isNew = oldRecordId < 0;
+        if (heapFile != null) {
+            // The heap file decides where the row lives. The new row is
+            // written before the old one is freed.
+            try {
+                s.recordId = heapFile.insert(s);
+                if (!isNew) {
+                    heapFile.delete(oldRecordId);
+                }
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+                throw failure;
+            }
+        }
+        if (isNew) {
+            bTree.insert(s);
+        } else {
+            bTree.replace(s.studentId, s.recordId);
+        }
+        if (secondaryIndexes != null) {
+            secondaryIndexes.remove(s.studentId);
+            secondaryIndexes.add(s);
+        }
+
+        //insert student into student.csv; the last row of a studentId is its current one
+        if (heapFile == null) {
+            try (
+                FileWriter fw = new FileWriter(csvFile.toFile(), true);
+            ) {
+                fw.write(s.studentId + "," + s.studentName + "," + s.major + "," + s.level + "," + s.age + "," + s.recordId + "\n");
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    // Applies a logged delete
+    private boolean applyDelete(long studentId) throws IOException {
+        boolean result;
+        try {
+            result = bTree.delete(studentId);
+        } catch (UncheckedIOException e) {
+            // Gone from the B+Tree, but still in the data file
+            failure = e.getCause();
+            result = true;
+        }
+        if (result) {
+            if (secondaryIndexes != null) {
+                secondaryIndexes.remove(studentId);
+            }
+        }
+        checkNotFailed();
+        return result;
+    }
+
+    // Adds the batch's new rows to the heap file and frees its deleted and
+    // replaced ones, in the order they were issued. Each insert's recordId
+    // becomes its row's address.
+    private void applyToHeapFile(List<Operation> batch) {
+        // studentId -> recordId, or -1 once deleted, of the rows the batch has
+        // changed so far. The B+Tree only catches up afterwards.
+        LongLongMap changed = new LongLongMap(batch.size());
+        for (Operation op : batch) {
+            if (op.type == Operation.INSERT) {
+                Student s = op.student;
+                long oldRecordId = changed.containsKey(s.studentId)
+                        ? changed.get(s.studentId, -1)
+                        : bTree.search(s.studentId);
+                // The heap file decides where the row lives
+                s.recordId = heapFile.insert(s);
+                changed.put(s.studentId, s.recordId);
+                op.replace = oldRecordId >= 0;
+                if (op.replace) {
+                    heapFile.delete(oldRecordId);
+                }
+                if (secondaryIndexes != null) {
+                    secondaryIndexes.remove(s.studentId);
+                    secondaryIndexes.add(s);
+                }
+            } else if (op.type == Operation.DELETE) {
+                long recordId = changed.containsKey(op.studentId)
+                        ? changed.get(op.studentId, -1)
+                        : bTree.search(op.studentId);
+                if (recordId >= 0) {
+                    changed.put(op.studentId, -1);
+                    if (secondaryIndexes != null) {
+                        secondaryIndexes.remove(op.studentId);
+                    }
+                    heapFile.delete(recordId);
+                }
+            }
+        }
+    }
+
+    // Rewrites student.csv without the rows of the given studentIds
+    private void removeCsvRows(LongLongMap studentIds) throws IOException {
+        List<String> linesToWrite = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(csvFile)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int comma = line.indexOf(',');
+                if (comma < 0 || !studentIds.containsKey(Long.parseLong(line.substring(0, comma)))) {
+                    linesToWrite.add(line);
+                }
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(csvFile)) {
+            for (String line : linesToWrite) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+    }
+
+    // Appends the rows of the batch's new students to student.csv, in the
+    // order they were inserted
+    private void appendCsvRows(List<Operation> batch) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csvFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (Operation op : batch) {
+                if (op.append) {
+                    Student s = op.student;
+                    writer.write(s.studentId + "," + s.studentName + "," + s.major + "," + s.level + "," + s.age + "," + s.recordId + "\n");
+                }
+            }
+        }
+    }
+
+    private void afterOperation() throws IOException {
+        if (++operationsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Student database stopped after a failed data file write", failure);
+        }
+    }
+
+    /**
+     * An insert, delete or search for StudentDatabase.apply().
+     */
+    static final class Operation {
+
+        static final byte INSERT = 1;
+        static final byte DELETE = 2;
+        static final byte SEARCH = 3;
+
+        final byte type;
+        final long studentId;
+        /**
+         * The student to insert, or null for a delete or search.
+         */
+        final Student student;
+        /**
+         * Filled in by apply(): the recordId a search found, or -1, and 1 if
+         * a delete removed the student or 0 if it did not.
+         */
+        long result;
+        /**
+         * True while an insert's row still has to be appended to student.csv.
+         */
+        private boolean append;
+        /**
+         * True if an insert's studentId was already in the table when it ran,
+         * so it replaces the B+Tree entry instead of adding one.
+         */
+        private boolean replace;
+
+        private Operation(byte type, long studentId, Student student) {
+            this.type = type;
+            this.studentId = studentId;
+            this.student = student;
+        }
+
+        static Operation insert(Student student) {
+            return new Operation(INSERT, student.studentId, student);
+        }
+
+        static Operation delete(long studentId) {
+            return new Operation(DELETE, studentId, null);
+        }
+
+        static Operation search(long studentId) {
+            return new Operation(SEARCH, studentId, null);
+        }
+    }
+}
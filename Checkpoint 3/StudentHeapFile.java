@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Binary heap file of Student records in slotted pages.
+ * <p>
+ * A recordId is the address of its row: (page &lt;&lt; 16) | slot. Reading,
+ * inserting or deleting a row touches only its page. Deletes mark the slot
+ * free in place, and inserts reuse free slots and the space of deleted rows
+ * before growing the file. Pages are read and written through a BufferPool.
+ * <p>
+ * The file is a HEADER_SIZE byte header followed by PAGE_SIZE byte pages:
+ * <pre>
+ *   0   int  slot count
+ *   4   int  start of the record area, which grows down from the page end
+ *   8   int  offset, int length of each slot. Length FREE_SLOT marks a free slot
+ * </pre>
+ * A record is its studentId (long) and age (int), then name, major and level,
+ * each as an unsigned short byte count followed by UTF-8 bytes. All values are
+ * little-endian. The file is not thread-safe.
+ */
+class StudentHeapFile {
+
+    static final int PAGE_SIZE = 8192;
+    static final int HEADER_SIZE = 64;
+    /** Identifies a heap file, "STUDHEAP" in ASCII */
+    private static final long MAGIC = 0x5354554448454150L;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int SLOT_COUNT_OFFSET = 0;
+    private static final int RECORD_START_OFFSET = 4;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int SLOT_SIZE = 8;
+    private static final int FREE_SLOT = -1;
+    /** recordId bits holding the slot */
+    private static final int SLOT_BITS = 16;
+    /** Pages cached in memory */
+    private static final int POOL_FRAMES = 256;
+
+    private final FileChannel channel;
+    private final BufferPool pool;
+    /**
+     * Number of pages in the file.
+     */
+    private int pageCount;
+    /**
+     * Bytes of each page that an insert could use, counting the space of
+     * deleted rows that compacting the page would recover.
+     */
+    private int[] freeBytes;
+    /**
+     * Pages that had rows deleted, to fill before growing the file.
+     */
+    private int[] freedPages;
+    private int freedCount;
+    private boolean[] isFreed;
+
+    private StudentHeapFile(FileChannel channel, int pageCount) {
+        this.channel = channel;
+        this.pool = new BufferPool(channel, HEADER_SIZE, PAGE_SIZE, POOL_FRAMES,
+            new EvictionPolicy.Clock(POOL_FRAMES));
+        this.pageCount = pageCount;
+        this.freeBytes = new int[Math.max(16, pageCount)];
+        this.freedPages = new int[16];
+        this.isFreed = new boolean[freeBytes.length];
+    }
+
+    /**
+     * Opens a heap file, creating an empty one if it doesn't exist.
+     *
+     * @param file - The heap file
+     * @return The open heap file
+     * @throws IOException if the file can't be opened or is not a heap file
+     */
+    static StudentHeapFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                header.putLong(0, MAGIC);
+                header.putInt(8, FORMAT_VERSION);
+                header.putInt(12, PAGE_SIZE);
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } else {
+                while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                    // Keep reading until the header is complete or the file ends
+                }
+                if (header.hasRemaining() || header.getLong(0) != MAGIC
+                        || header.getInt(8) != FORMAT_VERSION || header.getInt(12) != PAGE_SIZE) {
+                    throw new IOException(file + " is not a student heap file");
+                }
+            }
+
+            StudentHeapFile heap = new StudentHeapFile(channel, (int) ((channel.size() - HEADER_SIZE) / PAGE_SIZE));
+            for (int page = 0; page < heap.pageCount; page++) {
+                ByteBuffer buffer = heap.pool.pin(page);
+                heap.freeBytes[page] = reclaimableBytes(buffer);
+                heap.pool.unpin(page, false);
+                if (heap.freeBytes[page] > PAGE_SIZE / 4) {
+                    heap.pushFreed(page);
+                }
+            }
+            return heap;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stores a student, in a free slot if there is one.
+     *
+     * @param student - The student to store. Its recordId is ignored.
+     * @return The recordId (address) of the new row
+     * @throws UncheckedIOException if the file can't be read or written
+     */
+    long insert(Student student) {
+        byte[] name = student.studentName.getBytes(StandardCharsets.UTF_8);
+        byte[] major = student.major.getBytes(StandardCharsets.UTF_8);
+        byte[] level = student.level.getBytes(StandardCharsets.UTF_8);
+        int length = 12 + 6 + name.length + major.length + level.length;
+        if (length + SLOT_SIZE > PAGE_SIZE - SLOTS_OFFSET
+                || Math.max(name.length, Math.max(major.length, level.length)) > 0xFFFF) {
+            throw new IllegalArgumentException("Student " + student.studentId + " is too large for a page");
+        }
+
+        int page = pageFor(length + SLOT_SIZE);
+        ByteBuffer buffer = pool.pin(page);
+        int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+        int slot = 0;
+        while (slot < slotCount && buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4) != FREE_SLOT) {
+            slot++;
+        }
+        int slotsEnd = SLOTS_OFFSET + SLOT_SIZE * Math.max(slotCount, slot + 1);
+        if (buffer.getInt(RECORD_START_OFFSET) - slotsEnd < length) {
+            compact(buffer);
+        }
+
+        // Write the record at the bottom of the record area
+        int offset = buffer.getInt(RECORD_START_OFFSET) - length;
+        buffer.putLong(offset, student.studentId);
+        buffer.putInt(offset + 8, student.age);
+        int pos = putString(buffer, offset + 12, name);
+        pos = putString(buffer, pos, major);
+        putString(buffer, pos, level);
+
+        buffer.putInt(RECORD_START_OFFSET, offset);
+        buffer.putInt(SLOTS_OFFSET + SLOT_SIZE * slot, offset);
+        buffer.putInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4, length);
+        if (slot == slotCount) {
+            buffer.putInt(SLOT_COUNT_OFFSET, slotCount + 1);
+        }
+        freeBytes[page] = reclaimableBytes(buffer);
+        pool.unpin(page, true);
+        return ((long) page << SLOT_BITS) | slot;
+    }
+
+    /**
+     * Reads the row at a recordId.
+     *
+     * @param recordId - The row's address
+     * @return The student, with recordId set, or null if there is no row there
+     * @throws UncheckedIOException if the file can't be read
+     */
+    Student read(long recordId) {
+        int page = (int) (recordId >>> SLOT_BITS);
+        int slot = (int) (recordId & ((1 << SLOT_BITS) - 1));
+        if (recordId < 0 || page >= pageCount) {
+            return null;
+        }
+        ByteBuffer buffer = pool.pin(page);
+        try {
+            if (slot >= buffer.getInt(SLOT_COUNT_OFFSET)
+                    || buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4) == FREE_SLOT) {
+                return null;
+            }
+            return decode(buffer, buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot), recordId);
+        } finally {
+            pool.unpin(page, false);
+        }
+    }
+
+    /**
+     * Deletes the row at a recordId by freeing its slot.
+     *
+     * @param recordId - The row's address
+     * @return True if there was a row at the recordId
+     * @throws UncheckedIOException if the file can't be read or written
+     */
+    boolean delete(long recordId) {
+        int page = (int) (recordId >>> SLOT_BITS);
+        int slot = (int) (recordId & ((1 << SLOT_BITS) - 1));
+        if (recordId < 0 || page >= pageCount) {
+            return false;
+        }
+        ByteBuffer buffer = pool.pin(page);
+        if (slot >= buffer.getInt(SLOT_COUNT_OFFSET)
+                || buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4) == FREE_SLOT) {
+            pool.unpin(page, false);
+            return false;
+        }
+        buffer.putInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4, FREE_SLOT);
+        freeBytes[page] = reclaimableBytes(buffer);
+        pool.unpin(page, true);
+        pushFreed(page);
+        return true;
+    }
+
+    /**
+     * Passes every row to the consumer, in recordId order.
+     *
+     * @param consumer - Receives each student, with recordId set
+     * @throws UncheckedIOException if the file can't be read
+     */
+    void scan(Consumer<Student> consumer) {
+        for (int page = 0; page < pageCount; page++) {
+            ByteBuffer buffer = pool.pin(page);
+            try {
+                int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4) != FREE_SLOT) {
+                        long recordId = ((long) page << SLOT_BITS) | slot;
+                        consumer.accept(decode(buffer, buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot), recordId));
+                    }
+                }
+            } finally {
+                pool.unpin(page, false);
+            }
+        }
+    }
+
+    /**
+     * Writes modified pages to the file and forces them to disk.
+     *
+     * @throws IOException if the file can't be written
+     */
+    void sync() throws IOException {
+        pool.flush();
+        channel.force(false);
+    }
+
+    /**
+     * Syncs and closes the file.
+     *
+     * @throws IOException if the file can't be written or closed
+     */
+    void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The number of pages in the file
+     */
+    int pageCount() {
+        return pageCount;
+    }
+
+    // Picks a page with room for the given bytes, growing the file if needed
+    private int pageFor(int bytes) {
+        while (freedCount > 0) {
+            int page = freedPages[freedCount - 1];
+            if (freeBytes[page] >= bytes) {
+                return page;
+            }
+            // Too full for this row. It is pushed again on its next delete.
+            freedCount--;
+            isFreed[page] = false;
+        }
+        if (pageCount > 0 && freeBytes[pageCount - 1] >= bytes) {
+            return pageCount - 1;
+        }
+        return newPage();
+    }
+
+    // Appends an empty page to the file
+    private int newPage() {
+        int page = pageCount;
+        ByteBuffer empty = ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        empty.putInt(SLOT_COUNT_OFFSET, 0);
+        empty.putInt(RECORD_START_OFFSET, PAGE_SIZE);
+        long position = HEADER_SIZE + (long) page * PAGE_SIZE;
+        try {
+            while (empty.hasRemaining()) {
+                channel.write(empty, position + empty.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (page == freeBytes.length) {
+            freeBytes = Arrays.copyOf(freeBytes, page * 2);
+            isFreed = Arrays.copyOf(isFreed, page * 2);
+        }
+        freeBytes[page] = PAGE_SIZE - SLOTS_OFFSET;
+        pageCount++;
+        return page;
+    }
+
+    private void pushFreed(int page) {
+        if (isFreed[page]) {
+            return;
+        }
+        if (freedCount == freedPages.length) {
+            freedPages = Arrays.copyOf(freedPages, freedCount * 2);
+        }
+        freedPages[freedCount++] = page;
+        isFreed[page] = true;
+    }
+
+    // Free bytes in the page after compaction, less room for one more slot
+    // if every slot is in use
+    private static int reclaimableBytes(ByteBuffer buffer) {
+        int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+        int used = SLOTS_OFFSET + SLOT_SIZE * slotCount;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int length = buffer.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4);
+            if (length != FREE_SLOT) {
+                used += length;
+            }
+        }
+        return PAGE_SIZE - used;
+    }
+
+    // Moves the live records to the end of the page, closing the gaps left
+    // by deleted rows. Slots keep their numbers, so recordIds don't change.
+    private static void compact(ByteBuffer buffer) {
+        int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+        byte[] copy = new byte[PAGE_SIZE];
+        buffer.get(0, copy);
+        ByteBuffer old = ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+
+        int recordStart = PAGE_SIZE;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int length = old.getInt(SLOTS_OFFSET + SLOT_SIZE * slot + 4);
+            if (length != FREE_SLOT) {
+                recordStart -= length;
+                buffer.put(recordStart, copy, old.getInt(SLOTS_OFFSET + SLOT_SIZE * slot), length);
+                buffer.putInt(SLOTS_OFFSET + SLOT_SIZE * slot, recordStart);
+            }
+        }
+        buffer.putInt(RECORD_START_OFFSET, recordStart);
+    }
+
+    private static int putString(ByteBuffer buffer, int offset, byte[] bytes) {
+        buffer.putShort(offset, (short) bytes.length);
+        buffer.put(offset + 2, bytes);
+        return offset + 2 + bytes.length;
+    }
+
+    private static Student decode(ByteBuffer buffer, int offset, long recordId) {
+        long studentId = buffer.getLong(offset);
+        int age = buffer.getInt(offset + 8);
+        int pos = offset + 12;
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; i++) {
+            int length = Short.toUnsignedInt(buffer.getShort(pos));
+            byte[] bytes = new byte[length];
+            buffer.get(pos + 2, bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            pos += 2 + length;
+        }
+        return new Student(studentId, age, fields[0], fields[1], fields[2], recordId);
+    }
+}
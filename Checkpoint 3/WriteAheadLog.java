@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Sequential write-ahead log of student inserts and deletes.
+ * <p>
+ * Each operation is appended with a log sequence number (LSN) before it is
+ * applied, and commit() returns once the operation is on disk. Commits are
+ * grouped: the first committer waits up to the group commit window for other
+ * threads to append, then writes and fsyncs everything appended so far with
+ * one force(), which makes all of those operations durable at once. If a
+ * write or force() fails, the file may end partway through a batch, so the
+ * log stops: that commit, the ones waiting on it and every later one throw.
+ * <p>
+ * After the data file has been synced, checkpoint() empties the log. On
+ * startup, replay() passes every logged operation since the last checkpoint
+ * to the caller, which re-applies the ones the data file is missing.
+ * <p>
+ * The file is a HEADER_SIZE byte header (magic, version, LSN of the first
+ * record) followed by records:
+ * <pre>
+ *   int  length of everything after the checksum
+ *   int  CRC32C of everything after the checksum
+ *   long LSN
+ *   byte INSERT or DELETE
+ *   INSERT: long studentId, int age, long recordId, then name, major and
+ *           level, each as an unsigned short byte count and UTF-8 bytes
+ *   DELETE: long studentId
+ * </pre>
+ * A torn or corrupt record at the end of the file, from a crash during a
+ * write, ends the log. All values are little-endian.
+ */
+class WriteAheadLog {
+
+    static final int HEADER_SIZE = 32;
+    /** Identifies a log file, "STUDEWAL" in ASCII */
+    private static final long MAGIC = 0x5354554445574C4CL;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+    /** Bytes before the length-counted part of a record */
+    private static final int RECORD_PREFIX = 8;
+
+    private final FileChannel channel;
+    /**
+     * How long the first committer waits for other appends before flushing.
+     */
+    private final long groupCommitNanos;
+
+    /** Guards every field below */
+    private final Object lock = new Object();
+    /**
+     * Records appended but not yet written.
+     */
+    private ByteBuffer pending = newBuffer(64 * 1024);
+    /**
+     * Buffer being written by the current flush, swapped with pending.
+     */
+    private ByteBuffer writing = newBuffer(64 * 1024);
+    private long nextLsn;
+    /**
+     * Highest LSN known to be on disk.
+     */
+    private long durableLsn;
+    /**
+     * True while a committer is writing and forcing a batch.
+     */
+    private boolean flushing;
+    /**
+     * Why a batch failed to reach disk, or null if none has. The file may
+     * then end partway through a batch, so no later commit can succeed.
+     */
+    private IOException failure;
+    private long fsyncs;
+    private long records;
+
+    private WriteAheadLog(FileChannel channel, long groupCommitNanos, long firstLsn) {
+        this.channel = channel;
+        this.groupCommitNanos = groupCommitNanos;
+        this.nextLsn = firstLsn;
+        this.durableLsn = firstLsn - 1;
+    }
+
+    /**
+     * Opens a log, creating an empty one if it doesn't exist. New records are
+     * appended after the last valid record.
+     *
+     * @param file             - The log file
+     * @param groupCommitNanos - How long a commit waits for other threads to
+     *                         append before flushing. 0 flushes at once.
+     * @return The open log
+     * @throws IOException if the file can't be opened or is not a log
+     */
+    static WriteAheadLog open(Path file, long groupCommitNanos) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long firstLsn = 1;
+            if (channel.size() == 0) {
+                writeHeader(channel, firstLsn);
+            } else {
+                ByteBuffer header = newBuffer(HEADER_SIZE);
+                if (channel.size() >= HEADER_SIZE) {
+                    readFully(channel, header, 0);
+                }
+                if (header.getLong(0) != MAGIC || header.getInt(8) != FORMAT_VERSION) {
+                    throw new IOException(file + " is not a student write-ahead log");
+                }
+                firstLsn = header.getLong(12);
+            }
+
+            // Find the end of the valid records and drop any torn tail
+            long[] last = {firstLsn - 1};
+            long end = readRecords(channel, record -> last[0] = record.getLong(RECORD_PREFIX));
+            channel.truncate(end);
+            channel.position(end);
+            return new WriteAheadLog(channel, groupCommitNanos, last[0] + 1);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends an insert to the log. It is not durable until commit() returns.
+     *
+     * @param student - The student being inserted
+     * @return The LSN of the record
+     */
+    long logInsert(Student student) {
+        byte[] name = student.studentName.getBytes(StandardCharsets.UTF_8);
+        byte[] major = student.major.getBytes(StandardCharsets.UTF_8);
+        byte[] level = student.level.getBytes(StandardCharsets.UTF_8);
+        if (Math.max(name.length, Math.max(major.length, level.length)) > 0xFFFF) {
+            throw new IllegalArgumentException("Student " + student.studentId + " has a field too long to log");
+        }
+        int length = 8 + 1 + 8 + 4 + 8 + 6 + name.length + major.length + level.length;
+
+        synchronized (lock) {
+            long lsn = nextLsn++;
+            ByteBuffer buffer = reserve(length);
+            int start = buffer.position();
+            buffer.putInt(length).putInt(0).putLong(lsn).put(INSERT);
+            buffer.putLong(student.studentId).putInt(student.age).putLong(student.recordId);
+            putString(buffer, name);
+            putString(buffer, major);
+            putString(buffer, level);
+            sealRecord(buffer, start);
+            return lsn;
+        }
+    }
+
+    /**
+     * Appends a delete to the log. It is not durable until commit() returns.
+     *
+     * @param studentId - The studentId being deleted
+     * @return The LSN of the record
+     */
+    long logDelete(long studentId) {
+        synchronized (lock) {
+            long lsn = nextLsn++;
+            ByteBuffer buffer = reserve(8 + 1 + 8);
+            int start = buffer.position();
+            buffer.putInt(8 + 1 + 8).putInt(0).putLong(lsn).put(DELETE).putLong(studentId);
+            sealRecord(buffer, start);
+            return lsn;
+        }
+    }
+
+    /**
+     * Waits until the record with the given LSN, and every record before it,
+     * is on disk.
+     *
+     * @param lsn - LSN returned by logInsert or logDelete
+     * @throws IOException if the log can't be written, now or by an earlier
+     *                     commit. Once a write fails, every commit that isn't
+     *                     already durable fails.
+     */
+    void commit(long lsn) throws IOException {
+        synchronized (lock) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for log commit");
+                }
+            }
+            if (durableLsn >= lsn) {
+                return;
+            }
+            checkNotFailed();
+            flushing = true;
+        }
+
+        // This thread leads the group. Let others append before taking the batch.
+        if (groupCommitNanos > 0) {
+            LockSupport.parkNanos(groupCommitNanos);
+        }
+        ByteBuffer batch;
+        long batchLsn;
+        synchronized (lock) {
+            batch = pending;
+            pending = writing;
+            writing = batch;
+            batchLsn = nextLsn - 1;
+        }
+
+        // The batch is only cleared once it is on disk. If the write or the
+        // fsync fails, its records stay in the buffer and the log fails every
+        // commit from then on, including those waiting on this one.
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                flushing = false;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+        synchronized (lock) {
+            batch.clear();
+            flushing = false;
+            durableLsn = batchLsn;
+            fsyncs++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Empties the log. Every logged operation must already be applied and
+     * the data file synced, since the log no longer holds them afterwards.
+     *
+     * @throws IOException           if the log can't be written, or an earlier
+     *                               commit failed
+     * @throws IllegalStateException if records are appended but not committed
+     */
+    void checkpoint() throws IOException {
+        synchronized (lock) {
+            checkNotFailed();
+            if (flushing || pending.position() > 0) {
+                throw new IllegalStateException("Checkpoint with uncommitted log records");
+            }
+            channel.truncate(HEADER_SIZE);
+            writeHeader(channel, nextLsn);
+            channel.position(HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Passes every operation logged since the last checkpoint to the
+     * callbacks, in LSN order.
+     *
+     * @param inserts - Receives each inserted student
+     * @param deletes - Receives each deleted studentId
+     * @throws IOException if the log can't be read
+     */
+    void replay(Consumer<Student> inserts, LongConsumer deletes) throws IOException {
+        synchronized (lock) {
+            readRecords(channel, record -> {
+                if (record.get(RECORD_PREFIX + 8) == INSERT) {
+                    record.position(RECORD_PREFIX + 9);
+                    long studentId = record.getLong();
+                    int age = record.getInt();
+                    long recordId = record.getLong();
+                    String name = getString(record);
+                    String major = getString(record);
+                    String level = getString(record);
+                    inserts.accept(new Student(studentId, age, name, major, level, recordId));
+                } else {
+                    deletes.accept(record.getLong(RECORD_PREFIX + 9));
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes the log. Records not yet committed are lost.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return The LSN the next record will get. Checkpoints keep it, so it
+     *         grows with every operation ever logged.
+     */
+    long nextLsn() {
+        synchronized (lock) {
+            return nextLsn;
+        }
+    }
+
+    /**
+     * @return The number of fsyncs so far, one per group commit
+     */
+    long fsyncs() {
+        synchronized (lock) {
+            return fsyncs;
+        }
+    }
+
+    /**
+     * @return The number of records appended since the log was opened
+     */
+    long records() {
+        synchronized (lock) {
+            return records;
+        }
+    }
+
+    // Throws if a batch has failed to reach disk. Call holding the lock.
+    private void checkNotFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log stopped after a failed write", failure);
+        }
+    }
+
+    // Makes room for a record in the pending buffer
+    private ByteBuffer reserve(int length) {
+        if (pending.remaining() < RECORD_PREFIX + length) {
+            ByteBuffer bigger = newBuffer(Math.max(pending.capacity() * 2, pending.position() + RECORD_PREFIX + length));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        return pending;
+    }
+
+    // Fills in the checksum of the record just written at start
+    private void sealRecord(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.position()).position(start + RECORD_PREFIX);
+        crc.update(body);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        records++;
+    }
+
+    // Calls the consumer with each valid record after the header, with the
+    // record at index 0. Returns the file offset after the last valid record.
+    private static long readRecords(FileChannel channel, Consumer<ByteBuffer> consumer) throws IOException {
+        long position = HEADER_SIZE;
+        long size = channel.size();
+        ByteBuffer prefix = newBuffer(RECORD_PREFIX);
+        while (position + RECORD_PREFIX <= size) {
+            prefix.clear();
+            readFully(channel, prefix, position);
+            int length = prefix.getInt(0);
+            if (length <= 9 || position + RECORD_PREFIX + length > size) {
+                break;
+            }
+            ByteBuffer record = newBuffer(RECORD_PREFIX + length);
+            readFully(channel, record, position);
+            CRC32C crc = new CRC32C();
+            crc.update(record.duplicate().position(RECORD_PREFIX));
+            if ((int) crc.getValue() != record.getInt(4)) {
+                break;
+            }
+            consumer.accept(record);
+            position += RECORD_PREFIX + length;
+        }
+        return position;
+    }
+
+    private static void writeHeader(FileChannel channel, long firstLsn) throws IOException {
+        ByteBuffer header = newBuffer(HEADER_SIZE);
+        header.putLong(0, MAGIC);
+        header.putInt(8, FORMAT_VERSION);
+        header.putLong(12, firstLsn);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+    }
+
+    // Fills the buffer from the file, starting at position
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+        }
+        buffer.clear();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Random;
+
+/**
+ * The core YCSB workloads, A to F, as streams of B+Tree operations over a
+ * table of synthetic students.
+ * <p>
+ * Rows are numbered in the order they are inserted, and row i has the
+ * studentId hash(i), so inserts land all over the tree rather than at its
+ * right edge, as YCSB's hashed insert order does. Reads pick an existing row
+ * from the workload's distribution: uniform, Zipfian with the popular rows
+ * scattered over the key space, or latest, Zipfian over how recently rows
+ * were inserted.
+ */
+class YcsbWorkload {
+
+    static final byte READ = 1;
+    static final byte UPDATE = 2;
+    static final byte INSERT = 3;
+    static final byte SCAN = 4;
+    static final byte READ_MODIFY_WRITE = 5;
+
+    static final byte UNIFORM = 1;
+    static final byte ZIPFIAN = 2;
+    static final byte LATEST = 3;
+
+    /** Scans return from 1 to this many entries, uniformly */
+    static final int MAX_SCAN_LENGTH = 100;
+
+    private static final String[] MAJORS = {"CS", "Math", "Physics", "Biology", "History", "English", "Economics", "Art"};
+    private static final String[] LEVELS = {"FR", "SO", "JR", "SR"};
+
+    /** Workload A: update heavy, 50% reads and 50% updates */
+    static final YcsbWorkload A = new YcsbWorkload("A", ZIPFIAN, 50, 50, 0, 0, 0);
+    /** Workload B: read mostly, 95% reads and 5% updates */
+    static final YcsbWorkload B = new YcsbWorkload("B", ZIPFIAN, 95, 5, 0, 0, 0);
+    /** Workload C: read only */
+    static final YcsbWorkload C = new YcsbWorkload("C", ZIPFIAN, 100, 0, 0, 0, 0);
+    /** Workload D: read latest, 95% reads of recent rows and 5% inserts */
+    static final YcsbWorkload D = new YcsbWorkload("D", LATEST, 95, 0, 5, 0, 0);
+    /** Workload E: short ranges, 95% scans and 5% inserts */
+    static final YcsbWorkload E = new YcsbWorkload("E", ZIPFIAN, 0, 0, 5, 95, 0);
+    /** Workload F: 50% reads and 50% read-modify-writes */
+    static final YcsbWorkload F = new YcsbWorkload("F", ZIPFIAN, 50, 0, 0, 0, 50);
+
+    static final YcsbWorkload[] CORE = {A, B, C, D, E, F};
+
+    final String name;
+    final byte distribution;
+    // Cumulative percentages of each operation
+    private final int reads;
+    private final int updates;
+    private final int inserts;
+    private final int scans;
+
+    private YcsbWorkload(String name, byte distribution, int readPercent, int updatePercent,
+            int insertPercent, int scanPercent, int readModifyWritePercent) {
+        if (readPercent + updatePercent + insertPercent + scanPercent + readModifyWritePercent != 100) {
+            throw new IllegalArgumentException("Workload " + name + " doesn't add up to 100%");
+        }
+        this.name = name;
+        this.distribution = distribution;
+        this.reads = readPercent;
+        this.updates = reads + updatePercent;
+        this.inserts = updates + insertPercent;
+        this.scans = inserts + scanPercent;
+    }
+
+    private YcsbWorkload(YcsbWorkload mix, byte distribution) {
+        distributionName(distribution);
+        this.name = mix.name;
+        this.distribution = distribution;
+        this.reads = mix.reads;
+        this.updates = mix.updates;
+        this.inserts = mix.inserts;
+        this.scans = mix.scans;
+    }
+
+    /**
+     * @param distribution - UNIFORM, ZIPFIAN or LATEST
+     * @return This workload's mix of operations, drawing rows from the given
+     *         distribution instead
+     */
+    YcsbWorkload withDistribution(byte distribution) {
+        return new YcsbWorkload(this, distribution);
+    }
+
+    /**
+     * @param distribution - UNIFORM, ZIPFIAN or LATEST
+     * @return The distribution's name
+     */
+    static String distributionName(byte distribution) {
+        switch (distribution) {
+            case UNIFORM:
+                return "uniform";
+            case ZIPFIAN:
+                return "zipfian";
+            case LATEST:
+                return "latest";
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+    }
+
+    /**
+     * @param row - A row number
+     * @return The studentId of the row
+     */
+    static long studentId(long row) {
+        return ZipfianGenerator.fnvHash(row) >>> 1;
+    }
+
+    /**
+     * Makes up a student for a row. The same row always gives the same
+     * student.
+     *
+     * @param row      - The row number
+     * @param recordId - The recordId to give the student
+     * @return The student
+     */
+    static Student student(long row, long recordId) {
+        long bits = ZipfianGenerator.fnvHash(~row);
+        int first = (int) (bits & 0xFFFF);
+        int last = (int) ((bits >>> 16) & 0xFFFF);
+        return new Student(studentId(row), 17 + (int) ((bits >>> 32) & 0xF),
+            "Student" + first + " Bench" + last,
+            MAJORS[(int) ((bits >>> 40) & 0xFF) % MAJORS.length],
+            LEVELS[(int) ((bits >>> 48) & 0xFF) % LEVELS.length], recordId);
+    }
+
+    /**
+     * Starts a stream of this workload's operations against a table already
+     * holding rows 0 to rows - 1.
+     *
+     * @param rows - Rows loaded before the run
+     * @param seed - Seed for the random choices
+     * @return The stream
+     */
+    Generator generator(long rows, long seed) {
+        return new Generator(rows, seed, distribution);
+    }
+
+    /**
+     * Draws operations and rows for one thread.
+     */
+    final class Generator {
+
+        private final Random random;
+        private final byte keyDistribution;
+        private final ZipfianGenerator zipfian;
+        /** Rows inserted so far, loaded ones included */
+        private long rows;
+
+        private Generator(long rows, long seed, byte keyDistribution) {
+            if (rows <= 0) {
+                throw new IllegalArgumentException("The table must have rows: " + rows);
+            }
+            this.random = new Random(seed);
+            this.keyDistribution = keyDistribution;
+            this.zipfian = keyDistribution == UNIFORM ? null : new ZipfianGenerator(rows, random);
+            this.rows = rows;
+        }
+
+        /**
+         * @return READ, UPDATE, INSERT, SCAN or READ_MODIFY_WRITE
+         */
+        byte nextOperation() {
+            int roll = random.nextInt(100);
+            if (roll < reads) {
+                return READ;
+            } else if (roll < updates) {
+                return UPDATE;
+            } else if (roll < inserts) {
+                return INSERT;
+            } else if (roll < scans) {
+                return SCAN;
+            }
+            return READ_MODIFY_WRITE;
+        }
+
+        /**
+         * @return The studentId of an existing row, drawn from the workload's
+         *         distribution
+         */
+        long nextKey() {
+            long row;
+            if (keyDistribution == UNIFORM) {
+                row = (long) (random.nextDouble() * rows);
+            } else if (keyDistribution == LATEST) {
+                row = Math.max(0, rows - 1 - zipfian.next());
+            } else {
+                row = zipfian.nextScrambled();
+            }
+            return studentId(row);
+        }
+
+        /**
+         * Takes the next row number for an insert.
+         *
+         * @return The new row's number
+         */
+        long nextInsertRow() {
+            return rows++;
+        }
+
+        /**
+         * @return The number of entries the next scan returns
+         */
+        int nextScanLength() {
+            return 1 + random.nextInt(MAX_SCAN_LENGTH);
+        }
+
+        /**
+         * @return A random recordId for an insert or update
+         */
+        long nextRecordId() {
+            return random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+}
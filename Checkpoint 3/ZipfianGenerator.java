@@ -0,0 +1,93 @@
+import java.util.Random;
+
+/**
+ * Draws item numbers 0 to n - 1 from a Zipfian distribution, where item 0 is
+ * the most popular, following the method YCSB uses (Gray et al., "Quickly
+ * Generating Billion-Record Synthetic Databases").
+ */
+class ZipfianGenerator {
+
+    /** Skew used by YCSB */
+    static final double DEFAULT_THETA = 0.99;
+
+    private final Random random;
+    private final long items;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+    private final double halfPowTheta;
+
+    ZipfianGenerator(long items, Random random) {
+        this(items, DEFAULT_THETA, random);
+    }
+
+    /**
+     * @param items  - Number of items to draw from
+     * @param theta  - Skew, between 0 (uniform) and 1 (exclusive)
+     * @param random - Source of randomness
+     */
+    ZipfianGenerator(long items, double theta, Random random) {
+        this.random = random;
+        this.items = items;
+        this.theta = theta;
+        this.zetaN = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.halfPowTheta = Math.pow(0.5, theta);
+        double zeta2 = 1.0 + halfPowTheta;
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+
+    /**
+     * @return The next item, with item 0 the most popular
+     */
+    long next() {
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + halfPowTheta) {
+            return 1;
+        }
+        return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    /**
+     * @return The next item, with popular items spread over the whole range
+     *         instead of clustered at the low end
+     */
+    long nextScrambled() {
+        return Math.floorMod(fnvHash(next()), items);
+    }
+
+    /**
+     * @return The skew of the distribution
+     */
+    double theta() {
+        return theta;
+    }
+
+    // Sum of 1 / i^theta for i = 1 to n
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1.0 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * @param value - The value to hash
+     * @return The 64-bit FNV-1a hash of the value's bytes
+     */
+    static long fnvHash(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xFF;
+            hash *= 0x100000001B3L;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class BTreeTest {
+
+    // Few enough keys that inserts, removes and searches keep hitting each other
+    private static final int KEYS = 2_000;
+    private static final int OPERATIONS = 50_000;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 5, 16})
+    void randomOperationsMatchTreeMap(int t) {
+        randomOperations(new BTree(t), new TreeMap<>(), new Random(t));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 5, 16})
+    void randomOperationsOnSlabStoreMatchTreeMap(int t) {
+        Random random = new Random(t);
+        BTree tree = new BTree(new SlabNodeStore(t));
+
+        // Start from a parallel bulk load of every other key
+        long[] keys = new long[KEYS / 2];
+        long[] recordIds = new long[keys.length];
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 2 * i;
+            recordIds[i] = random.nextInt(Integer.MAX_VALUE);
+            expected.put(keys[i], recordIds[i]);
+        }
+        tree.bulkLoad(keys, recordIds, keys.length, 0.7, ForkJoinPool.commonPool());
+        assertSameContents(expected, tree);
+
+        randomOperations(tree, expected, random);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 5, 16})
+    void randomOperationsThroughSmallBufferPoolMatchTreeMap(int t) throws IOException {
+        // Far fewer frames than the tree has nodes, so nodes are evicted and
+        // read back all the time, and a node left pinned would use them up
+        int frames = 8;
+        PooledNodeStore store = PooledNodeStore.open(directory.resolve("btree.nodes"), t, frames,
+            new EvictionPolicy.Clock(frames));
+        try {
+            randomOperations(new BTree(store), new TreeMap<>(), new Random(t));
+            assertTrue(store.pool().evictions() > 0);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void randomOperations(BTree tree, TreeMap<Long, Long> expected, Random random) {
+        for (int op = 0; op < OPERATIONS; op++) {
+            long key = random.nextInt(KEYS);
+            int choice = random.nextInt(10);
+            if (choice < 4) {
+                long recordId = random.nextInt(Integer.MAX_VALUE);
+                if (expected.put(key, recordId) == null) {
+                    tree.insert(key, recordId);
+                } else {
+                    assertTrue(tree.replace(key, recordId), "replace " + key);
+                }
+            } else if (choice < 8) {
+                assertEquals(expected.remove(key) != null, tree.remove(key), "remove " + key);
+            } else {
+                assertEquals(expected.getOrDefault(key, -1L), tree.search(key), "search " + key);
+            }
+            if (op % 1_000 == 0) {
+                assertSameContents(expected, tree);
+            }
+        }
+        assertSameContents(expected, tree);
+
+        // Drain the tree, which merges all the way back to an empty root
+        for (long key : expected.keySet().toArray(new Long[0])) {
+            assertTrue(tree.remove(key), "remove " + key);
+            expected.remove(key);
+        }
+        assertSameContents(expected, tree);
+    }
+
+    private static void assertSameContents(TreeMap<Long, Long> expected, BTree tree) {
+        assertEquals(expected.size(), tree.size());
+        LongList printed = tree.print();
+        assertEquals(expected.size(), printed.size());
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), printed.get(i++), "recordId of " + entry.getKey());
+            assertEquals(entry.getValue(), tree.search(entry.getKey()), "search " + entry.getKey());
+        }
+    }
+}
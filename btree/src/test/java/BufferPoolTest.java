@@ -0,0 +1,14 @@
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTest {
+
+    @Test
+    void poolOver2GbIsRejected() {
+        // 32,768 frames of 64 KB is exactly 2 GB, one byte too many
+        int frames = 32_768;
+        assertThrows(IllegalArgumentException.class,
+            () -> new BufferPool(null, 0, 65_536, frames, new EvictionPolicy.Clock(frames)));
+    }
+}
@@ -0,0 +1,240 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StudentDatabaseTest {
+
+    // The last row repeats the studentId of the second
+    private static final String DUPLICATE_CSV =
+        "51135593,Maria White,English,SR,21,0\n"
+        + "320874982,Daniel Lee,Electrical Engineering,FR,17,1\n"
+        + "348121549,Paul Hall,Computer Science,JR,18,2\n"
+        + "320874982,Jack Ryan,Law,FR,18,3\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void repeatedStudentIdKeepsLastRow() throws IOException {
+        Files.write(directory.resolve(StudentDatabase.CSV_FILE), DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        StudentDatabase db = StudentDatabase.open(directory, 3, false);
+        try {
+            assertEquals(3, db.tree().size());
+            assertEquals(3, db.search(320874982L));
+            assertEquals(0, db.search(51135593L));
+            assertEquals(2, db.search(348121549L));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    void repeatedStudentIdKeepsLastRowInHeapFile() throws IOException {
+        Files.write(directory.resolve(StudentDatabase.CSV_FILE), DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        // Open twice: the first open fills the heap file from the CSV, the
+        // second loads the heap file
+        for (int run = 0; run < 2; run++) {
+            StudentDatabase db = StudentDatabase.open(directory, 3, true);
+            long recordId;
+            try {
+                assertEquals(3, db.tree().size());
+                recordId = db.search(320874982L);
+            } finally {
+                db.close();
+            }
+            StudentHeapFile heapFile = StudentHeapFile.open(directory.resolve(StudentDatabase.HEAP_FILE));
+            try {
+                assertEquals("Jack Ryan", heapFile.read(recordId).studentName);
+                // The replaced row was freed, not left behind
+                int[] rows = new int[1];
+                heapFile.scan(s -> rows[0]++);
+                assertEquals(3, rows[0]);
+            } finally {
+                heapFile.close();
+            }
+        }
+    }
+
+    @Test
+    void insertOfExistingStudentIdReplacesRow() throws IOException {
+        Files.write(directory.resolve(StudentDatabase.CSV_FILE), DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        StudentDatabase db = StudentDatabase.open(directory, 3, false);
+        try {
+            db.insert(new Student(51135593L, 22, "Maria White", "History", "SR", 7));
+            db.apply(List.of(StudentDatabase.Operation.insert(new Student(348121549L, 19, "Paul Hall", "Law", "JR", 8))));
+            assertEquals(3, db.tree().size());
+            assertEquals(7, db.search(51135593L));
+            assertEquals(8, db.search(348121549L));
+        } finally {
+            db.close();
+        }
+
+        db = StudentDatabase.open(directory, 3, false);
+        try {
+            assertEquals(3, db.tree().size());
+            assertEquals(7, db.search(51135593L));
+            assertEquals(8, db.search(348121549L));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    void insertOfExistingStudentIdNeverFreesAnotherRow() throws IOException {
+        Files.write(directory.resolve(StudentDatabase.CSV_FILE),
+            "10,Maria White,English,SR,21,5\n20,Daniel Lee,Law,FR,17,6\n".getBytes(StandardCharsets.UTF_8));
+        StudentDatabase db = StudentDatabase.open(directory, 3, true);
+        try {
+            // The given recordId is another student's row; the heap file
+            // picks the real one
+            db.insert(new Student(10, 22, "Jack Ryan", "Law", "FR", db.search(20)));
+            assertEquals(2, db.tree().size());
+            assertTrue(db.delete(10));
+            assertFalse(db.delete(10));
+        } finally {
+            db.close();
+        }
+
+        db = StudentDatabase.open(directory, 3, true);
+        long recordId;
+        try {
+            assertEquals(1, db.tree().size());
+            recordId = db.search(20);
+            assertTrue(recordId >= 0);
+        } finally {
+            db.close();
+        }
+        StudentHeapFile heapFile = StudentHeapFile.open(directory.resolve(StudentDatabase.HEAP_FILE));
+        try {
+            assertEquals("Daniel Lee", heapFile.read(recordId).studentName);
+        } finally {
+            heapFile.close();
+        }
+    }
+
+    @Test
+    void failedDataFileWriteKeepsLogForReplay() throws IOException {
+        Path csvFile = directory.resolve(StudentDatabase.CSV_FILE);
+        Files.write(csvFile, DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        StudentDatabase db = StudentDatabase.open(directory, 3, false);
+        // Appending to a directory fails
+        byte[] rows = Files.readAllBytes(csvFile);
+        Files.delete(csvFile);
+        Files.createDirectory(csvFile);
+        try {
+            assertThrows(IOException.class, () -> db.insert(new Student(42L, 20, "Ann Lee", "Law", "SO", 4)));
+            assertThrows(IOException.class, () -> db.delete(51135593L));
+        } finally {
+            assertThrows(IOException.class, db::close);
+        }
+
+        Files.delete(csvFile);
+        Files.write(csvFile, rows);
+        StudentDatabase reopened = StudentDatabase.open(directory, 3, false);
+        try {
+            assertEquals(4, reopened.search(42L));
+        } finally {
+            reopened.close();
+        }
+        assertTrue(new String(Files.readAllBytes(csvFile), StandardCharsets.UTF_8).endsWith("42,Ann Lee,Law,SO,20,4\n"));
+    }
+
+    @Test
+    void secondaryIndexesUseLastRowOfRepeatedStudentId() throws IOException {
+        Files.write(directory.resolve(StudentDatabase.CSV_FILE), DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        for (boolean useHeap : new boolean[] {false, true}) {
+            StudentDatabase db = StudentDatabase.open(directory, 3, useHeap);
+            try {
+                SecondaryIndexes indexes = db.createSecondaryIndexes();
+                assertEquals(3, indexes.size());
+                BTreeCursor law = indexes.major("Law");
+                assertTrue(law.next());
+                assertEquals(db.search(320874982L), law.recordId());
+                assertFalse(law.next());
+                assertFalse(indexes.major("Electrical Engineering").next());
+            } finally {
+                db.close();
+            }
+        }
+    }
+
+    @Test
+    void reopenUsesSavedIndex() throws IOException {
+        for (boolean useHeap : new boolean[] {false, true}) {
+            Path dir = Files.createDirectory(directory.resolve(useHeap ? "heap" : "csv"));
+            Files.write(dir.resolve(StudentDatabase.CSV_FILE), DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+            StudentDatabase db = StudentDatabase.open(dir, 3, useHeap);
+            long recordId;
+            try {
+                assertFalse(db.indexRestored());
+                db.insert(new Student(42L, 20, "Ann Lee", "Law", "SO", 4));
+                assertTrue(db.delete(51135593L));
+                recordId = db.search(42L);
+            } finally {
+                db.close();
+            }
+
+            db = StudentDatabase.open(dir, 3, useHeap);
+            try {
+                assertTrue(db.indexRestored());
+                assertEquals(3, db.tree().size());
+                assertEquals(recordId, db.search(42L));
+                assertEquals(-1, db.search(51135593L));
+                db.insert(new Student(43L, 21, "Bo Kim", "Law", "SO", 5));
+            } finally {
+                db.close();
+            }
+
+            db = StudentDatabase.open(dir, 3, useHeap);
+            try {
+                assertTrue(db.indexRestored());
+                assertEquals(4, db.tree().size());
+                assertTrue(db.search(43L) >= 0);
+            } finally {
+                db.close();
+            }
+        }
+    }
+
+    @Test
+    void indexIsRebuiltWhenLogOrDataFileMovedOn() throws IOException {
+        Path csvFile = directory.resolve(StudentDatabase.CSV_FILE);
+        Files.write(csvFile, DUPLICATE_CSV.getBytes(StandardCharsets.UTF_8));
+        StudentDatabase.open(directory, 3, false).close();
+
+        // Not closed, as if the process died: the log holds the insert and
+        // the index file a tree that was changed after it was saved
+        StudentDatabase crashed = StudentDatabase.open(directory, 3, false);
+        assertTrue(crashed.indexRestored());
+        crashed.insert(new Student(42L, 20, "Ann Lee", "Law", "SO", 4));
+        StudentDatabase db = StudentDatabase.open(directory, 3, false);
+        try {
+            assertFalse(db.indexRestored());
+            assertEquals(4, db.tree().size());
+            assertEquals(4, db.search(42L));
+        } finally {
+            db.close();
+        }
+
+        // A row added behind the database's back
+        Files.write(csvFile, "7,Eve Moss,Art,JR,19,5\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        db = StudentDatabase.open(directory, 3, false);
+        try {
+            assertFalse(db.indexRestored());
+            assertEquals(5, db.search(7L));
+        } finally {
+            db.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failedWriteStopsLaterCommits() throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory.resolve("test.wal"), 0);
+        long lsn = log.logInsert(new Student(1, 20, "Maria White", "English", "SR", 0));
+        // Closing the channel makes the group write fail
+        log.close();
+        assertThrows(ClosedChannelException.class, () -> log.commit(lsn));
+
+        long next = log.logDelete(1);
+        IOException stopped = assertThrows(IOException.class, () -> log.commit(next));
+        assertInstanceOf(ClosedChannelException.class, stopped.getCause());
+        assertThrows(IOException.class, log::checkpoint);
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.SplittableRandom;
+
+import bench.ConcurrentTarget;
+
+/**
+ * Runs ConcurrentBenchmark's mix against a ConcurrentBTree, or a BTree with
+ * every operation holding one lock, as callers had to before ConcurrentBTree.
+ */
+public class ConcurrentHarness implements ConcurrentTarget {
+
+    private static final int SIZE = 1_000_000;
+    private static final int DEGREE = 64;
+
+    private long[] loadedIds;
+    private ConcurrentBTree concurrentTree;
+    private BTree lockedTree;
+    private final Object lock = new Object();
+
+    @Override
+    public void load(String tree) {
+        SplittableRandom random = new SplittableRandom(47);
+        loadedIds = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            loadedIds[i] = 2 * random.nextLong(Long.MAX_VALUE / 2);
+        }
+        switch (tree) {
+            case "olc":
+                concurrentTree = new ConcurrentBTree(DEGREE);
+                for (long id : loadedIds) {
+                    concurrentTree.insert(id, id);
+                }
+                break;
+            case "locked":
+                lockedTree = new BTree(DEGREE);
+                for (long id : loadedIds) {
+                    lockedTree.insert(id, id);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tree: " + tree);
+        }
+    }
+
+    @Override
+    public int loaded() {
+        return SIZE;
+    }
+
+    @Override
+    public long search(int index) {
+        long id = loadedIds[index];
+        if (concurrentTree != null) {
+            return concurrentTree.search(id);
+        }
+        synchronized (lock) {
+            return lockedTree.search(id);
+        }
+    }
+
+    @Override
+    public long insert(long key) {
+        if (concurrentTree != null) {
+            return concurrentTree.insert(key, key) ? 1 : 0;
+        }
+        synchronized (lock) {
+            return lockedTree.insert(key, key).size();
+        }
+    }
+
+    @Override
+    public long restarts() {
+        return concurrentTree != null ? concurrentTree.restarts() : 0;
+    }
+}
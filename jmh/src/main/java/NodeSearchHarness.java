@@ -0,0 +1,79 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import bench.NodeSearchTarget;
+
+/**
+ * Runs NodeSearchBenchmark's lookups against a BTreeNode and a BTree.
+ */
+public class NodeSearchHarness implements NodeSearchTarget {
+
+    private static final int TREE_SIZE = 1_000_000;
+    /** Keys looked up in turn; a power of two, so the index wraps with a mask */
+    private static final int PROBES = 1 << 16;
+
+    private BTreeNode node;
+    private long[] nodeProbes;
+    private BTree tree;
+    private long[] treeProbes;
+    private int next;
+
+    @Override
+    public void load(int degree) {
+        SplittableRandom random = new SplittableRandom(13);
+
+        // A full node of even keys, probed with keys on and between them
+        node = new BTreeNode(degree, true);
+        node.n = 2 * degree - 1;
+        for (int i = 0; i < node.n; i++) {
+            node.keys[i] = 2L * i;
+        }
+        nodeProbes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            nodeProbes[i] = random.nextLong(2L * node.n + 1);
+        }
+
+        long[] studentIds = new long[TREE_SIZE];
+        long[] recordIds = new long[TREE_SIZE];
+        for (int i = 0; i < TREE_SIZE; i++) {
+            studentIds[i] = random.nextLong(Long.MAX_VALUE);
+        }
+        Arrays.sort(studentIds);
+        for (int i = 0; i < TREE_SIZE; i++) {
+            recordIds[i] = i;
+        }
+        // Random longs repeat too rarely to matter, but bulkLoad needs
+        // strictly ascending ids
+        int count = 0;
+        for (int i = 0; i < TREE_SIZE; i++) {
+            if (count == 0 || studentIds[i] != studentIds[count - 1]) {
+                studentIds[count++] = studentIds[i];
+            }
+        }
+        tree = new BTree(degree).bulkLoad(studentIds, recordIds, count, 1.0);
+        treeProbes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            treeProbes[i] = studentIds[random.nextInt(count)];
+        }
+    }
+
+    @Override
+    public int upperBound() {
+        return node.upperBound(nodeProbes[next++ & (PROBES - 1)]);
+    }
+
+    @Override
+    public int linearScan() {
+        long key = nodeProbes[next++ & (PROBES - 1)];
+        int i = 0;
+        while (i < node.n && key >= node.keys[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public long search() {
+        return tree.search(treeProbes[next++ & (PROBES - 1)]);
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import bench.SearchManyTarget;
+
+/**
+ * Runs SearchManyBenchmark's batches against a BTree.
+ */
+public class SearchManyHarness implements SearchManyTarget {
+
+    private static final int SIZE = 1_000_000;
+    private static final int DEGREE = 64;
+    /** Batches looked up in turn; a power of two, so the index wraps with a mask */
+    private static final int BATCHES = 1 << 10;
+
+    private BTree tree;
+    private long[][] batches;
+    private long[] recordIds;
+    private int next;
+
+    @Override
+    public void load(int batchSize, boolean clustered) {
+        // Even ids only, so id + 1 is never present
+        long[] studentIds = new long[SIZE];
+        long[] rowIds = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            studentIds[i] = 2L * i;
+            rowIds[i] = i;
+        }
+        tree = new BTree(DEGREE).bulkLoad(studentIds, rowIds, SIZE, 1.0);
+
+        SplittableRandom random = new SplittableRandom(batchSize);
+        int window = clustered ? 10 * 2 * DEGREE : SIZE;
+        batches = new long[BATCHES][batchSize];
+        for (long[] batch : batches) {
+            int first = random.nextInt(SIZE - window + 1);
+            for (int i = 0; i < batchSize; i++) {
+                long studentId = studentIds[first + random.nextInt(window)];
+                batch[i] = random.nextInt(10) == 0 ? studentId + 1 : studentId;
+            }
+        }
+        recordIds = new long[batchSize];
+
+        // Both ways must find the same recordIds
+        long[] single = new long[batchSize];
+        for (long[] batch : batches) {
+            for (int i = 0; i < batchSize; i++) {
+                single[i] = tree.search(batch[i]);
+            }
+            tree.searchMany(batch, recordIds);
+            if (!Arrays.equals(single, recordIds)) {
+                throw new IllegalStateException("searchMany disagrees with search");
+            }
+        }
+    }
+
+    @Override
+    public long search() {
+        long[] batch = batches[next++ & (BATCHES - 1)];
+        long sum = 0;
+        for (long studentId : batch) {
+            sum += tree.search(studentId);
+        }
+        return sum;
+    }
+
+    @Override
+    public long searchMany() {
+        long[] batch = batches[next++ & (BATCHES - 1)];
+        tree.searchMany(batch, recordIds);
+        long sum = 0;
+        for (long recordId : recordIds) {
+            sum += recordId;
+        }
+        return sum;
+    }
+}
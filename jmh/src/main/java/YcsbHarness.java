@@ -0,0 +1,131 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import bench.YcsbTarget;
+
+/**
+ * Runs YcsbBenchmark's and OpsBenchmark's operations against a BTree filled
+ * with YcsbWorkload's synthetic students.
+ */
+public class YcsbHarness implements YcsbTarget {
+
+    /** Seed for the workload's random choices, the same on every run */
+    private static final long SEED = 107;
+
+    private int rows;
+    // Sorted studentIds and recordIds of rows 0 to rows - 1, kept between
+    // loads of the same size
+    private long[] studentIds;
+    private long[] recordIds;
+    private BTree tree;
+    private YcsbWorkload.Generator generator;
+    private SplittableRandom random;
+    private long nextRow;
+
+    @Override
+    public void load(int degree, int rows) {
+        if (studentIds == null || rows != this.rows) {
+            studentIds = new long[rows];
+            recordIds = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                studentIds[i] = YcsbWorkload.studentId(i);
+                recordIds[i] = i;
+            }
+            StudentCsv.sort(studentIds, recordIds, rows, ForkJoinPool.commonPool());
+        }
+        this.rows = rows;
+        this.tree = new BTree(degree).bulkLoad(studentIds, recordIds, rows, 0.9);
+        this.random = new SplittableRandom(SEED);
+        this.nextRow = rows;
+    }
+
+    @Override
+    public void start(String workload) {
+        generator = workload(workload).generator(rows, SEED);
+    }
+
+    @Override
+    public long operation() {
+        switch (generator.nextOperation()) {
+            case YcsbWorkload.READ:
+                return tree.search(generator.nextKey());
+            case YcsbWorkload.UPDATE: {
+                // Inserting a key already in the tree would add a second
+                // entry, so an update replaces the entry
+                long studentId = generator.nextKey();
+                tree.remove(studentId);
+                tree.insert(studentId, generator.nextRecordId());
+                return studentId;
+            }
+            case YcsbWorkload.INSERT:
+                return tree.insert(YcsbWorkload.student(generator.nextInsertRow(), generator.nextRecordId())).size();
+            case YcsbWorkload.SCAN: {
+                long sum = 0;
+                BTreeCursor cursor = tree.range(generator.nextKey(), Long.MAX_VALUE,
+                    generator.nextScanLength(), false);
+                while (cursor.next()) {
+                    sum += cursor.recordId();
+                }
+                return sum;
+            }
+            default: {
+                long studentId = generator.nextKey();
+                long recordId = tree.search(studentId);
+                tree.remove(studentId);
+                tree.insert(studentId, recordId + 1);
+                return recordId;
+            }
+        }
+    }
+
+    @Override
+    public long search() {
+        return tree.search(YcsbWorkload.studentId(random.nextInt(rows)));
+    }
+
+    @Override
+    public long insert() {
+        long row = nextRow++;
+        return tree.insert(YcsbWorkload.studentId(row), row).size();
+    }
+
+    @Override
+    public long delete() {
+        int row = random.nextInt(rows);
+        long studentId = YcsbWorkload.studentId(row);
+        tree.remove(studentId);
+        return tree.insert(studentId, row).size();
+    }
+
+    @Override
+    public long print() {
+        return tree.print().size();
+    }
+
+    // The workload named by YcsbTarget.start()
+    private static YcsbWorkload workload(String name) {
+        String[] parts = name.split("-", 2);
+        YcsbWorkload workload = null;
+        for (YcsbWorkload core : YcsbWorkload.CORE) {
+            if (core.name.equals(parts[0])) {
+                workload = core;
+            }
+        }
+        if (workload == null) {
+            throw new IllegalArgumentException("Unknown workload: " + name);
+        }
+        if (parts.length == 1) {
+            return workload;
+        }
+        switch (parts[1]) {
+            case "uniform":
+                return workload.withDistribution(YcsbWorkload.UNIFORM);
+            case "zipfian":
+                return workload.withDistribution(YcsbWorkload.ZIPFIAN);
+            case "latest":
+                return workload.withDistribution(YcsbWorkload.LATEST);
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + name);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of a read-heavy (95% lookups) and a write-heavy (50% inserts)
+ * mix on ConcurrentBTree and on BTree behind a single lock, with every
+ * benchmark thread sharing one tree of 1,000,000 keys.
+ * <p>
+ * JMH runs one thread count at a time, set with -t. main() runs the
+ * benchmark at 1, 2, 4 ... 64 threads in turn; it takes the same options as
+ * the JMH command line, and with -rf writes one result file per thread
+ * count:
+ * <pre>
+ *   java -cp jmh/target/benchmarks.jar bench.ConcurrentBenchmark -rf json
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentBenchmark {
+
+    /** Highest thread count main() runs */
+    private static final int MAX_THREADS = 64;
+
+    @Param({"olc", "locked"})
+    String tree;
+
+    @Param({"95", "50"})
+    int readPercent;
+
+    private ConcurrentTarget target;
+
+    /**
+     * Random choices of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Mix {
+
+        SplittableRandom random;
+
+        @Setup
+        public void seed(ThreadParams threads) {
+            random = new SplittableRandom(53 + threads.getThreadIndex());
+        }
+    }
+
+    @Setup
+    public void load() {
+        target = Harness.load("ConcurrentHarness", ConcurrentTarget.class);
+        target.load(tree);
+    }
+
+    @TearDown
+    public void report() {
+        if (tree.equals("olc")) {
+            System.out.printf("%n%,d restarts%n", target.restarts());
+        }
+    }
+
+    @Benchmark
+    public long operation(Mix mix) {
+        if (mix.random.nextInt(100) < readPercent) {
+            return target.search(mix.random.nextInt(target.loaded()));
+        }
+        return target.insert(2 * mix.random.nextLong(Long.MAX_VALUE / 2) + 1);
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(options)
+                .include(ConcurrentBenchmark.class.getName())
+                .threads(threads);
+            // One result file per thread count, rather than each run
+            // overwriting the last
+            if (options.getResultFormat().hasValue()) {
+                builder.result("concurrent-" + threads + "-threads."
+                    + options.getResultFormat().get().toString().toLowerCase());
+            }
+            new Runner(builder.build()).run();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+/**
+ * The operations ConcurrentBenchmark mixes, implemented by the
+ * default-package ConcurrentHarness. Every method may be called from many
+ * threads at once.
+ */
+public interface ConcurrentTarget {
+
+    /**
+     * Fills a tree with 1,000,000 even keys.
+     *
+     * @param tree - "olc" for ConcurrentBTree, or "locked" for BTree behind
+     *             one lock
+     */
+    void load(String tree);
+
+    /**
+     * @return Number of keys loaded
+     */
+    int loaded();
+
+    /**
+     * Looks up a loaded key.
+     *
+     * @param index - Which loaded key, from 0 to loaded() - 1
+     * @return The key's recordId
+     */
+    long search(int index);
+
+    /**
+     * Inserts a key.
+     *
+     * @param key - An odd key, so never one of the loaded keys
+     * @return A value derived from the result, for the blackhole
+     */
+    long insert(long key);
+
+    /**
+     * @return Restarts taken by ConcurrentBTree's optimistic reads and
+     *         writes, or 0 for the locked tree
+     */
+    long restarts();
+}
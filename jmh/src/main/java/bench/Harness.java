@@ -0,0 +1,29 @@
+package bench;
+
+/**
+ * Loads the default-package code the benchmarks drive.
+ * <p>
+ * JMH won't generate benchmarks for classes in the default package, and a
+ * class in a named package can't refer to one that is, so each benchmark here
+ * talks to the B+Tree through an interface, implemented by a harness class in
+ * the default package next to BTree and looked up by name.
+ */
+final class Harness {
+
+    private Harness() {
+    }
+
+    /**
+     * @param className - Name of a public default-package class with a public
+     *                  no-argument constructor
+     * @param type      - An interface the class implements
+     * @return A new instance of the class
+     */
+    static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't load benchmark harness " + className, e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package bench;
+
+/**
+ * The lookups NodeSearchBenchmark times, implemented by the default-package
+ * NodeSearchHarness.
+ */
+public interface NodeSearchTarget {
+
+    /**
+     * Builds a full node and a 1,000,000 key tree with the given minimum
+     * degree, and the keys to look up in them.
+     *
+     * @param degree - The minimum degree
+     */
+    void load(int degree);
+
+    /**
+     * @return BTreeNode.upperBound() of the next key in the full node
+     */
+    int upperBound();
+
+    /**
+     * @return The index upperBound() would return, found with the early-exit
+     *         linear scan searchNode used before
+     */
+    int linearScan();
+
+    /**
+     * @return BTree.search() of the next key in the tree
+     */
+    long search();
+}
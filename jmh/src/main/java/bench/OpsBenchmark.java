@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Average time of BTree.search, insert, delete and print on their own, across
+ * minimum degrees and tree sizes.
+ * <p>
+ * The tree is reloaded before every iteration. insert adds new students, so
+ * the tree grows by however many calls an iteration makes; delete puts back
+ * each student it removes, so its time covers a remove and an insert.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OpsBenchmark {
+
+    @Param({"3", "16", "64", "256"})
+    int degree;
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    private YcsbTarget target;
+
+    @Setup(Level.Trial)
+    public void create() {
+        target = Harness.load("YcsbHarness", YcsbTarget.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void load() {
+        target.load(degree, rows);
+    }
+
+    @Benchmark
+    public long search() {
+        return target.search();
+    }
+
+    @Benchmark
+    public long insert() {
+        return target.insert();
+    }
+
+    @Benchmark
+    public long delete() {
+        return target.delete();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long print() {
+        return target.print();
+    }
+}
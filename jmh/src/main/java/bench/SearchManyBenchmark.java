@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to look up a batch of studentIds in a 1,000,000 row tree: one
+ * BTree.search() per id against one BTree.searchMany() for the batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchManyBenchmark {
+
+    @Param({"100", "1000"})
+    int batchSize;
+
+    @Param({"random", "clustered"})
+    String layout;
+
+    private SearchManyTarget target;
+
+    @Setup
+    public void load() {
+        target = Harness.load("SearchManyHarness", SearchManyTarget.class);
+        target.load(batchSize, layout.equals("clustered"));
+    }
+
+    @Benchmark
+    public long search() {
+        return target.search();
+    }
+
+    @Benchmark
+    public long searchMany() {
+        return target.searchMany();
+    }
+}
@@ -0,0 +1,32 @@
+package bench;
+
+/**
+ * The lookups SearchManyBenchmark compares, implemented by the
+ * default-package SearchManyHarness.
+ */
+public interface SearchManyTarget {
+
+    /**
+     * Builds a 1,000,000 row tree and batches of keys to look up in it. A
+     * tenth of the keys miss.
+     *
+     * @param batchSize - Keys per batch
+     * @param clustered - True for batches that fall in a window of about ten
+     *                  leaves, false for batches spread over the whole tree
+     */
+    void load(int batchSize, boolean clustered);
+
+    /**
+     * Looks up the next batch with one BTree.search() per key.
+     *
+     * @return A value derived from the recordIds, for the blackhole
+     */
+    long search();
+
+    /**
+     * Looks up the next batch with one BTree.searchMany().
+     *
+     * @return A value derived from the recordIds, for the blackhole
+     */
+    long searchMany();
+}
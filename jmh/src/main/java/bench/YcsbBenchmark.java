@@ -0,0 +1,64 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the YCSB core workloads, A to F, plus workload C with uniform
+ * and latest keys, against a bulk loaded B+Tree.
+ * <p>
+ * Every iteration starts from a freshly loaded tree, so the inserts of D and
+ * E don't carry over from one iteration to the next. Run with, for example:
+ * <pre>
+ *   mvn -B package
+ *   java -jar jmh/target/benchmarks.jar YcsbBenchmark -rf json -rff ycsb.json
+ * </pre>
+ * and compare the JSON with an earlier run's to spot a regression.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class YcsbBenchmark {
+
+    @Param({"A", "B", "C", "D", "E", "F", "C-uniform", "C-latest"})
+    String workload;
+
+    @Param({"3", "16", "64", "256"})
+    int degree;
+
+    @Param({"100000", "1000000"})
+    int rows;
+
+    private YcsbTarget target;
+
+    @Setup(Level.Trial)
+    public void create() {
+        target = Harness.load("YcsbHarness", YcsbTarget.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void load() {
+        target.load(degree, rows);
+        target.start(workload);
+    }
+
+    @Benchmark
+    public long operation() {
+        return target.operation();
+    }
+}
@@ -0,0 +1,58 @@
+package bench;
+
+/**
+ * The B+Tree operations YcsbBenchmark and OpsBenchmark time, implemented by
+ * the default-package YcsbHarness.
+ */
+public interface YcsbTarget {
+
+    /**
+     * Bulk loads a tree with synthetic students.
+     *
+     * @param degree - The tree's minimum degree
+     * @param rows   - Number of students to load
+     */
+    void load(int degree, int rows);
+
+    /**
+     * Starts drawing operations from a YCSB workload against the loaded tree.
+     *
+     * @param workload - A to F, or C-uniform or C-latest for workload C with
+     *                 uniform or latest keys instead of Zipfian ones
+     */
+    void start(String workload);
+
+    /**
+     * Runs the workload's next operation.
+     *
+     * @return A value derived from the result, for the blackhole
+     */
+    long operation();
+
+    /**
+     * Looks up an existing student, picked uniformly.
+     *
+     * @return The student's recordId
+     */
+    long search();
+
+    /**
+     * Inserts a student not yet in the tree.
+     *
+     * @return The tree's size
+     */
+    long insert();
+
+    /**
+     * Deletes an existing student, picked uniformly, and puts it back, so the
+     * tree keeps its size from one call to the next.
+     *
+     * @return The tree's size
+     */
+    long delete();
+
+    /**
+     * @return The number of ids print() returned
+     */
+    long print();
+}